@@ -31,6 +31,7 @@ import androidx.lifecycle.Lifecycle;
 import androidx.lifecycle.LifecycleObserver;
 import androidx.lifecycle.OnLifecycleEvent;
 import androidx.lifecycle.ProcessLifecycleOwner;
+import edu.illinois.rokwire.maps.MapMarkerIconCache;
 import io.flutter.plugin.common.PluginRegistry;
 import io.flutter.view.FlutterMain;
 
@@ -50,6 +51,12 @@ public class App extends Application implements LifecycleObserver, PluginRegistr
     }
 
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        MapMarkerIconCache.getInstance().onTrimMemory(level);
+    }
+
     @OnLifecycleEvent(Lifecycle.Event.ON_START)
     public void onMoveToForeground() {
         Log.d("App", "ON_START");
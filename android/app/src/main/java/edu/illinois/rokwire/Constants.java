@@ -40,6 +40,8 @@ public class Constants {
     public static final float MAP_MAX_ZOOM_LEVEL_FOR_THRESHOLD = 16f;
     public static final float FIRST_THRESHOLD_MARKER_ZOOM = 17.0f;
     public static final float SECOND_THRESHOLD_MARKER_ZOOM = 18.00f;
+    public static final int MAP_MARKER_ZOOM_BANDS_COUNT = 3;
+    public static final double MAP_MARKERS_VIEWPORT_MARGIN = 0.5d;
     public static final int SELECT_LOCATION_ACTIVITY_RESULT_CODE = 2;
     public static final String LOCATION_PICKER_DATA_FORMAT = "{\"location\":{\"latitude\":%f,\"longitude\":%f}}";
     public static final float INDOORS_BUILDING_ZOOM = 17.0f;
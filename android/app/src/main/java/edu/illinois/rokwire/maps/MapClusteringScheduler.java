@@ -0,0 +1,242 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.rokwire.maps;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs marker clustering on a single background thread and delivers the results on the main thread.
+ * Only the latest submitted job matters: a newer submit cancels the queued or running one,
+ * and every job is tagged with a generation number so that a result which is no longer the latest is dropped.
+ */
+public class MapClusteringScheduler<T> {
+
+    private static final String TAG = MapClusteringScheduler.class.getSimpleName();
+
+    private static final int JOB_QUEUED = 0;
+    private static final int JOB_RUNNING = 1;
+    private static final int JOB_FINISHED = 2;
+
+    private final ExecutorService executor;
+    private final Handler mainHandler;
+
+    // Accessed on the main thread only
+    private long generation;
+    private Job currentJob;
+
+    // Statistics
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private int submittedCount;
+    private int coalescedCount;
+    private int cancelledCount;
+    private int droppedCount;
+    private int deliveredCount;
+    private long lastLatencyMillis;
+    private long totalLatencyMillis;
+
+    public MapClusteringScheduler() {
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "MapClustering");
+            thread.setDaemon(true);
+            return thread;
+        });
+        mainHandler = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * Must be called on the main thread. Supersedes any queued or running job.
+     */
+    public void submit(Task<T> task, Callback<T> callback) {
+        cancel();
+        submittedCount++;
+        Job job = new Job(generation, task, callback);
+        currentJob = job;
+        queueDepth.incrementAndGet();
+        job.future = executor.submit(job);
+    }
+
+    /**
+     * Must be called on the main thread. Cancels the queued or running job, if any, and drops its result.
+     */
+    public void cancel() {
+        generation++;
+        Job job = currentJob;
+        currentJob = null;
+        if (job != null) {
+            if (job.state.compareAndSet(JOB_QUEUED, JOB_FINISHED)) {
+                // Never started - the newer job replaces it
+                coalescedCount++;
+                queueDepth.decrementAndGet();
+                job.future.cancel(false);
+            } else if (job.state.get() == JOB_RUNNING) {
+                cancelledCount++;
+                job.future.cancel(true);
+            }
+        }
+    }
+
+    public void shutdown() {
+        cancel();
+        executor.shutdownNow();
+        mainHandler.removeCallbacksAndMessages(null);
+    }
+
+    public Statistics getStatistics() {
+        long averageLatencyMillis = (deliveredCount > 0) ? (totalLatencyMillis / deliveredCount) : 0;
+        return new Statistics(queueDepth.get(), submittedCount, coalescedCount, cancelledCount, droppedCount, deliveredCount, lastLatencyMillis, averageLatencyMillis);
+    }
+
+    private void deliver(Job job, T result) {
+        if ((job.generation != generation) || (currentJob != job)) {
+            droppedCount++;
+            return;
+        }
+        currentJob = null;
+        lastLatencyMillis = SystemClock.elapsedRealtime() - job.submitTime;
+        totalLatencyMillis += lastLatencyMillis;
+        deliveredCount++;
+        if (job.callback != null) {
+            job.callback.onResult(result);
+        }
+    }
+
+    private class Job implements Runnable {
+        private final long generation;
+        private final Task<T> task;
+        private final Callback<T> callback;
+        private final long submitTime;
+        private final AtomicInteger state = new AtomicInteger(JOB_QUEUED);
+        private Future<?> future;
+
+        private Job(long generation, Task<T> task, Callback<T> callback) {
+            this.generation = generation;
+            this.task = task;
+            this.callback = callback;
+            this.submitTime = SystemClock.elapsedRealtime();
+        }
+
+        @Override
+        public void run() {
+            if (!state.compareAndSet(JOB_QUEUED, JOB_RUNNING)) {
+                return;
+            }
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            try {
+                if (!Thread.currentThread().isInterrupted()) {
+                    T result = task.run();
+                    if (!Thread.currentThread().isInterrupted()) {
+                        mainHandler.post(() -> deliver(Job.this, result));
+                    }
+                }
+            } catch (CancellationException e) {
+                // Superseded by a newer job
+            } catch (Exception e) {
+                Log.e(TAG, "Clustering job failed. Stacktrace:");
+                e.printStackTrace();
+            } finally {
+                state.set(JOB_FINISHED);
+                queueDepth.decrementAndGet();
+                // Clear the interrupted flag so that it does not leak into the next job on this thread
+                Thread.interrupted();
+            }
+        }
+    }
+
+    public interface Task<T> {
+        /**
+         * Runs on the clustering thread. Long running tasks should check {@link Thread#isInterrupted()}
+         * and throw {@link CancellationException} when they are superseded.
+         */
+        T run();
+    }
+
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+
+    public static class Statistics {
+        private final int queueDepth;
+        private final int submittedCount;
+        private final int coalescedCount;
+        private final int cancelledCount;
+        private final int droppedCount;
+        private final int deliveredCount;
+        private final long lastLatencyMillis;
+        private final long averageLatencyMillis;
+
+        private Statistics(int queueDepth, int submittedCount, int coalescedCount, int cancelledCount, int droppedCount,
+                           int deliveredCount, long lastLatencyMillis, long averageLatencyMillis) {
+            this.queueDepth = queueDepth;
+            this.submittedCount = submittedCount;
+            this.coalescedCount = coalescedCount;
+            this.cancelledCount = cancelledCount;
+            this.droppedCount = droppedCount;
+            this.deliveredCount = deliveredCount;
+            this.lastLatencyMillis = lastLatencyMillis;
+            this.averageLatencyMillis = averageLatencyMillis;
+        }
+
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        public int getSubmittedCount() {
+            return submittedCount;
+        }
+
+        public int getCoalescedCount() {
+            return coalescedCount;
+        }
+
+        public int getCancelledCount() {
+            return cancelledCount;
+        }
+
+        public int getDroppedCount() {
+            return droppedCount;
+        }
+
+        public int getDeliveredCount() {
+            return deliveredCount;
+        }
+
+        public long getLastLatencyMillis() {
+            return lastLatencyMillis;
+        }
+
+        public long getAverageLatencyMillis() {
+            return averageLatencyMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "queue: " + queueDepth + ", submitted: " + submittedCount + ", coalesced: " + coalescedCount +
+                    ", cancelled: " + cancelledCount + ", dropped: " + droppedCount + ", delivered: " + deliveredCount +
+                    ", last latency: " + lastLatencyMillis + "ms, average latency: " + averageLatencyMillis + "ms";
+        }
+    }
+}
@@ -17,7 +17,6 @@
 package edu.illinois.rokwire.maps;
 
 import android.Manifest;
-import android.content.Context;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.graphics.Color;
@@ -25,10 +24,10 @@ import android.location.Location;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.text.Html;
 import android.util.Log;
-import android.view.LayoutInflater;
 import android.view.View;
 import android.widget.TextView;
 
@@ -50,7 +49,6 @@ import com.google.android.gms.maps.model.MarkerOptions;
 import com.google.android.gms.maps.model.PolygonOptions;
 import com.google.android.gms.maps.model.Polyline;
 import com.google.android.gms.maps.model.PolylineOptions;
-import com.google.maps.android.ui.IconGenerator;
 
 import org.json.JSONObject;
 
@@ -70,6 +68,7 @@ import edu.illinois.rokwire.navigation.model.NavBounds;
 import edu.illinois.rokwire.navigation.model.NavCoord;
 import edu.illinois.rokwire.navigation.model.NavPolyline;
 import edu.illinois.rokwire.navigation.model.NavRoute;
+import edu.illinois.rokwire.navigation.NavOfflineRouter;
 import edu.illinois.rokwire.navigation.Navigation;
 import edu.illinois.rokwire.navigation.model.NavRouteLeg;
 import edu.illinois.rokwire.navigation.model.NavRouteStep;
@@ -90,18 +89,23 @@ public class MapDirectionsActivity extends MapActivity implements Navigation.Nav
     private Object explore;
     private HashMap exploreLocation;
     private Marker exploreMarker;
-    private IconGenerator iconGenerator;
-    private View markerLayoutView;
-    private View markerGroupLayoutView;
     private float cameraZoom;
 
     //Navigation
     private Navigation navigation;
+    private Navigation rerouteNavigation;
+    private RerouteRequest pendingReroute;
+    // Reroute requests wait until this time (SystemClock.elapsedRealtime), longer after every failed one
+    private long nextRerouteTime;
+    private long rerouteBackoffMillis = REROUTE_MIN_INTERVAL_MILLIS;
     private NavRoute navRoute;
     private String navRouteError;
     private CameraPosition cameraPosition;
-    private List<Integer> routeStepCoordCounts;
+    private MapRouteProgressTracker routeProgressTracker;
     private Polyline routePolyline;
+    private MapPolylineSimplifier routePolylineSimplifier;
+    // Whole zoom level the shown route polyline is simplified for
+    private int routePolylineZoomLevel;
     private NavStatus navStatus = NavStatus.UNKNOWN;
     private boolean navAutoUpdate;
     private int currentLegIndex = 0;
@@ -113,12 +117,22 @@ public class MapDirectionsActivity extends MapActivity implements Navigation.Nav
 
     //Navigation UI
     private static final String TRAVEL_MODE_PREFS_KEY = "directions.travelMode";
+    // Deviation of the simplified route polyline from the route, in map pixels (dp)
+    private static final double ROUTE_POLYLINE_TOLERANCE_PIXELS = 1.0d;
+    // Minimal distance along the route from the progress to the point a detour rejoins the route
+    private static final double REROUTE_REJOIN_AHEAD_METERS = 100.0d;
+    // Minimal time between reroute requests, doubled after every failed request up to the maximum
+    private static final long REROUTE_MIN_INTERVAL_MILLIS = 5000;
+    private static final long REROUTE_MAX_INTERVAL_MILLIS = 120000;
     private static final String[] TRAVEL_MODES = {Navigation.TRAVEL_MODE_WALKING, Navigation.TRAVEL_MODE_BICYCLING,
             Navigation.TRAVEL_MODE_DRIVING, Navigation.TRAVEL_MODE_TRANSIT};
     private String selectedTravelMode;
     private Map<String, View> travelModesMap;
+    private Map<String, TextView> travelModeEtaLabels;
+    private boolean prefetchTravelModes;
     private View navRefreshButton;
     private View navTravelModesContainer;
+    private View navTravelModeEtasContainer;
     private View navAutoUpdateButton;
     private View navPrevButton;
     private View navNextButton;
@@ -162,6 +176,9 @@ public class MapDirectionsActivity extends MapActivity implements Navigation.Nav
         if (navigation != null) {
             navigation.dismiss();
         }
+        if (rerouteNavigation != null) {
+            rerouteNavigation.dismiss();
+        }
     }
 
     //endregion
@@ -221,6 +238,7 @@ public class MapDirectionsActivity extends MapActivity implements Navigation.Nav
 
     private void onCameraIdle() {
         updateExploreMarkerAppearance();
+        updateRoutePolylineDetail();
     }
 
     //endregion
@@ -256,8 +274,10 @@ public class MapDirectionsActivity extends MapActivity implements Navigation.Nav
                 firstLocationUpdatePassed = true;
                 initExplore(coreLocation);
                 handleFirstLocationUpdate();
+                prefetchTravelModeRoutes();
             }
 
+            updateRouteProgress();
             if ((navStatus == NavStatus.PROGRESS) && navAutoUpdate) {
                 updateNavByCurrentLocation();
             } else {
@@ -265,7 +285,13 @@ public class MapDirectionsActivity extends MapActivity implements Navigation.Nav
             }
 
             if ((debugStatusView != null) && showDebugLocation) {
-                debugStatusView.setText(String.format(Locale.getDefault(), "[%.6f, %.6f]", coreLocation.getLatitude(), coreLocation.getLongitude()));
+                String debugStatus = String.format(Locale.getDefault(), "[%.6f, %.6f]", coreLocation.getLatitude(), coreLocation.getLongitude());
+                NavRouteSegmentPath segmentPath = findNearestRouteSegmentByCurrentLocation();
+                if (isValidSegmentPath(segmentPath)) {
+                    // Distance along the route / cross-track error
+                    debugStatus += String.format(Locale.getDefault(), " %.0fm / %+.1fm", segmentPath.distanceAlongRoute, segmentPath.crossTrackError);
+                }
+                debugStatusView.setText(debugStatus);
             }
         }
     }
@@ -318,15 +344,9 @@ public class MapDirectionsActivity extends MapActivity implements Navigation.Nav
         }
         initDebugView();
         showDirectionsUiViews();
-        iconGenerator = new IconGenerator(this);
-        iconGenerator.setBackground(getDrawable(R.color.transparent));
-        LayoutInflater inflater = (LayoutInflater) getSystemService(Context.LAYOUT_INFLATER_SERVICE);
-        if (inflater != null) {
-            markerLayoutView = inflater.inflate(R.layout.marker_info_layout, null);
-            markerGroupLayoutView = inflater.inflate(R.layout.marker_group_layout, null);
-        }
         navRefreshButton = findViewById(R.id.navRefreshButton);
         navTravelModesContainer = findViewById(R.id.navTravelModesContainer);
+        navTravelModeEtasContainer = findViewById(R.id.navTravelModeEtasContainer);
         navAutoUpdateButton = findViewById(R.id.navAutoUpdateButton);
         navPrevButton = findViewById(R.id.navPrevButton);
         navNextButton = findViewById(R.id.navNextButton);
@@ -348,7 +368,7 @@ public class MapDirectionsActivity extends MapActivity implements Navigation.Nav
     private void buildExploreMarker() {
         if (exploreLocation != null) {
             LatLng locationLatLng = Utils.Explore.optLatLng(exploreLocation);
-            MarkerOptions markerOptions = Utils.Explore.constructMarkerOptions(this, explore, locationLatLng, markerLayoutView, markerGroupLayoutView, iconGenerator);
+            MarkerOptions markerOptions = Utils.Explore.constructMarkerOptions(this, explore, locationLatLng, Utils.Explore.getMarkerZoomBand(googleMap.getCameraPosition().zoom));
             if (markerOptions != null) {
                 exploreMarker = googleMap.addMarker(markerOptions);
                 JSONObject tagJson = Utils.Explore.constructMarkerTagJson(this, exploreMarker.getTitle(), explore);
@@ -362,8 +382,7 @@ public class MapDirectionsActivity extends MapActivity implements Navigation.Nav
         float currentCameraZoom = googleMap.getCameraPosition().zoom;
         boolean updateMarkerInfo = (currentCameraZoom != cameraZoom);
         if (updateMarkerInfo) {
-            boolean singleExploreMarker = Utils.Explore.optSingleExploreMarker(exploreMarker);
-            Utils.Explore.updateCustomMarkerAppearance(this, exploreMarker, singleExploreMarker, currentCameraZoom, cameraZoom, markerLayoutView, markerGroupLayoutView, iconGenerator);
+            Utils.Explore.updateCustomMarkerAppearance(this, exploreMarker, currentCameraZoom, cameraZoom);
         }
         cameraZoom = currentCameraZoom;
     }
@@ -413,13 +432,15 @@ public class MapDirectionsActivity extends MapActivity implements Navigation.Nav
             routePolyline.remove();
             routePolyline = null;
         }
+        routePolylineSimplifier = null;
         removeMarker(segmentStartMarker);
         segmentStartMarker = null;
         removeMarker(segmentEndMarker);
         segmentEndMarker = null;
         removePolyline(segmentPolyline);
         segmentPolyline = null;
-        routeStepCoordCounts = null;
+        routeProgressTracker = null;
+        cancelReroute();
         navStatus = NavStatus.UNKNOWN;
         navAutoUpdate = false;
 
@@ -527,24 +548,33 @@ public class MapDirectionsActivity extends MapActivity implements Navigation.Nav
             selectedTravelMode = preferences.getString(TRAVEL_MODE_PREFS_KEY, Navigation.TRAVEL_MODE_WALKING);
         }
         travelModesMap = new HashMap<>();
+        travelModeEtaLabels = new HashMap<>();
         for (String currentTravelMode : TRAVEL_MODES) {
             View travelModeView = null;
+            TextView travelModeEtaLabel = null;
             switch (currentTravelMode) {
                 case Navigation.TRAVEL_MODE_WALKING:
                     travelModeView = findViewById(R.id.walkTravelModeButton);
+                    travelModeEtaLabel = findViewById(R.id.walkTravelModeEtaLabel);
                     break;
                 case Navigation.TRAVEL_MODE_BICYCLING:
                     travelModeView = findViewById(R.id.bikeTravelModeButton);
+                    travelModeEtaLabel = findViewById(R.id.bikeTravelModeEtaLabel);
                     break;
                 case Navigation.TRAVEL_MODE_DRIVING:
                     travelModeView = findViewById(R.id.driveTravelModeButton);
+                    travelModeEtaLabel = findViewById(R.id.driveTravelModeEtaLabel);
                     break;
                 case Navigation.TRAVEL_MODE_TRANSIT:
                     travelModeView = findViewById(R.id.transitTravelModeButton);
+                    travelModeEtaLabel = findViewById(R.id.transitTravelModeEtaLabel);
                     break;
                 default:
                     break;
             }
+            if (travelModeEtaLabel != null) {
+                travelModeEtaLabels.put(currentTravelMode, travelModeEtaLabel);
+            }
             if (travelModeView != null) {
                 travelModesMap.put(currentTravelMode, travelModeView);
                 if (currentTravelMode.equals(selectedTravelMode)) {
@@ -579,6 +609,42 @@ public class MapDirectionsActivity extends MapActivity implements Navigation.Nav
         navigation.findRoutesFromOrigin(originCoord, destinationCoord, travelModeValue);
     }
 
+    /**
+     * Requests the routes of the other travel modes in the background, when enabled by the "prefetchTravelModes" option.
+     * Switching to a prefetched travel mode does not wait for the network, the travel mode buttons show the prefetched durations.
+     */
+    private void prefetchTravelModeRoutes() {
+        if (!prefetchTravelModes || (coreLocation == null)) {
+            return;
+        }
+        NavCoord destinationCoord = getRouteDestinationCoord();
+        if (destinationCoord == null) {
+            return;
+        }
+        NavCoord originCoord = new NavCoord(coreLocation.getLatitude(), coreLocation.getLongitude());
+        List<String> travelModes = new ArrayList<>();
+        for (String travelMode : TRAVEL_MODES) {
+            // The selected travel mode is requested by buildRoute
+            if (!travelMode.equals(selectedTravelMode)) {
+                travelModes.add(travelMode);
+            }
+        }
+        navigation.prefetchRoutesFromOrigin(originCoord, destinationCoord, travelModes.toArray(new String[0]));
+    }
+
+    private void onTravelModeRoutesPrefetched(String travelMode, List<NavRoute> routes) {
+        updateTravelModeEta(travelMode, !routes.isEmpty() ? routes.get(0) : null);
+    }
+
+    private void updateTravelModeEta(String travelMode, NavRoute route) {
+        TextView etaLabel = (travelModeEtaLabels != null) ? travelModeEtaLabels.get(travelMode) : null;
+        if (etaLabel == null) {
+            return;
+        }
+        Integer duration = (route != null) ? route.getDuration() : null;
+        etaLabel.setText((duration != null) ? formatDisplayDuration(Math.abs(duration)) : "");
+    }
+
     /***
      * Calculates route destination {@link NavCoord} based on explore type.
      * @return parking entrance if explore is Parking, explore location - otherwise
@@ -610,13 +676,15 @@ public class MapDirectionsActivity extends MapActivity implements Navigation.Nav
                 routePolyline.remove();
                 routePolyline = null;
             }
+            routePolylineSimplifier = null;
             removeMarker(segmentStartMarker);
             segmentStartMarker = null;
             removeMarker(segmentEndMarker);
             segmentEndMarker = null;
             removePolyline(segmentPolyline);
             segmentPolyline = null;
-            routeStepCoordCounts = null;
+            routeProgressTracker = null;
+            cancelReroute();
             navStatus = NavStatus.UNKNOWN;
             navAutoUpdate = false;
             if (travelModesMap != null) {
@@ -706,25 +774,56 @@ public class MapDirectionsActivity extends MapActivity implements Navigation.Nav
     }
 
     private void buildRoutePolyline() {
-        routeStepCoordCounts = new ArrayList<>();
-        List<LatLng> routePoints = new ArrayList<>();
-        for (NavRouteLeg routeLeg : navRoute.getLegs()) {
-            for (NavRouteStep routeStep : routeLeg.getSteps()) {
-                NavPolyline routePolyline = routeStep.getPolyline();
-                if (routePolyline != null) {
-                    List<LatLng> polylinePoints = routePolyline.getLatLngCoordinates();
-                    if (polylinePoints != null) {
-                        routePoints.addAll(polylinePoints);
-                        routeStepCoordCounts.add(polylinePoints.size());
-                    }
+        MapRouteSnapper.Builder routeSnapperBuilder = new MapRouteSnapper.Builder();
+        List<LatLng> routeLatLngs = new ArrayList<>();
+        List<NavRouteLeg> routeLegs = navRoute.getLegs();
+        for (int legIndex = 0; legIndex < routeLegs.size(); legIndex++) {
+            List<NavRouteStep> legSteps = routeLegs.get(legIndex).getSteps();
+            for (int stepIndex = 0; stepIndex < legSteps.size(); stepIndex++) {
+                NavPolyline routePolyline = legSteps.get(stepIndex).getPolyline();
+                List<LatLng> polylinePoints = (routePolyline != null) ? routePolyline.getLatLngCoordinates() : null;
+                if (polylinePoints != null) {
+                    routeLatLngs.addAll(polylinePoints);
                 }
+                // Every step is added, steps without points just get no segments
+                routeSnapperBuilder.addStep(legIndex, stepIndex, routePolyline);
             }
         }
+        routeProgressTracker = new MapRouteProgressTracker(routeSnapperBuilder.build(), navRoute);
+        updateRouteProgress();
+        routePolylineSimplifier = new MapPolylineSimplifier(routeLatLngs);
         if (googleMap != null) {
-            routePolyline = googleMap.addPolyline(new PolylineOptions().addAll(routePoints));
+            routePolylineZoomLevel = (int) Math.floor(googleMap.getCameraPosition().zoom);
+            List<LatLng> routeDisplayLatLngs = simplifyRoutePolyline(routePolylineZoomLevel);
+            if (routePolyline != null) {
+                // Rerouted - the detour and the kept steps replace the points of the shown polyline
+                routePolyline.setPoints(routeDisplayLatLngs);
+            } else {
+                routePolyline = googleMap.addPolyline(new PolylineOptions().addAll(routeDisplayLatLngs));
+            }
+        }
+    }
+
+    /**
+     * Simplifies the shown route polyline for the camera zoom, when it moved to another whole zoom level.
+     */
+    private void updateRoutePolylineDetail() {
+        if ((routePolyline == null) || (routePolylineSimplifier == null) || (googleMap == null)) {
+            return;
+        }
+        int zoomLevel = (int) Math.floor(googleMap.getCameraPosition().zoom);
+        if (zoomLevel != routePolylineZoomLevel) {
+            routePolylineZoomLevel = zoomLevel;
+            routePolyline.setPoints(simplifyRoutePolyline(zoomLevel));
         }
     }
 
+    private List<LatLng> simplifyRoutePolyline(int zoomLevel) {
+        // The tolerance of the next zoom level keeps the deviation under the limit at every zoom of this level
+        double tolerance = routePolylineSimplifier.getTolerance(zoomLevel + 1, ROUTE_POLYLINE_TOLERANCE_PIXELS);
+        return routePolylineSimplifier.simplify(tolerance);
+    }
+
     private Polyline placePolylineForStep(Polyline polyline, NavRouteStep step) {
         List<LatLng> coordinates = ((step != null) && (step.getPolyline() != null)) ? step.getPolyline().getLatLngCoordinates() : null;
         if (coordinates == null) {
@@ -812,6 +911,9 @@ public class MapDirectionsActivity extends MapActivity implements Navigation.Nav
         int travelModesVisibility = ((navStatus != NavStatus.UNKNOWN) && (navStatus != NavStatus.START)) ? View.GONE : View.VISIBLE;
         navTravelModesContainer.setVisibility(travelModesVisibility);
         enableView(navTravelModesContainer, true);
+        if (navTravelModeEtasContainer != null) {
+            navTravelModeEtasContainer.setVisibility(prefetchTravelModes ? travelModesVisibility : View.GONE);
+        }
 
         int autoUpdateVisibility = ((navStatus != NavStatus.PROGRESS) || navAutoUpdate) ? View.GONE : View.VISIBLE;
         navAutoUpdateButton.setVisibility(autoUpdateVisibility);
@@ -834,18 +936,21 @@ public class MapDirectionsActivity extends MapActivity implements Navigation.Nav
             List<NavRouteStep> routeSteps = (leg != null) ? leg.getSteps() : null;
             NavRouteStep step = ((routeSteps != null) && (currentStepIndex >= 0) && (currentStepIndex < routeSteps.size())) ?
                     routeSteps.get(currentStepIndex) : null;
+            String progressDescription = buildRouteProgressDescription();
+            String plainProgressRow = !Utils.Str.isEmpty(progressDescription) ? String.format("\n(%s)", progressDescription) : "";
             if (step != null) {
                 if (step.getHtmlInstructions() != null) {
-                    setStepHtml(step.getHtmlInstructions());
+                    String htmlProgressRow = !Utils.Str.isEmpty(progressDescription) ? String.format("<br>(%s)", progressDescription) : "";
+                    setStepHtml(step.getHtmlInstructions() + htmlProgressRow);
                 } else if (step.getManeuver() != null) {
-                    navStepLabel.setText(step.getManeuver());
+                    navStepLabel.setText(step.getManeuver() + plainProgressRow);
                 } else if (!Utils.Str.isEmpty(step.getDistance().getText()) || !Utils.Str.isEmpty(step.getDuration().getText())) {
                     String plainStepText = String.format("%s / %s", step.getDistance().getText(), step.getDuration().getText());
-                    navStepLabel.setText(plainStepText);
+                    navStepLabel.setText(plainStepText + plainProgressRow);
                 }
             } else {
                 String plainStepText = String.format(getString(R.string.routeLegStepFormat), (currentLegIndex + 1), (currentStepIndex + 1));
-                navStepLabel.setText(plainStepText);
+                navStepLabel.setText(plainStepText + plainProgressRow);
             }
 
             enableView(navPrevButton, true);
@@ -888,42 +993,113 @@ public class MapDirectionsActivity extends MapActivity implements Navigation.Nav
         }
         if (modified) {
             moveTo(currentLegIndex, currentStepIndex);
-            updateNav();
         }
+        // Remaining distance and time change on every fix
+        updateNav();
     }
 
     @NonNull
     private NavRouteSegmentPath findNearestRouteSegmentByCurrentLocation() {
-        NavRouteSegmentPath minRouteSegmentPath = new NavRouteSegmentPath(-1, -1);
-        if ((coreLocation != null) && (navRoute != null)) {
-            double minLegDistance = -1;
-            LatLng locationLatLng = new LatLng(coreLocation.getLatitude(), coreLocation.getLongitude());
-            int globalStepIndex = 0;
-            int locationIndex = 0;
-            List<LatLng> routePolylinePoints = routePolyline.getPoints();
+        if ((coreLocation != null) && (navRoute != null) && (routeProgressTracker != null)) {
+            MapRouteSnapper.Snap snap = routeProgressTracker.getSnap();
+            if (snap != null) {
+                return new NavRouteSegmentPath(snap.getLegIndex(), snap.getStepIndex(), snap.getDistanceAlongRoute(), snap.getCrossTrackError());
+            }
+        }
+        return new NavRouteSegmentPath(-1, -1, 0.0d, 0.0d);
+    }
+
+    /**
+     * Matches the current location to the route, once per location fix.
+     */
+    private void updateRouteProgress() {
+        if ((coreLocation != null) && (routeProgressTracker != null)) {
+            double accuracy = coreLocation.hasAccuracy() ? coreLocation.getAccuracy() : 0.0d;
+            routeProgressTracker.update(coreLocation.getLatitude(), coreLocation.getLongitude(), accuracy);
+            if (routeProgressTracker.isOffRoute()) {
+                requestReroute();
+            }
+        }
+    }
+
+    /**
+     * Requests a detour from the current location to the end of the first step that ends at least
+     * {@link #REROUTE_REJOIN_AHEAD_METERS} past the progress on the route, or to the destination if there is no such step.
+     * Transit routes are always rerouted to the destination.
+     * Requests are at least {@link #REROUTE_MIN_INTERVAL_MILLIS} apart, failed requests back the next one off exponentially.
+     */
+    private void requestReroute() {
+        if ((navStatus != NavStatus.PROGRESS) || (pendingReroute != null) || (navRoute == null) ||
+                (coreLocation == null) || (rerouteNavigation == null) || (SystemClock.elapsedRealtime() < nextRerouteTime)) {
+            return;
+        }
+        String travelMode = (selectedTravelMode != null) ? selectedTravelMode : Navigation.TRAVEL_MODE_WALKING;
+        int rejoinLegIndex = -1;
+        int rejoinStepIndex = -1;
+        NavCoord rejoinCoord = getRouteDestinationCoord();
+        if (!Navigation.TRAVEL_MODE_TRANSIT.equals(travelMode)) {
+            double rejoinDistance = routeProgressTracker.getDistanceTravelled() + REROUTE_REJOIN_AHEAD_METERS;
             List<NavRouteLeg> routeLegs = navRoute.getLegs();
-            for (int legIndex = 0; legIndex < routeLegs.size(); legIndex++) {
-                NavRouteLeg routeLeg = routeLegs.get(legIndex);
-                List<NavRouteStep> legSteps = routeLeg.getSteps();
-                for (int stepIndex = 0; stepIndex < legSteps.size(); stepIndex++) {
-                    int increasedIndex = (globalStepIndex < routeStepCoordCounts.size()) ? routeStepCoordCounts.get(globalStepIndex) : 0;
-                    int lastLocationIndex = locationIndex + increasedIndex;
-                    while (locationIndex < lastLocationIndex) {
-                        LatLng latLng = routePolylinePoints.get(locationIndex);
-                        Double coordDistance = Utils.Location.getDistanceBetween(locationLatLng, latLng);
-                        if (coordDistance != null && (minLegDistance < 0.0d || coordDistance < minLegDistance)) {
-                            minLegDistance = coordDistance;
-                            minRouteSegmentPath = new NavRouteSegmentPath(legIndex, stepIndex);
-                            locationIndex = lastLocationIndex;
-                            break;
-                        }
-                        locationIndex++;
+            for (int legIndex = 0; (legIndex < routeLegs.size()) && (rejoinLegIndex < 0); legIndex++) {
+                List<NavRouteStep> legSteps = routeLegs.get(legIndex).getSteps();
+                // The last step of the route ends at the destination
+                boolean lastLeg = (legIndex == (routeLegs.size() - 1));
+                int stepsCount = lastLeg ? (legSteps.size() - 1) : legSteps.size();
+                for (int stepIndex = 0; stepIndex < stepsCount; stepIndex++) {
+                    if (routeProgressTracker.getStepEndDistance(legIndex, stepIndex) >= rejoinDistance) {
+                        rejoinLegIndex = legIndex;
+                        rejoinStepIndex = stepIndex;
+                        rejoinCoord = legSteps.get(stepIndex).getEndLocation();
+                        break;
                     }
-                    globalStepIndex++;
                 }
             }
         }
-        return minRouteSegmentPath;
+        if (rejoinCoord == null) {
+            return;
+        }
+        NavCoord originCoord = new NavCoord(coreLocation.getLatitude(), coreLocation.getLongitude());
+        pendingReroute = new RerouteRequest(navRoute, rejoinLegIndex, rejoinStepIndex);
+        nextRerouteTime = SystemClock.elapsedRealtime() + rerouteBackoffMillis;
+        rerouteNavigation.findRoutesFromOrigin(originCoord, rejoinCoord, travelMode);
+    }
+
+    private void onRerouteResponse(List<NavRoute> routes, String errorResponse) {
+        RerouteRequest reroute = pendingReroute;
+        pendingReroute = null;
+        if ((reroute == null) || (reroute.route != navRoute) || (routeProgressTracker == null)) {
+            // The route changed meanwhile
+            return;
+        }
+        if ((routes == null) || routes.isEmpty()) {
+            Log.e(TAG, "Failed to reroute: " + errorResponse);
+            // Offline or no route: the tracker stays off the route, do not retry on every location fix
+            rerouteBackoffMillis = Math.min(2 * rerouteBackoffMillis, REROUTE_MAX_INTERVAL_MILLIS);
+            nextRerouteTime = SystemClock.elapsedRealtime() + rerouteBackoffMillis;
+            return;
+        }
+        rerouteBackoffMillis = REROUTE_MIN_INTERVAL_MILLIS;
+        if (!routeProgressTracker.isOffRoute()) {
+            // Back on the route before the detour arrived
+            return;
+        }
+        navRoute = NavRoute.createRejoinedRoute(routes.get(0), reroute.route, reroute.rejoinLegIndex, reroute.rejoinStepIndex);
+        buildRoutePolyline();
+        currentLegIndex = 0;
+        currentStepIndex = 0;
+        if (navAutoUpdate) {
+            moveTo(currentLegIndex, currentStepIndex);
+        }
+        updateNav();
+    }
+
+    private void cancelReroute() {
+        pendingReroute = null;
+        nextRerouteTime = 0;
+        rerouteBackoffMillis = REROUTE_MIN_INTERVAL_MILLIS;
+        if (rerouteNavigation != null) {
+            rerouteNavigation.dismiss();
+        }
     }
 
     private boolean isValidSegmentPath(NavRouteSegmentPath segmentPath) {
@@ -958,15 +1134,7 @@ public class MapDirectionsActivity extends MapActivity implements Navigation.Nav
         if (navRoute.getLegs().size() == 1) {
             displayDistance = navRoute.getLegs().get(0).getDistance().getText();
         } else if ((navRoute.getDistance() != null) && (navRoute.getDistance() > 0)) {
-            // 1 foot = 0.3048 meters
-            // 1 mile = 1609.34 meters
-
-            long totalMeters = Math.abs(navRoute.getDistance());
-            double totalMiles = (totalMeters / 1609.34d);
-            if (descriptionBuilder.length() > 0) {
-                descriptionBuilder.append(", ");
-            }
-            displayDistance = String.format(Locale.getDefault(), "%.1f %s", totalMiles, getString((totalMiles != 1.0) ? R.string.miles : R.string.mile));
+            displayDistance = formatDisplayDistance(Math.abs(navRoute.getDistance()));
         }
         if (!Utils.Str.isEmpty(displayDistance)) {
             descriptionBuilder.append(displayDistance);
@@ -977,20 +1145,7 @@ public class MapDirectionsActivity extends MapActivity implements Navigation.Nav
         if (navRoute.getLegs().size() == 1) {
             displayDuration = navRoute.getLegs().get(0).getDuration().getText();
         } else if ((navRoute.getDuration() != null) && (navRoute.getDuration() > 0)) {
-            long totalSeconds = Math.abs(navRoute.getDuration());
-            long totalMinutes = totalSeconds / 60;
-            long totalHours = totalMinutes / 60;
-            long minutes = totalMinutes % 60;
-
-            String formattedTime;
-            if (totalHours < 1) {
-                formattedTime = String.format(Locale.getDefault(), "%d %s", minutes, getString(R.string.minute));
-            } else if (totalHours < 24) {
-                formattedTime = String.format(Locale.getDefault(), "%d h %2d %s", totalHours, minutes, getString(R.string.minute));
-            } else {
-                formattedTime = String.format(Locale.getDefault(), "%d h", totalHours);
-            }
-            displayDuration = formattedTime;
+            displayDuration = formatDisplayDuration(Math.abs(navRoute.getDuration()));
         }
 
         if (!Utils.Str.isEmpty(displayDuration)) {
@@ -1007,6 +1162,41 @@ public class MapDirectionsActivity extends MapActivity implements Navigation.Nav
         return descriptionBuilder.toString();
     }
 
+    /**
+     * @return remaining distance and time from the route progress, null before the location is matched to the route
+     */
+    private String buildRouteProgressDescription() {
+        if ((routeProgressTracker == null) || (routeProgressTracker.getSnap() == null)) {
+            return null;
+        }
+        String displayDistance = formatDisplayDistance(Math.round(routeProgressTracker.getRemainingDistance()));
+        String displayDuration = formatDisplayDuration(Math.round(routeProgressTracker.getRemainingDuration()));
+        return String.format("%s, %s", displayDistance, displayDuration);
+    }
+
+    private String formatDisplayDistance(long totalMeters) {
+        // 1 foot = 0.3048 meters
+        // 1 mile = 1609.34 meters
+        double totalMiles = (totalMeters / 1609.34d);
+        return String.format(Locale.getDefault(), "%.1f %s", totalMiles, getString((totalMiles != 1.0) ? R.string.miles : R.string.mile));
+    }
+
+    private String formatDisplayDuration(long totalSeconds) {
+        long totalMinutes = totalSeconds / 60;
+        long totalHours = totalMinutes / 60;
+        long minutes = totalMinutes % 60;
+
+        String formattedTime;
+        if (totalHours < 1) {
+            formattedTime = String.format(Locale.getDefault(), "%d %s", minutes, getString(R.string.minute));
+        } else if (totalHours < 24) {
+            formattedTime = String.format(Locale.getDefault(), "%d h %2d %s", totalHours, minutes, getString(R.string.minute));
+        } else {
+            formattedTime = String.format(Locale.getDefault(), "%d h", totalHours);
+        }
+        return formattedTime;
+    }
+
     private void notifyRouteStart() {
         notifyRouteEvent("map.route.start");
     }
@@ -1040,12 +1230,22 @@ public class MapDirectionsActivity extends MapActivity implements Navigation.Nav
 
     private void initNavigation() {
         this.navigation = new Navigation(this, this);
+        this.rerouteNavigation = new Navigation(this, this::onRerouteResponse);
+        // Maps the offline walking graph now, the first walking route does not wait for it then
+        NavOfflineRouter.getInstance(this).open();
+        prefetchTravelModes = Utils.Map.getValueFromPath(options, "prefetchTravelModes", false);
+        if (prefetchTravelModes) {
+            navigation.setPrefetchListener(this::onTravelModeRoutesPrefetched);
+        }
     }
 
     @Override
     public void onNavigationResponse(List<NavRoute> routes, String errorResponse) {
         navRoute = (routes != null) ? routes.get(0) : null;
         navRouteError = errorResponse;
+        if (prefetchTravelModes && (navRoute != null)) {
+            updateTravelModeEta(selectedTravelMode, navRoute);
+        }
         didBuildRoute();
     }
 
@@ -1089,15 +1289,38 @@ public class MapDirectionsActivity extends MapActivity implements Navigation.Nav
 
     //endregion
 
+    //region RerouteRequest
+
+    private static class RerouteRequest {
+        // The route the detour is joined to
+        private final NavRoute route;
+        private final int rejoinLegIndex;
+        private final int rejoinStepIndex;
+
+        private RerouteRequest(NavRoute route, int rejoinLegIndex, int rejoinStepIndex) {
+            this.route = route;
+            this.rejoinLegIndex = rejoinLegIndex;
+            this.rejoinStepIndex = rejoinStepIndex;
+        }
+    }
+
+    //endregion
+
     //region NavRouteSegmentPath
 
     private static class NavRouteSegmentPath {
         private final int legIndex;
         private final int stepIndex;
+        // Meters from the route start to the location snapped to the route
+        private final double distanceAlongRoute;
+        // Meters from the route, positive on the right side of the travel direction
+        private final double crossTrackError;
 
-        private NavRouteSegmentPath(int legIndex, int stepIndex) {
+        private NavRouteSegmentPath(int legIndex, int stepIndex, double distanceAlongRoute, double crossTrackError) {
             this.legIndex = legIndex;
             this.stepIndex = stepIndex;
+            this.distanceAlongRoute = distanceAlongRoute;
+            this.crossTrackError = crossTrackError;
         }
     }
 
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.rokwire.maps;
+
+import android.content.Context;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import edu.illinois.rokwire.Utils;
+
+/**
+ * Explore compiled once from its raw map, so that map, clustering and marker code do not probe the map again.
+ * The raw map is kept as it is for the marker tags and the calls back to Flutter.
+ */
+public class MapExplore {
+    private final HashMap rawExplore;
+    private final Utils.ExploreType type;
+    private final String id;
+    private final boolean hasLocation;
+    private final double latitude;
+    private final double longitude;
+    private final LatLng latLng;
+    private final Integer floor;
+    private final String title;
+    private final String snippet;
+    private final int iconResource;
+
+    private MapExplore(Context context, HashMap rawExplore) {
+        this.rawExplore = rawExplore;
+        this.type = Utils.Explore.getExploreType(rawExplore);
+        this.id = Utils.Explore.optExploreId(rawExplore);
+        this.latLng = Utils.Explore.optLocationLatLng(rawExplore);
+        this.hasLocation = (latLng != null);
+        this.latitude = hasLocation ? latLng.latitude : 0.0d;
+        this.longitude = hasLocation ? latLng.longitude : 0.0d;
+        this.floor = Utils.Explore.optLocationFloor(rawExplore);
+        this.title = Utils.Explore.getExploreTitle(context, rawExplore);
+        this.snippet = Utils.Str.nullIfEmpty(Utils.Explore.getExploreSnippet(context, rawExplore));
+        this.iconResource = Utils.Explore.getSingleExploreIconResource(type);
+    }
+
+    public static MapExplore compile(Context context, HashMap rawExplore) {
+        return (rawExplore != null) ? new MapExplore(context, rawExplore) : null;
+    }
+
+    /**
+     * @return compiled explores of all {@link HashMap} items in the list, in their order
+     */
+    public static List<MapExplore> compileList(Context context, List rawExplores) {
+        List<MapExplore> explores = new ArrayList<>((rawExplores != null) ? rawExplores.size() : 0);
+        if (rawExplores != null) {
+            for (Object rawExplore : rawExplores) {
+                if (rawExplore instanceof HashMap) {
+                    explores.add(new MapExplore(context, (HashMap) rawExplore));
+                }
+            }
+        }
+        return explores;
+    }
+
+    public HashMap getRawExplore() {
+        return rawExplore;
+    }
+
+    public Utils.ExploreType getType() {
+        return type;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public boolean hasLocation() {
+        return hasLocation;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    /**
+     * @return location of the explore, null if it has none
+     */
+    public LatLng getLatLng() {
+        return latLng;
+    }
+
+    public Integer getFloor() {
+        return floor;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * @return snippet of the explore, null if it is empty
+     */
+    public String getSnippet() {
+        return snippet;
+    }
+
+    public int getIconResource() {
+        return iconResource;
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.rokwire.maps;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Explore clusters precomputed for every integer zoom level from {@link #MIN_ZOOM} to {@link #MAX_ZOOM}.
+ * Levels are built bottom-up: the clusters of zoom z are made by grouping the clusters of zoom z + 1
+ * with the threshold distance for zoom z, so every cluster is the union of its children one level deeper.
+ * Only the deepest level is grouped from the explores themselves, every coarser level groups the weighted centroids
+ * of the clusters one level deeper, so the cost of a level falls with the count of its clusters.
+ * Coarser levels are therefore not what {@link MapExploreClusterer#buildExplores} gives for the explores with the same threshold:
+ * clusters merge when their centroids are within the threshold, so explores within it can stay apart in clusters
+ * whose centroids are farther, and explores much farther apart than the threshold can share a cluster.
+ * A cluster that is not merged on a level is carried over as the same instance.
+ * Building throws {@link CancellationException} when the building thread gets interrupted.
+ */
+public class MapExploreClusterHierarchy {
+
+    public static final int MIN_ZOOM = 0;
+    public static final int MAX_ZOOM = 18;
+
+    private final List<List<Object>> levels;
+    private final IdentityHashMap<Object, Cluster> clusters;
+
+    public MapExploreClusterHierarchy(List<MapExplore> explores, MapSpatialIndex exploresIndex) {
+        List<MapExploreClusterer.ClusterPoint> points = MapExploreClusterer.buildPoints(explores);
+        clusters = new IdentityHashMap<>();
+        levels = new ArrayList<>(Collections.nCopies(MAX_ZOOM - MIN_ZOOM + 1, (List<Object>) null));
+
+        List<Cluster> levelClusters = new ArrayList<>(points.size());
+        int[] levelIds = new int[points.size()];
+        for (int pointIndex = 0; pointIndex < points.size(); pointIndex++) {
+            MapExploreClusterer.ClusterPoint point = points.get(pointIndex);
+            levelClusters.add(new Cluster(Collections.singletonList(point), null, MAX_ZOOM));
+            levelIds[pointIndex] = point.exploreIndex;
+        }
+        // The explores index serves the single explore clusters, coarser levels index the centroids of their clusters
+        MapSpatialIndex levelIndex = exploresIndex;
+        for (int zoom = MAX_ZOOM; zoom >= MIN_ZOOM; zoom--) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new CancellationException("Cluster hierarchy build interrupted");
+            }
+            int clustersCount = levelClusters.size();
+            double[] latitudes = new double[clustersCount];
+            double[] longitudes = new double[clustersCount];
+            Integer[] floors = new Integer[clustersCount];
+            for (int clusterIndex = 0; clusterIndex < clustersCount; clusterIndex++) {
+                Cluster cluster = levelClusters.get(clusterIndex);
+                latitudes[clusterIndex] = cluster.latitude;
+                longitudes[clusterIndex] = cluster.longitude;
+                floors[clusterIndex] = cluster.floor;
+            }
+            double thresholdDistance = MapView.getThresholdDistance(zoom);
+            List<List<Integer>> clusterGroups = MapExploreClusterer.groupPoints(latitudes, longitudes, floors, levelIds, levelIndex,
+                    thresholdDistance);
+            List<Cluster> parentClusters = new ArrayList<>(clusterGroups.size());
+            for (List<Integer> clusterGroup : clusterGroups) {
+                if (clusterGroup.size() == 1) {
+                    parentClusters.add(levelClusters.get(clusterGroup.get(0)));
+                } else {
+                    List<MapExploreClusterer.ClusterPoint> parentPoints = new ArrayList<>();
+                    List<Cluster> children = new ArrayList<>(clusterGroup.size());
+                    for (Integer clusterIndex : clusterGroup) {
+                        Cluster child = levelClusters.get(clusterIndex);
+                        parentPoints.addAll(child.points);
+                        children.add(child);
+                    }
+                    parentClusters.add(new Cluster(parentPoints, children, zoom));
+                }
+            }
+            List<Object> displayExplores = new ArrayList<>(parentClusters.size());
+            for (Cluster cluster : parentClusters) {
+                displayExplores.add(cluster.displayExplore);
+                clusters.put(cluster.displayExplore, cluster);
+            }
+            levels.set(zoom - MIN_ZOOM, displayExplores);
+
+            if (parentClusters.size() < clustersCount) {
+                MapPointArray centroids = new MapPointArray(parentClusters.size());
+                for (Cluster cluster : parentClusters) {
+                    centroids.add(cluster.latitude, cluster.longitude);
+                }
+                levelIndex = MapSpatialIndex.build(centroids);
+                levelIds = new int[parentClusters.size()];
+                for (int clusterIndex = 0; clusterIndex < levelIds.length; clusterIndex++) {
+                    levelIds[clusterIndex] = clusterIndex;
+                }
+            }
+            levelClusters = parentClusters;
+        }
+    }
+
+    public static int getZoomLevel(float zoom) {
+        return Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, Math.round(zoom)));
+    }
+
+    /**
+     * @return list of display explores for the zoom level nearest to the given zoom -
+     * a {@link HashMap} for a single explore or an {@link ArrayList} of {@link HashMap}s for a group.
+     */
+    public List<Object> getDisplayExplores(float zoom) {
+        List<Object> displayExplores = levels.get(getZoomLevel(zoom) - MIN_ZOOM);
+        return ((displayExplores != null) && !displayExplores.isEmpty()) ? displayExplores : null;
+    }
+
+    /**
+     * @return display explores of the clusters that were merged into the given display explore, null if it is not a group.
+     */
+    public List<Object> getClusterChildren(Object displayExplore) {
+        Cluster cluster = clusters.get(displayExplore);
+        if ((cluster == null) || (cluster.children == null)) {
+            return null;
+        }
+        List<Object> children = new ArrayList<>(cluster.children.size());
+        for (Cluster child : cluster.children) {
+            children.add(child.displayExplore);
+        }
+        return children;
+    }
+
+    /**
+     * @return the zoom level at which the given display explore splits into its children, -1 if it never splits.
+     */
+    public int getClusterExpansionZoom(Object displayExplore) {
+        Cluster cluster = clusters.get(displayExplore);
+        return ((cluster != null) && (cluster.children != null) && (cluster.zoom < MAX_ZOOM)) ? (cluster.zoom + 1) : -1;
+    }
+
+    private static class Cluster {
+        private final List<MapExploreClusterer.ClusterPoint> points;
+        private final List<Cluster> children;
+        private final int zoom;
+        private final Object displayExplore;
+        // Centroid of the explores, weighted by their count, and their common floor
+        private final double latitude;
+        private final double longitude;
+        private final Integer floor;
+
+        private Cluster(List<MapExploreClusterer.ClusterPoint> points, List<Cluster> children, int zoom) {
+            this.points = points;
+            this.children = children;
+            this.zoom = zoom;
+            double latitudesSum = 0.0d;
+            double longitudesSum = 0.0d;
+            for (MapExploreClusterer.ClusterPoint point : points) {
+                latitudesSum += point.latitude;
+                longitudesSum += point.longitude;
+            }
+            this.latitude = latitudesSum / points.size();
+            this.longitude = longitudesSum / points.size();
+            this.floor = points.get(0).floor;
+            if (points.size() == 1) {
+                this.displayExplore = points.get(0).explore;
+            } else {
+                ArrayList<HashMap> exploreGroup = new ArrayList<>(points.size());
+                for (MapExploreClusterer.ClusterPoint point : points) {
+                    exploreGroup.add(point.explore);
+                }
+                this.displayExplore = exploreGroup;
+            }
+        }
+    }
+}
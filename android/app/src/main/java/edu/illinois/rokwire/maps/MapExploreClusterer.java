@@ -0,0 +1,134 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.rokwire.maps;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Groups explores that are on the same floor and within a threshold distance of each other.
+ * Explores are grouped in their order: an explore joins the earliest created group that has a member on its floor
+ * within the threshold distance of it, otherwise it starts a new group. The earliest group comes from a lowest label query
+ * on the {@link MapSpatialIndex} of the explores labelled with their groups (see {@link MapSpatialIndex.PointLabels}),
+ * which takes whole nodes within the threshold at once, so a threshold spanning all explores does not make a pass quadratic.
+ */
+public class MapExploreClusterer {
+
+    /**
+     * @return list of display explores - a {@link HashMap} for a single explore or an {@link ArrayList} of {@link HashMap}s for a group.
+     */
+    public static List<Object> buildExplores(List<MapExplore> explores, MapSpatialIndex exploresIndex, double thresholdDistance) {
+        if (explores == null || explores.size() == 0) {
+            return null;
+        }
+        List<ClusterPoint> points = buildPoints(explores);
+        int pointsCount = points.size();
+        double[] latitudes = new double[pointsCount];
+        double[] longitudes = new double[pointsCount];
+        Integer[] floors = new Integer[pointsCount];
+        int[] ids = new int[pointsCount];
+        for (int pointIndex = 0; pointIndex < pointsCount; pointIndex++) {
+            ClusterPoint point = points.get(pointIndex);
+            latitudes[pointIndex] = point.latitude;
+            longitudes[pointIndex] = point.longitude;
+            floors[pointIndex] = point.floor;
+            ids[pointIndex] = point.exploreIndex;
+        }
+        List<List<Integer>> pointGroups = groupPoints(latitudes, longitudes, floors, ids, exploresIndex, thresholdDistance);
+
+        List<Object> resultExplores = new ArrayList<>(pointGroups.size());
+        for (List<Integer> pointGroup : pointGroups) {
+            if (pointGroup.size() == 1) {
+                resultExplores.add(points.get(pointGroup.get(0)).explore);
+            } else {
+                ArrayList<HashMap> mappedExploreGroup = new ArrayList<>(pointGroup.size());
+                for (Integer pointIndex : pointGroup) {
+                    mappedExploreGroup.add(points.get(pointIndex).explore);
+                }
+                resultExplores.add(mappedExploreGroup);
+            }
+        }
+        return resultExplores;
+    }
+
+    static List<ClusterPoint> buildPoints(List<MapExplore> explores) {
+        List<ClusterPoint> points = new ArrayList<>((explores != null) ? explores.size() : 0);
+        if (explores != null) {
+            int exploresCount = explores.size();
+            for (int exploreIndex = 0; exploreIndex < exploresCount; exploreIndex++) {
+                MapExplore explore = explores.get(exploreIndex);
+                if (explore.hasLocation()) {
+                    points.add(new ClusterPoint(explore, exploreIndex));
+                }
+            }
+        }
+        return points;
+    }
+
+    /**
+     * Groups points in their order, see the class description. Points are given in parallel arrays.
+     * @param ids ids of the points in the index
+     * @param index index of the points, it may hold ids of other points which are skipped
+     * @return groups of point indexes, every group ordered by point index, in group creation order
+     */
+    static List<List<Integer>> groupPoints(double[] latitudes, double[] longitudes, Integer[] floors, int[] ids,
+                                           MapSpatialIndex index, double thresholdDistance) {
+        int pointsCount = ids.length;
+        // Group indexes of the grouped points by floor, as labels of their ids
+        Map<Integer, MapSpatialIndex.PointLabels> floorGroupIndexes = new HashMap<>();
+        List<List<Integer>> pointGroups = new ArrayList<>();
+        for (int pointIndex = 0; pointIndex < pointsCount; pointIndex++) {
+            MapSpatialIndex.PointLabels groupIndexes = floorGroupIndexes.get(floors[pointIndex]);
+            if (groupIndexes == null) {
+                groupIndexes = index.newPointLabels();
+                floorGroupIndexes.put(floors[pointIndex], groupIndexes);
+            }
+            int groupIndex = groupIndexes.findLowestWithinRadius(latitudes[pointIndex], longitudes[pointIndex], thresholdDistance);
+            if (groupIndex == MapSpatialIndex.PointLabels.NO_LABEL) {
+                groupIndex = pointGroups.size();
+                pointGroups.add(new ArrayList<>());
+            }
+            pointGroups.get(groupIndex).add(pointIndex);
+            groupIndexes.setLabel(ids[pointIndex], groupIndex);
+        }
+        return pointGroups;
+    }
+
+    private static boolean isSameFloor(Integer floor, Integer mappedFloor) {
+        return (floor == null && mappedFloor == null) ||
+                ((floor != null && mappedFloor != null) && floor.equals(mappedFloor));
+    }
+
+    static class ClusterPoint {
+        final HashMap explore;
+        final double latitude;
+        final double longitude;
+        final Integer floor;
+        // Index of the explore in the clustered list, its id in the explores index
+        final int exploreIndex;
+
+        private ClusterPoint(MapExplore mapExplore, int exploreIndex) {
+            this.explore = mapExplore.getRawExplore();
+            this.latitude = mapExplore.getLatitude();
+            this.longitude = mapExplore.getLongitude();
+            this.floor = mapExplore.getFloor();
+            this.exploreIndex = exploreIndex;
+        }
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.rokwire.maps;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.graphics.Typeface;
+import android.graphics.drawable.Drawable;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.util.LruCache;
+import android.util.SparseArray;
+import android.util.TypedValue;
+
+import androidx.core.content.ContextCompat;
+import edu.illinois.rokwire.R;
+import edu.illinois.rokwire.Utils;
+
+/**
+ * Draws marker icons directly on a {@link Canvas}, without inflating views and without IconGenerator.
+ * The output matches the look of R.layout.marker_info_layout (single explore) and R.layout.marker_group_layout (group)
+ * at the three marker zoom bands.
+ * Paints, text layouts and icon drawables are reused between icons, so an instance must not be shared between threads -
+ * use {@link #getInstance(Context)} to get the instance of the current thread.
+ */
+public class MapMarkerCanvasRenderer {
+
+    private static final float TEXT_SIZE_SP = 14;
+    private static final float TEXT_MAX_WIDTH_DP = 150;
+    private static final int TITLE_MAX_LINES = 2;
+    private static final float TEXT_FRAME_PADDING_DP = 4;
+    private static final float TEXT_FRAME_MARGIN_BOTTOM_DP = 4;
+    private static final float TEXT_FRAME_CORNER_RADIUS_DP = 10;
+    private static final float STROKE_WIDTH_DP = 1;
+    private static final float ICON_SIZE_DP = 26;
+    private static final int SNIPPET_TEXT_COLOR = 0xFF323232;
+    private static final int TEXT_LAYOUT_CACHE_SIZE = 64;
+
+    private static final ThreadLocal<MapMarkerCanvasRenderer> instances = new ThreadLocal<>();
+
+    private final Context context;
+    private final int textMaxWidth;
+    private final float textFramePadding;
+    private final float textFrameMarginBottom;
+    private final float textFrameCornerRadius;
+    private final float strokeWidth;
+    private final int iconSize;
+    private final int[] groupCircleSizes;
+
+    private final TextPaint titlePaint;
+    private final TextPaint snippetPaint;
+    private final TextPaint groupTitlePaint;
+    private final TextPaint groupDescrPaint;
+    private final Paint fillPaint;
+    private final Paint strokePaint;
+    private final RectF shapeRect;
+    private final Canvas canvas;
+
+    private final LruCache<String, StaticLayout> titleLayouts;
+    private final LruCache<String, StaticLayout> snippetLayouts;
+    private final LruCache<String, StaticLayout> groupTitleLayouts;
+    private final LruCache<String, StaticLayout> groupDescrLayouts;
+    private final SparseArray<Drawable> iconDrawables;
+
+    private MapMarkerCanvasRenderer(Context context) {
+        this.context = context;
+        Resources resources = context.getResources();
+        textMaxWidth = Math.round(dpToPx(resources, TEXT_MAX_WIDTH_DP));
+        textFramePadding = dpToPx(resources, TEXT_FRAME_PADDING_DP);
+        textFrameMarginBottom = dpToPx(resources, TEXT_FRAME_MARGIN_BOTTOM_DP);
+        textFrameCornerRadius = dpToPx(resources, TEXT_FRAME_CORNER_RADIUS_DP);
+        strokeWidth = dpToPx(resources, STROKE_WIDTH_DP);
+        iconSize = Math.round(dpToPx(resources, ICON_SIZE_DP));
+        groupCircleSizes = new int[] {
+                resources.getDimensionPixelSize(R.dimen.group_marker_image_size_zero),
+                resources.getDimensionPixelSize(R.dimen.group_marker_image_size_first),
+                resources.getDimensionPixelSize(R.dimen.group_marker_image_size_second)
+        };
+
+        float textSize = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, TEXT_SIZE_SP, resources.getDisplayMetrics());
+        titlePaint = createTextPaint(textSize, Color.BLACK, true);
+        snippetPaint = createTextPaint(textSize, SNIPPET_TEXT_COLOR, false);
+        groupTitlePaint = createTextPaint(textSize, Color.WHITE, true);
+        groupDescrPaint = createTextPaint(textSize, Color.BLACK, false);
+
+        fillPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        fillPaint.setStyle(Paint.Style.FILL);
+        strokePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        strokePaint.setStyle(Paint.Style.STROKE);
+        strokePaint.setStrokeWidth(strokeWidth);
+        strokePaint.setColor(Color.BLACK);
+        shapeRect = new RectF();
+        canvas = new Canvas();
+
+        titleLayouts = new LruCache<>(TEXT_LAYOUT_CACHE_SIZE);
+        snippetLayouts = new LruCache<>(TEXT_LAYOUT_CACHE_SIZE);
+        groupTitleLayouts = new LruCache<>(TEXT_LAYOUT_CACHE_SIZE);
+        groupDescrLayouts = new LruCache<>(TEXT_LAYOUT_CACHE_SIZE);
+        iconDrawables = new SparseArray<>();
+    }
+
+    /**
+     * @return the renderer of the current thread
+     */
+    public static MapMarkerCanvasRenderer getInstance(Context context) {
+        MapMarkerCanvasRenderer instance = instances.get();
+        if (instance == null) {
+            instance = new MapMarkerCanvasRenderer(context.getApplicationContext());
+            instances.set(instance);
+        }
+        return instance;
+    }
+
+    public Bitmap render(MapMarkerIconCache.Key iconKey) {
+        if (iconKey == null) {
+            return null;
+        }
+        if (iconKey.getViewType() == MapMarkerViewType.SINGLE) {
+            return renderSingle(iconKey.getExploreType(), iconKey.getTitle(), iconKey.getSnippet(), iconKey.getZoomBand());
+        } else if (iconKey.getViewType() == MapMarkerViewType.GROUP) {
+            return renderGroup(iconKey.getExploreType(), iconKey.getTitle(), iconKey.getSnippet(), iconKey.getZoomBand());
+        }
+        return null;
+    }
+
+    private Bitmap renderSingle(Utils.ExploreType exploreType, String title, String snippet, int zoomBand) {
+        boolean textFrameVisible = (zoomBand >= 1);
+        StaticLayout titleLayout = textFrameVisible ? getTextLayout(titleLayouts, titlePaint, title, textMaxWidth, TITLE_MAX_LINES) : null;
+        StaticLayout snippetLayout = (textFrameVisible && (zoomBand >= 2) && !Utils.Str.isEmpty(snippet)) ?
+                getTextLayout(snippetLayouts, snippetPaint, snippet, Integer.MAX_VALUE, Integer.MAX_VALUE) : null;
+
+        float textFrameWidth = 0;
+        float textFrameHeight = 0;
+        if (titleLayout != null) {
+            int contentWidth = Math.max(titleLayout.getWidth(), (snippetLayout != null) ? snippetLayout.getWidth() : 0);
+            int contentHeight = titleLayout.getHeight() + ((snippetLayout != null) ? snippetLayout.getHeight() : 0);
+            textFrameWidth = contentWidth + 2 * textFramePadding;
+            textFrameHeight = contentHeight + 2 * textFramePadding;
+        }
+        float textFrameSpace = (titleLayout != null) ? (textFrameHeight + textFrameMarginBottom) : 0;
+        int width = (int) Math.ceil(Math.max(textFrameWidth, iconSize));
+        int height = (int) Math.ceil(textFrameSpace + iconSize);
+
+        Bitmap bitmap = beginDraw(width, height);
+        if (titleLayout != null) {
+            // White rounded frame with black border, aligned to the start as in the layout
+            shapeRect.set(0, 0, textFrameWidth, textFrameHeight);
+            fillPaint.setColor(Color.WHITE);
+            canvas.drawRoundRect(shapeRect, textFrameCornerRadius, textFrameCornerRadius, fillPaint);
+            shapeRect.inset(strokeWidth / 2, strokeWidth / 2);
+            canvas.drawRoundRect(shapeRect, textFrameCornerRadius, textFrameCornerRadius, strokePaint);
+
+            float contentWidth = textFrameWidth - 2 * textFramePadding;
+            float textTop = textFramePadding;
+            drawTextLayout(titleLayout, textFramePadding + (contentWidth - titleLayout.getWidth()) / 2, textTop);
+            if (snippetLayout != null) {
+                textTop += titleLayout.getHeight();
+                drawTextLayout(snippetLayout, textFramePadding + (contentWidth - snippetLayout.getWidth()) / 2, textTop);
+            }
+        }
+        Drawable iconDrawable = getIconDrawable(Utils.Explore.getSingleExploreIconResource(exploreType));
+        if (iconDrawable != null) {
+            drawFitCenter(iconDrawable, (width - iconSize) / 2f, textFrameSpace, iconSize);
+        }
+        endDraw();
+        return bitmap;
+    }
+
+    private Bitmap renderGroup(Utils.ExploreType exploreType, String title, String description, int zoomBand) {
+        int circleSize = groupCircleSizes[Math.max(0, Math.min(zoomBand, groupCircleSizes.length - 1))];
+        StaticLayout titleLayout = getTextLayout(groupTitleLayouts, groupTitlePaint, title, textMaxWidth, TITLE_MAX_LINES);
+        StaticLayout descrLayout = (zoomBand >= 2) ? getTextLayout(groupDescrLayouts, groupDescrPaint, description, Integer.MAX_VALUE, Integer.MAX_VALUE) : null;
+
+        int frameWidth = Math.max(circleSize, titleLayout.getWidth());
+        int frameHeight = Math.max(circleSize, titleLayout.getHeight());
+        int width = Math.max(frameWidth, (descrLayout != null) ? descrLayout.getWidth() : 0);
+        int height = frameHeight + ((descrLayout != null) ? descrLayout.getHeight() : 0);
+
+        Bitmap bitmap = beginDraw(width, height);
+        float frameLeft = (width - frameWidth) / 2f;
+        // Explore type colored circle with black border
+        float circleLeft = frameLeft + (frameWidth - circleSize) / 2f;
+        float circleTop = (frameHeight - circleSize) / 2f;
+        shapeRect.set(circleLeft, circleTop, circleLeft + circleSize, circleTop + circleSize);
+        fillPaint.setColor(ContextCompat.getColor(context, Utils.Explore.getExploreColorResource(exploreType)));
+        canvas.drawOval(shapeRect, fillPaint);
+        shapeRect.inset(strokeWidth / 2, strokeWidth / 2);
+        canvas.drawOval(shapeRect, strokePaint);
+
+        drawTextLayout(titleLayout, frameLeft + (frameWidth - titleLayout.getWidth()) / 2f, (frameHeight - titleLayout.getHeight()) / 2f);
+        if (descrLayout != null) {
+            drawTextLayout(descrLayout, (width - descrLayout.getWidth()) / 2f, frameHeight);
+        }
+        endDraw();
+        return bitmap;
+    }
+
+    private Bitmap beginDraw(int width, int height) {
+        Bitmap bitmap = Bitmap.createBitmap(Math.max(width, 1), Math.max(height, 1), Bitmap.Config.ARGB_8888);
+        canvas.setBitmap(bitmap);
+        return bitmap;
+    }
+
+    private void endDraw() {
+        canvas.setBitmap(null);
+    }
+
+    private void drawTextLayout(StaticLayout textLayout, float left, float top) {
+        int saveCount = canvas.save();
+        canvas.translate(left, top);
+        textLayout.draw(canvas);
+        canvas.restoreToCount(saveCount);
+    }
+
+    /**
+     * Draws the drawable centered in a square, keeping its aspect ratio - as ImageView's default FIT_CENTER scale type does.
+     */
+    private void drawFitCenter(Drawable drawable, float left, float top, int size) {
+        int intrinsicWidth = drawable.getIntrinsicWidth();
+        int intrinsicHeight = drawable.getIntrinsicHeight();
+        float scale = ((intrinsicWidth > 0) && (intrinsicHeight > 0)) ? Math.min((float) size / intrinsicWidth, (float) size / intrinsicHeight) : 0;
+        int drawWidth = (scale > 0) ? Math.round(intrinsicWidth * scale) : size;
+        int drawHeight = (scale > 0) ? Math.round(intrinsicHeight * scale) : size;
+        int drawLeft = Math.round(left + (size - drawWidth) / 2f);
+        int drawTop = Math.round(top + (size - drawHeight) / 2f);
+        drawable.setBounds(drawLeft, drawTop, drawLeft + drawWidth, drawTop + drawHeight);
+        drawable.draw(canvas);
+    }
+
+    /**
+     * @return text layout sized as a wrap_content TextView - the desired width limited by maxWidth.
+     */
+    private StaticLayout getTextLayout(LruCache<String, StaticLayout> layoutCache, TextPaint paint, String text, int maxWidth, int maxLines) {
+        String layoutText = (text != null) ? text : "";
+        StaticLayout textLayout = layoutCache.get(layoutText);
+        if (textLayout == null) {
+            int desiredWidth = (int) Math.ceil(Layout.getDesiredWidth(layoutText, paint));
+            int layoutWidth = Math.max(0, Math.min(desiredWidth, maxWidth));
+            textLayout = StaticLayout.Builder.obtain(layoutText, 0, layoutText.length(), paint, layoutWidth)
+                    .setAlignment(Layout.Alignment.ALIGN_CENTER)
+                    .setIncludePad(true)
+                    .setMaxLines(maxLines)
+                    .build();
+            layoutCache.put(layoutText, textLayout);
+        }
+        return textLayout;
+    }
+
+    private Drawable getIconDrawable(int iconResource) {
+        Drawable iconDrawable = iconDrawables.get(iconResource);
+        if (iconDrawable == null) {
+            iconDrawable = ContextCompat.getDrawable(context, iconResource);
+            if (iconDrawable != null) {
+                iconDrawable = iconDrawable.mutate();
+                iconDrawables.put(iconResource, iconDrawable);
+            }
+        }
+        return iconDrawable;
+    }
+
+    private static TextPaint createTextPaint(float textSize, int color, boolean bold) {
+        TextPaint paint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+        paint.setTextSize(textSize);
+        paint.setColor(color);
+        paint.setTypeface(bold ? Typeface.DEFAULT_BOLD : Typeface.DEFAULT);
+        return paint;
+    }
+
+    private static float dpToPx(Resources resources, float dp) {
+        return TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, dp, resources.getDisplayMetrics());
+    }
+}
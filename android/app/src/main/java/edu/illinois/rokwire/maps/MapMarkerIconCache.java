@@ -0,0 +1,163 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.rokwire.maps;
+
+import android.content.ComponentCallbacks2;
+import android.util.LruCache;
+
+import com.google.android.gms.maps.model.BitmapDescriptor;
+
+import java.util.Objects;
+
+import edu.illinois.rokwire.Utils;
+
+/**
+ * Memory bounded LRU cache of rendered marker icons.
+ * Icons are keyed by marker view type, explore type, title (explores count for groups), snippet (description for groups) and zoom band.
+ */
+public class MapMarkerIconCache {
+
+    private static final int MAX_CACHE_SIZE_BYTES = 8 * 1024 * 1024;
+
+    private static MapMarkerIconCache instance;
+
+    private final LruCache<Key, Entry> cache;
+
+    private MapMarkerIconCache() {
+        int maxSizeBytes = (int) Math.min(Runtime.getRuntime().maxMemory() / 32, MAX_CACHE_SIZE_BYTES);
+        cache = new LruCache<Key, Entry>(maxSizeBytes) {
+            @Override
+            protected int sizeOf(Key key, Entry entry) {
+                return entry.byteCount;
+            }
+        };
+    }
+
+    public static synchronized MapMarkerIconCache getInstance() {
+        if (instance == null) {
+            instance = new MapMarkerIconCache();
+        }
+        return instance;
+    }
+
+    public BitmapDescriptor get(Key key) {
+        Entry entry = cache.get(key);
+        return (entry != null) ? entry.icon : null;
+    }
+
+    public void put(Key key, BitmapDescriptor icon, int byteCount) {
+        if ((key != null) && (icon != null)) {
+            cache.put(key, new Entry(icon, Math.max(byteCount, 1)));
+        }
+    }
+
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            cache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            cache.trimToSize(cache.size() / 2);
+        }
+    }
+
+    public int getHitCount() {
+        return cache.hitCount();
+    }
+
+    public int getMissCount() {
+        return cache.missCount();
+    }
+
+    public int getEvictionCount() {
+        return cache.evictionCount();
+    }
+
+    public int getSizeBytes() {
+        return cache.size();
+    }
+
+    /**
+     * @return hits, misses and hit rate of the cache
+     */
+    @Override
+    public String toString() {
+        return cache.toString();
+    }
+
+    public static class Key {
+        private final MapMarkerViewType viewType;
+        private final Utils.ExploreType exploreType;
+        private final String title;
+        private final String snippet;
+        private final int zoomBand;
+
+        public Key(MapMarkerViewType viewType, Utils.ExploreType exploreType, String title, String snippet, int zoomBand) {
+            this.viewType = viewType;
+            this.exploreType = exploreType;
+            this.title = title;
+            this.snippet = snippet;
+            this.zoomBand = zoomBand;
+        }
+
+        public MapMarkerViewType getViewType() {
+            return viewType;
+        }
+
+        public Utils.ExploreType getExploreType() {
+            return exploreType;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public String getSnippet() {
+            return snippet;
+        }
+
+        public int getZoomBand() {
+            return zoomBand;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return (zoomBand == key.zoomBand) && (viewType == key.viewType) && (exploreType == key.exploreType) &&
+                    Objects.equals(title, key.title) && Objects.equals(snippet, key.snippet);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(viewType, exploreType, title, snippet, zoomBand);
+        }
+    }
+
+    private static class Entry {
+        private final BitmapDescriptor icon;
+        private final int byteCount;
+
+        private Entry(BitmapDescriptor icon, int byteCount) {
+            this.icon = icon;
+            this.byteCount = byteCount;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.rokwire.maps;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import android.view.Choreographer;
+
+import com.google.android.gms.maps.model.BitmapDescriptor;
+import com.google.android.gms.maps.model.BitmapDescriptorFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import edu.illinois.rokwire.Utils;
+
+/**
+ * Renders marker icons on a pool of worker threads and applies the results on the main thread in frame sized batches.
+ * Every worker thread draws with its own {@link MapMarkerCanvasRenderer}.
+ * Rendered icons go to {@link MapMarkerIconCache}, requests for an icon that is already being rendered share the same render.
+ * A failed render delivers the default marker icon.
+ * All public methods must be called on the main thread.
+ */
+public class MapMarkerIconRenderer {
+
+    private static final String TAG = MapMarkerIconRenderer.class.getSimpleName();
+
+    // Main thread time spent on applying results per frame
+    private static final long FRAME_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(4);
+
+    private final Context context;
+    private final ExecutorService workers;
+    private final Handler mainHandler;
+    private final HashMap<MapMarkerIconCache.Key, List<IconCallback>> pendingRenders;
+    private final ArrayDeque<Runnable> frameOperations;
+    private final Choreographer.FrameCallback frameCallback;
+    private boolean frameCallbackPosted;
+    private long generation;
+
+    public MapMarkerIconRenderer(Context context) {
+        this.context = context;
+        int workersCount = Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors() - 1));
+        this.workers = Executors.newFixedThreadPool(workersCount, runnable -> {
+            Thread thread = new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, "MapMarkerIconRenderer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.mainHandler = new Handler(Looper.getMainLooper());
+        this.pendingRenders = new HashMap<>();
+        this.frameOperations = new ArrayDeque<>();
+        this.frameCallback = this::doFrame;
+    }
+
+    /**
+     * Delivers the icon for the given key on the main thread, within the frame budget.
+     * Cached icons are delivered without rendering.
+     */
+    public void requestIcon(MapMarkerIconCache.Key iconKey, IconCallback callback) {
+        if ((iconKey == null) || (callback == null)) {
+            return;
+        }
+        BitmapDescriptor cachedIcon = MapMarkerIconCache.getInstance().get(iconKey);
+        if (cachedIcon != null) {
+            postFrameOperation(() -> callback.onIcon(cachedIcon));
+            return;
+        }
+        List<IconCallback> callbacks = pendingRenders.get(iconKey);
+        if (callbacks != null) {
+            callbacks.add(callback);
+            return;
+        }
+        callbacks = new ArrayList<>();
+        callbacks.add(callback);
+        pendingRenders.put(iconKey, callbacks);
+        final long renderGeneration = generation;
+        workers.execute(() -> {
+            Bitmap iconBitmap = null;
+            try {
+                iconBitmap = Utils.Explore.renderMarkerIcon(context, iconKey);
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to render marker icon. Stacktrace:");
+                e.printStackTrace();
+            }
+            final Bitmap renderedBitmap = iconBitmap;
+            mainHandler.post(() -> onIconRendered(iconKey, renderedBitmap, renderGeneration));
+        });
+    }
+
+    /**
+     * Runs the operation on the main thread within the frame budget, after the previously posted operations.
+     */
+    public void postFrameOperation(Runnable operation) {
+        frameOperations.add(operation);
+        if (!frameCallbackPosted) {
+            frameCallbackPosted = true;
+            Choreographer.getInstance().postFrameCallback(frameCallback);
+        }
+    }
+
+    /**
+     * Drops all pending results and operations.
+     */
+    public void cancelAll() {
+        generation++;
+        pendingRenders.clear();
+        frameOperations.clear();
+    }
+
+    public void shutdown() {
+        cancelAll();
+        workers.shutdownNow();
+        mainHandler.removeCallbacksAndMessages(null);
+        if (frameCallbackPosted) {
+            frameCallbackPosted = false;
+            Choreographer.getInstance().removeFrameCallback(frameCallback);
+        }
+    }
+
+    private void onIconRendered(MapMarkerIconCache.Key iconKey, Bitmap iconBitmap, long renderGeneration) {
+        if (renderGeneration != generation) {
+            return;
+        }
+        List<IconCallback> callbacks = pendingRenders.remove(iconKey);
+        if (callbacks == null) {
+            return;
+        }
+        BitmapDescriptor icon;
+        if (iconBitmap != null) {
+            icon = BitmapDescriptorFactory.fromBitmap(iconBitmap);
+            MapMarkerIconCache.getInstance().put(iconKey, icon, iconBitmap.getAllocationByteCount());
+        } else {
+            // The marker still shows with the default icon, the fallback is not cached so the next request renders again
+            icon = BitmapDescriptorFactory.defaultMarker();
+        }
+        for (IconCallback callback : callbacks) {
+            postFrameOperation(() -> callback.onIcon(icon));
+        }
+    }
+
+    private void doFrame(long frameTimeNanos) {
+        frameCallbackPosted = false;
+        long startTime = System.nanoTime();
+        Runnable operation;
+        while ((operation = frameOperations.poll()) != null) {
+            operation.run();
+            if ((System.nanoTime() - startTime) > FRAME_BUDGET_NANOS) {
+                break;
+            }
+        }
+        if (!frameOperations.isEmpty() && !frameCallbackPosted) {
+            frameCallbackPosted = true;
+            Choreographer.getInstance().postFrameCallback(frameCallback);
+        }
+    }
+
+    public interface IconCallback {
+        void onIcon(BitmapDescriptor icon);
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.rokwire.maps;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import java.util.Arrays;
+import java.util.List;
+
+import edu.illinois.rokwire.Utils;
+
+/**
+ * Coordinates packed in parallel latitude and longitude arrays, with batch distance, nearest, k-nearest and within radius queries.
+ * Points are referred to by their index, callers keep whatever belongs to a point in their own arrays or lists under the same index.
+ * Queries do not allocate: distances are measured with the meters per degree fixed at the query point,
+ * see {@link Utils.Location#getDistanceSquared} for the tolerance.
+ * All query ranges are [fromIndex, toIndex).
+ */
+public class MapPointArray {
+
+    private double[] latitudes;
+    private double[] longitudes;
+    private int size;
+
+    public MapPointArray(int capacity) {
+        latitudes = new double[Math.max(capacity, 1)];
+        longitudes = new double[Math.max(capacity, 1)];
+    }
+
+    public static MapPointArray fromLatLngs(List<LatLng> latLngs) {
+        MapPointArray points = new MapPointArray((latLngs != null) ? latLngs.size() : 0);
+        if (latLngs != null) {
+            for (LatLng latLng : latLngs) {
+                points.add(latLng.latitude, latLng.longitude);
+            }
+        }
+        return points;
+    }
+
+    /**
+     * @return index of the added point
+     */
+    public int add(double latitude, double longitude) {
+        if (size == latitudes.length) {
+            int capacity = size * 2;
+            latitudes = Arrays.copyOf(latitudes, capacity);
+            longitudes = Arrays.copyOf(longitudes, capacity);
+        }
+        latitudes[size] = latitude;
+        longitudes[size] = longitude;
+        return size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double getLatitude(int index) {
+        return latitudes[index];
+    }
+
+    public double getLongitude(int index) {
+        return longitudes[index];
+    }
+
+    /**
+     * @return distance in meters between the point at index and the given location
+     */
+    public double getDistance(int index, double latitude, double longitude) {
+        return Utils.Location.getEquirectangularDistance(latitude, longitude, latitudes[index], longitudes[index]);
+    }
+
+    /**
+     * Fills outDistances with the distances in meters of the points from the given location.
+     */
+    public void getDistances(double latitude, double longitude, double[] outDistances) {
+        double metersPerDegreeLatitude = Utils.Location.getMetersPerDegreeLatitude(latitude);
+        double metersPerDegreeLongitude = Utils.Location.getMetersPerDegreeLongitude(latitude);
+        int count = Math.min(size, outDistances.length);
+        for (int index = 0; index < count; index++) {
+            outDistances[index] = Math.sqrt(Utils.Location.getDistanceSquared(latitude, longitude, latitudes[index], longitudes[index],
+                    metersPerDegreeLatitude, metersPerDegreeLongitude));
+        }
+    }
+
+    /**
+     * @return index of the point nearest to the given location, -1 if there are no points
+     */
+    public int findNearest(double latitude, double longitude) {
+        return findNearest(latitude, longitude, 0, size);
+    }
+
+    public int findNearest(double latitude, double longitude, int fromIndex, int toIndex) {
+        double metersPerDegreeLatitude = Utils.Location.getMetersPerDegreeLatitude(latitude);
+        double metersPerDegreeLongitude = Utils.Location.getMetersPerDegreeLongitude(latitude);
+        int nearestIndex = -1;
+        double nearestDistanceSquared = Double.MAX_VALUE;
+        int endIndex = Math.min(toIndex, size);
+        for (int index = Math.max(fromIndex, 0); index < endIndex; index++) {
+            double distanceSquared = Utils.Location.getDistanceSquared(latitude, longitude, latitudes[index], longitudes[index],
+                    metersPerDegreeLatitude, metersPerDegreeLongitude);
+            if (distanceSquared < nearestDistanceSquared) {
+                nearestDistanceSquared = distanceSquared;
+                nearestIndex = index;
+            }
+        }
+        return nearestIndex;
+    }
+
+    /**
+     * Finds up to k points nearest to the given location, k is limited by the length of the output arrays.
+     * @param outIndexes receives the point indexes ordered from the nearest
+     * @param outDistances receives the distances in meters of the found points
+     * @return count of the found points
+     */
+    public int findKNearest(double latitude, double longitude, int[] outIndexes, double[] outDistances) {
+        int k = Math.min(outIndexes.length, outDistances.length);
+        if (k == 0) {
+            return 0;
+        }
+        double metersPerDegreeLatitude = Utils.Location.getMetersPerDegreeLatitude(latitude);
+        double metersPerDegreeLongitude = Utils.Location.getMetersPerDegreeLongitude(latitude);
+        int count = 0;
+        for (int index = 0; index < size; index++) {
+            double distanceSquared = Utils.Location.getDistanceSquared(latitude, longitude, latitudes[index], longitudes[index],
+                    metersPerDegreeLatitude, metersPerDegreeLongitude);
+            if ((count < k) || (distanceSquared < outDistances[count - 1])) {
+                // Insertion into the sorted k best, k is expected to be small
+                int position = (count < k) ? count++ : (count - 1);
+                while ((position > 0) && (outDistances[position - 1] > distanceSquared)) {
+                    outDistances[position] = outDistances[position - 1];
+                    outIndexes[position] = outIndexes[position - 1];
+                    position--;
+                }
+                outDistances[position] = distanceSquared;
+                outIndexes[position] = index;
+            }
+        }
+        for (int position = 0; position < count; position++) {
+            outDistances[position] = Math.sqrt(outDistances[position]);
+        }
+        return count;
+    }
+
+    /**
+     * @param outIndexes receives the indexes of the points within the radius, in index order
+     * @return count of the points within the radius, only as many as fit are written to outIndexes
+     */
+    public int findWithinRadius(double latitude, double longitude, double radius, int[] outIndexes) {
+        return findWithinRadius(latitude, longitude, radius, 0, size, outIndexes);
+    }
+
+    public int findWithinRadius(double latitude, double longitude, double radius, int fromIndex, int toIndex, int[] outIndexes) {
+        double metersPerDegreeLatitude = Utils.Location.getMetersPerDegreeLatitude(latitude);
+        double metersPerDegreeLongitude = Utils.Location.getMetersPerDegreeLongitude(latitude);
+        double radiusSquared = radius * radius;
+        int count = 0;
+        int endIndex = Math.min(toIndex, size);
+        for (int index = Math.max(fromIndex, 0); index < endIndex; index++) {
+            double distanceSquared = Utils.Location.getDistanceSquared(latitude, longitude, latitudes[index], longitudes[index],
+                    metersPerDegreeLatitude, metersPerDegreeLongitude);
+            if (distanceSquared <= radiusSquared) {
+                if (count < outIndexes.length) {
+                    outIndexes[count] = index;
+                }
+                count++;
+            }
+        }
+        return count;
+    }
+}
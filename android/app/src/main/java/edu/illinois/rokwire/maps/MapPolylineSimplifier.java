@@ -0,0 +1,157 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.rokwire.maps;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import edu.illinois.rokwire.Utils;
+
+/**
+ * Douglas-Peucker simplification of a polyline at any tolerance, after a single pass.
+ * The pass stores for every vertex the largest tolerance that still keeps it: its distance from the chord it split,
+ * capped by the value of the vertex that split the enclosing range. Vertices with a value above a tolerance are then
+ * exactly the vertices Douglas-Peucker keeps for that tolerance, so a simplified polyline is a filter over the vertices.
+ * Distances are measured on a local plane in meters around the middle of the polyline. The end points are always kept.
+ */
+public class MapPolylineSimplifier {
+
+    // Pixels of the Google Maps world at zoom 0
+    private static final double WORLD_SIZE_PIXELS = 256.0d;
+    private static final double EARTH_CIRCUMFERENCE_METERS = 40075016.686d;
+
+    private final List<LatLng> points;
+    private final double[] tolerances;
+    private final double referenceLatitude;
+
+    public MapPolylineSimplifier(List<LatLng> points) {
+        this.points = (points != null) ? points : Collections.emptyList();
+        int count = this.points.size();
+        tolerances = new double[count];
+
+        double minLatitude = Double.MAX_VALUE, maxLatitude = -Double.MAX_VALUE;
+        double minLongitude = Double.MAX_VALUE, maxLongitude = -Double.MAX_VALUE;
+        for (LatLng point : this.points) {
+            minLatitude = Math.min(minLatitude, point.latitude);
+            maxLatitude = Math.max(maxLatitude, point.latitude);
+            minLongitude = Math.min(minLongitude, point.longitude);
+            maxLongitude = Math.max(maxLongitude, point.longitude);
+        }
+        referenceLatitude = (count > 0) ? ((minLatitude + maxLatitude) / 2.0d) : 0.0d;
+        double referenceLongitude = (count > 0) ? ((minLongitude + maxLongitude) / 2.0d) : 0.0d;
+        double metersPerDegreeLatitude = Utils.Location.getMetersPerDegreeLatitude(referenceLatitude);
+        double metersPerDegreeLongitude = Utils.Location.getMetersPerDegreeLongitude(referenceLatitude);
+        double[] x = new double[count];
+        double[] y = new double[count];
+        for (int index = 0; index < count; index++) {
+            LatLng point = this.points.get(index);
+            x[index] = (point.longitude - referenceLongitude) * metersPerDegreeLongitude;
+            y[index] = (point.latitude - referenceLatitude) * metersPerDegreeLatitude;
+        }
+        computeTolerances(x, y);
+    }
+
+    private void computeTolerances(double[] x, double[] y) {
+        int count = tolerances.length;
+        if (count == 0) {
+            return;
+        }
+        tolerances[0] = Double.POSITIVE_INFINITY;
+        tolerances[count - 1] = Double.POSITIVE_INFINITY;
+        // Ranges to split: first vertex, last vertex and the value of the vertex that made the range
+        int[] rangeFrom = new int[count];
+        int[] rangeTo = new int[count];
+        double[] rangeCap = new double[count];
+        int stackSize = 0;
+        if (count > 2) {
+            rangeFrom[0] = 0;
+            rangeTo[0] = count - 1;
+            rangeCap[0] = Double.POSITIVE_INFINITY;
+            stackSize = 1;
+        }
+        while (stackSize > 0) {
+            stackSize--;
+            int from = rangeFrom[stackSize];
+            int to = rangeTo[stackSize];
+            double cap = rangeCap[stackSize];
+            int farthest = -1;
+            double farthestDistance = -1.0d;
+            for (int index = from + 1; index < to; index++) {
+                double distance = getSegmentDistance(x[index], y[index], x[from], y[from], x[to], y[to]);
+                if (distance > farthestDistance) {
+                    farthest = index;
+                    farthestDistance = distance;
+                }
+            }
+            double tolerance = Math.min(farthestDistance, cap);
+            tolerances[farthest] = tolerance;
+            // Every split leaves two ranges at most, a range of n vertices never makes more than n entries on the stack
+            if ((farthest - from) > 1) {
+                rangeFrom[stackSize] = from;
+                rangeTo[stackSize] = farthest;
+                rangeCap[stackSize] = tolerance;
+                stackSize++;
+            }
+            if ((to - farthest) > 1) {
+                rangeFrom[stackSize] = farthest;
+                rangeTo[stackSize] = to;
+                rangeCap[stackSize] = tolerance;
+                stackSize++;
+            }
+        }
+    }
+
+    private static double getSegmentDistance(double x, double y, double startX, double startY, double endX, double endY) {
+        double deltaX = endX - startX;
+        double deltaY = endY - startY;
+        double lengthSquared = deltaX * deltaX + deltaY * deltaY;
+        double fraction = (lengthSquared > 0.0d) ? (((x - startX) * deltaX + (y - startY) * deltaY) / lengthSquared) : 0.0d;
+        fraction = Math.max(0.0d, Math.min(1.0d, fraction));
+        double offsetX = x - (startX + fraction * deltaX);
+        double offsetY = y - (startY + fraction * deltaY);
+        return Math.sqrt(offsetX * offsetX + offsetY * offsetY);
+    }
+
+    /**
+     * @return tolerance in meters that matches the size of a pixel at the zoom, around the middle of the polyline
+     */
+    public double getTolerance(float zoom, double pixels) {
+        double metersPerPixel = EARTH_CIRCUMFERENCE_METERS * Math.cos(Math.toRadians(referenceLatitude)) /
+                (WORLD_SIZE_PIXELS * Math.pow(2.0d, zoom));
+        return metersPerPixel * pixels;
+    }
+
+    /**
+     * @return the vertices Douglas-Peucker keeps for the tolerance in meters, the original points are shared
+     */
+    public List<LatLng> simplify(double tolerance) {
+        List<LatLng> simplified = new ArrayList<>();
+        for (int index = 0; index < tolerances.length; index++) {
+            if (tolerances[index] > tolerance) {
+                simplified.add(points.get(index));
+            }
+        }
+        return simplified;
+    }
+
+    public int getPointsCount() {
+        return points.size();
+    }
+}
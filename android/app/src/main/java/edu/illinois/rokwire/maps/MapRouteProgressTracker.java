@@ -0,0 +1,195 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.rokwire.maps;
+
+import java.util.List;
+
+import edu.illinois.rokwire.navigation.model.NavRoute;
+import edu.illinois.rokwire.navigation.model.NavRouteLeg;
+import edu.illinois.rokwire.navigation.model.NavRouteStep;
+
+/**
+ * Follows the progress of a location along a route, fix by fix.
+ * After the first fix only a short window of segments around the last matched one is searched, so the cost of a fix
+ * does not grow with the route length. The whole route is searched again, through the snapper's tree, when the window match
+ * is too far from the location or ends at the window's last point - the location may have moved past the window.
+ * Distance travelled never decreases, remaining time is interpolated within the steps from their durations.
+ * The location is off route after {@link #OFF_ROUTE_ENTER_FIXES} fixes in a row farther than {@link #OFF_ROUTE_ENTER_METERS}
+ * from the route, and back on it with the first fix nearer than {@link #OFF_ROUTE_EXIT_METERS}. Both distances grow by the fix accuracy.
+ */
+public class MapRouteProgressTracker {
+
+    private static final int WINDOW_SEGMENTS_BEHIND = 2;
+    private static final int WINDOW_SEGMENTS_AHEAD = 8;
+    // Window matches farther from the location than this are not trusted
+    private static final double MAX_WINDOW_CROSS_TRACK_METERS = 20.0d;
+
+    private static final double OFF_ROUTE_ENTER_METERS = 40.0d;
+    private static final double OFF_ROUTE_EXIT_METERS = 20.0d;
+    private static final int OFF_ROUTE_ENTER_FIXES = 2;
+
+    private final MapRouteSnapper snapper;
+    // Seconds from the route start to the segment start, seconds per meter within the segment
+    private final double[] segmentStartTimes;
+    private final double[] segmentTimeRates;
+    private final double routeDuration;
+    // Distance along the route at the end of every step, by leg
+    private final double[][] stepEndDistances;
+
+    private MapRouteSnapper.Snap snap;
+    private double distanceTravelled;
+    private double durationTravelled;
+    private boolean offRoute;
+    private int offRouteFixes;
+
+    public MapRouteProgressTracker(MapRouteSnapper snapper, NavRoute route) {
+        this.snapper = snapper;
+        int segmentsCount = snapper.getSegmentsCount();
+        segmentStartTimes = new double[segmentsCount];
+        segmentTimeRates = new double[segmentsCount];
+
+        double stepsDuration = 0.0d;
+        int segmentIndex = 0;
+        List<NavRouteLeg> routeLegs = (route != null) ? route.getLegs() : null;
+        int legsCount = (routeLegs != null) ? routeLegs.size() : 0;
+        stepEndDistances = new double[legsCount][];
+        double stepEndDistance = 0.0d;
+        for (int legIndex = 0; legIndex < legsCount; legIndex++) {
+            List<NavRouteStep> legSteps = routeLegs.get(legIndex).getSteps();
+            int stepsCount = (legSteps != null) ? legSteps.size() : 0;
+            stepEndDistances[legIndex] = new double[stepsCount];
+            for (int stepIndex = 0; stepIndex < stepsCount; stepIndex++) {
+                NavRouteStep step = legSteps.get(stepIndex);
+                double stepDuration = (step.getDuration() != null) ? Math.max(0, step.getDuration().getValue()) : 0.0d;
+                int stepFromSegment = segmentIndex;
+                double stepLength = 0.0d;
+                while ((segmentIndex < segmentsCount) && (snapper.getSegmentLegIndex(segmentIndex) == legIndex) &&
+                        (snapper.getSegmentStepIndex(segmentIndex) == stepIndex)) {
+                    stepLength += snapper.getSegmentLength(segmentIndex);
+                    segmentIndex++;
+                }
+                // Duration of a step without length is passed at once, at its place on the route
+                double stepTimeRate = (stepLength > 0.0d) ? (stepDuration / stepLength) : 0.0d;
+                double segmentStartTime = stepsDuration;
+                for (int stepSegment = stepFromSegment; stepSegment < segmentIndex; stepSegment++) {
+                    segmentStartTimes[stepSegment] = segmentStartTime;
+                    segmentTimeRates[stepSegment] = stepTimeRate;
+                    segmentStartTime += snapper.getSegmentLength(stepSegment) * stepTimeRate;
+                }
+                stepsDuration += stepDuration;
+                stepEndDistance += stepLength;
+                stepEndDistances[legIndex][stepIndex] = stepEndDistance;
+            }
+        }
+        routeDuration = stepsDuration;
+    }
+
+    public MapRouteSnapper.Snap update(double latitude, double longitude) {
+        return update(latitude, longitude, 0.0d);
+    }
+
+    /**
+     * Matches the location to the route, advances the progress and updates the off route state.
+     * @param accuracy accuracy radius of the location in meters, 0 if unknown
+     * @return the location snapped to the route, null if the route has no segments
+     */
+    public MapRouteSnapper.Snap update(double latitude, double longitude, double accuracy) {
+        MapRouteSnapper.Snap currentSnap = null;
+        if (snap != null) {
+            int windowFrom = snap.getSegmentIndex() - WINDOW_SEGMENTS_BEHIND;
+            int windowTo = Math.min(snap.getSegmentIndex() + WINDOW_SEGMENTS_AHEAD + 1, snapper.getSegmentsCount());
+            currentSnap = snapper.snap(latitude, longitude, windowFrom, windowTo);
+            boolean atWindowEnd = (currentSnap != null) && (currentSnap.getSegmentIndex() == (windowTo - 1)) &&
+                    (currentSnap.getSegmentFraction() >= 1.0d) && (windowTo < snapper.getSegmentsCount());
+            if ((currentSnap == null) || atWindowEnd || (Math.abs(currentSnap.getCrossTrackError()) > MAX_WINDOW_CROSS_TRACK_METERS)) {
+                MapRouteSnapper.Snap routeSnap = snapper.snap(latitude, longitude);
+                if ((currentSnap == null) || ((routeSnap != null) && (Math.abs(routeSnap.getCrossTrackError()) < Math.abs(currentSnap.getCrossTrackError())))) {
+                    currentSnap = routeSnap;
+                }
+            }
+        } else {
+            currentSnap = snapper.snap(latitude, longitude);
+        }
+        if (currentSnap != null) {
+            snap = currentSnap;
+            updateOffRoute(Math.abs(currentSnap.getCrossTrackError()), Math.max(0.0d, accuracy));
+            if (currentSnap.getDistanceAlongRoute() > distanceTravelled) {
+                distanceTravelled = currentSnap.getDistanceAlongRoute();
+                int segmentIndex = currentSnap.getSegmentIndex();
+                durationTravelled = segmentStartTimes[segmentIndex] +
+                        (distanceTravelled - snapper.getSegmentStartDistance(segmentIndex)) * segmentTimeRates[segmentIndex];
+            }
+        }
+        return currentSnap;
+    }
+
+    private void updateOffRoute(double distanceFromRoute, double accuracy) {
+        if (offRoute) {
+            if (distanceFromRoute < (OFF_ROUTE_EXIT_METERS + accuracy)) {
+                offRoute = false;
+                offRouteFixes = 0;
+            }
+        } else if (distanceFromRoute > (OFF_ROUTE_ENTER_METERS + accuracy)) {
+            offRoute = (++offRouteFixes >= OFF_ROUTE_ENTER_FIXES);
+        } else {
+            offRouteFixes = 0;
+        }
+    }
+
+    public boolean isOffRoute() {
+        return offRoute;
+    }
+
+    /**
+     * @return distance along the route at the end of the step in meters, -1 if there is no such step
+     */
+    public double getStepEndDistance(int legIndex, int stepIndex) {
+        if ((legIndex >= 0) && (legIndex < stepEndDistances.length) && (stepIndex >= 0) && (stepIndex < stepEndDistances[legIndex].length)) {
+            return stepEndDistances[legIndex][stepIndex];
+        }
+        return -1.0d;
+    }
+
+    /**
+     * @return the last matched location, null before the first match
+     */
+    public MapRouteSnapper.Snap getSnap() {
+        return snap;
+    }
+
+    public MapRouteSnapper getSnapper() {
+        return snapper;
+    }
+
+    /**
+     * @return the farthest distance along the route matched so far, in meters
+     */
+    public double getDistanceTravelled() {
+        return distanceTravelled;
+    }
+
+    public double getRemainingDistance() {
+        return Math.max(0.0d, snapper.getRouteLength() - distanceTravelled);
+    }
+
+    /**
+     * @return remaining time in seconds from the farthest matched point, by the step durations of the route
+     */
+    public double getRemainingDuration() {
+        return Math.max(0.0d, routeDuration - durationTravelled);
+    }
+}
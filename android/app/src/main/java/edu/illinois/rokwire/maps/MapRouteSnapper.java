@@ -0,0 +1,471 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.rokwire.maps;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.illinois.rokwire.Utils;
+import edu.illinois.rokwire.navigation.model.NavPolyline;
+
+/**
+ * Snaps locations to a route: finds the nearest point on the route segments and reports its leg, step,
+ * distance along the route and cross-track error.
+ * Route vertices are projected once to a local plane in meters around the middle of the route, which keeps the error
+ * of distances under 0.1% for routes up to 100 km across. Segments are kept in a bounding box tree,
+ * so a snap visits O(log n) segments on a typical route.
+ * Steps without points or with a single point have no segments and are never snapped to.
+ */
+public class MapRouteSnapper {
+
+    private static final int LEAF_SIZE = 8;
+
+    private final double referenceLatitude;
+    private final double referenceLongitude;
+    private final double metersPerDegreeLatitude;
+    private final double metersPerDegreeLongitude;
+
+    // Segments in route order
+    private final int segmentsCount;
+    private final double[] segmentStartX;
+    private final double[] segmentStartY;
+    private final double[] segmentDeltaX;
+    private final double[] segmentDeltaY;
+    private final double[] segmentStartDistances;
+    private final int[] segmentLegIndexes;
+    private final int[] segmentStepIndexes;
+    private final double routeLength;
+
+    // Bounding box tree, nodes cover ranges of segmentOrder
+    private final int[] segmentOrder;
+    private final int[] nodeFrom;
+    private final int[] nodeTo;
+    private final int[] nodeLeft;
+    private final int[] nodeRight;
+    private final double[] nodeMinX;
+    private final double[] nodeMinY;
+    private final double[] nodeMaxX;
+    private final double[] nodeMaxY;
+    private int nodesCount;
+
+    private MapRouteSnapper(Builder builder) {
+        MapPointArray vertices = builder.vertices;
+        double minLatitude = Double.MAX_VALUE, maxLatitude = -Double.MAX_VALUE;
+        double minLongitude = Double.MAX_VALUE, maxLongitude = -Double.MAX_VALUE;
+        for (int vertexIndex = 0; vertexIndex < vertices.size(); vertexIndex++) {
+            minLatitude = Math.min(minLatitude, vertices.getLatitude(vertexIndex));
+            maxLatitude = Math.max(maxLatitude, vertices.getLatitude(vertexIndex));
+            minLongitude = Math.min(minLongitude, vertices.getLongitude(vertexIndex));
+            maxLongitude = Math.max(maxLongitude, vertices.getLongitude(vertexIndex));
+        }
+        referenceLatitude = (vertices.size() > 0) ? ((minLatitude + maxLatitude) / 2.0d) : 0.0d;
+        referenceLongitude = (vertices.size() > 0) ? ((minLongitude + maxLongitude) / 2.0d) : 0.0d;
+        metersPerDegreeLatitude = Utils.Location.getMetersPerDegreeLatitude(referenceLatitude);
+        metersPerDegreeLongitude = Utils.Location.getMetersPerDegreeLongitude(referenceLatitude);
+
+        int count = 0;
+        for (BuilderStep step : builder.steps) {
+            count += Math.max(0, step.toVertex - step.fromVertex - 1);
+        }
+        segmentsCount = count;
+        segmentStartX = new double[count];
+        segmentStartY = new double[count];
+        segmentDeltaX = new double[count];
+        segmentDeltaY = new double[count];
+        segmentStartDistances = new double[count];
+        segmentLegIndexes = new int[count];
+        segmentStepIndexes = new int[count];
+
+        int segmentIndex = 0;
+        double distance = 0.0d;
+        for (BuilderStep step : builder.steps) {
+            for (int vertexIndex = step.fromVertex; vertexIndex < (step.toVertex - 1); vertexIndex++) {
+                double startX = projectX(vertices.getLongitude(vertexIndex));
+                double startY = projectY(vertices.getLatitude(vertexIndex));
+                double deltaX = projectX(vertices.getLongitude(vertexIndex + 1)) - startX;
+                double deltaY = projectY(vertices.getLatitude(vertexIndex + 1)) - startY;
+                segmentStartX[segmentIndex] = startX;
+                segmentStartY[segmentIndex] = startY;
+                segmentDeltaX[segmentIndex] = deltaX;
+                segmentDeltaY[segmentIndex] = deltaY;
+                segmentStartDistances[segmentIndex] = distance;
+                segmentLegIndexes[segmentIndex] = step.legIndex;
+                segmentStepIndexes[segmentIndex] = step.stepIndex;
+                distance += Math.sqrt(deltaX * deltaX + deltaY * deltaY);
+                segmentIndex++;
+            }
+        }
+        routeLength = distance;
+
+        segmentOrder = new int[count];
+        for (segmentIndex = 0; segmentIndex < count; segmentIndex++) {
+            segmentOrder[segmentIndex] = segmentIndex;
+        }
+        int maxNodesCount = Math.max(1, 2 * count);
+        nodeFrom = new int[maxNodesCount];
+        nodeTo = new int[maxNodesCount];
+        nodeLeft = new int[maxNodesCount];
+        nodeRight = new int[maxNodesCount];
+        nodeMinX = new double[maxNodesCount];
+        nodeMinY = new double[maxNodesCount];
+        nodeMaxX = new double[maxNodesCount];
+        nodeMaxY = new double[maxNodesCount];
+        if (count > 0) {
+            buildNode(0, count);
+        }
+    }
+
+    public int getSegmentsCount() {
+        return segmentsCount;
+    }
+
+    public int getSegmentLegIndex(int segmentIndex) {
+        return segmentLegIndexes[segmentIndex];
+    }
+
+    public int getSegmentStepIndex(int segmentIndex) {
+        return segmentStepIndexes[segmentIndex];
+    }
+
+    /**
+     * @return distance in meters from the start of the route to the start of the segment
+     */
+    public double getSegmentStartDistance(int segmentIndex) {
+        return segmentStartDistances[segmentIndex];
+    }
+
+    public double getSegmentLength(int segmentIndex) {
+        return Math.sqrt(segmentDeltaX[segmentIndex] * segmentDeltaX[segmentIndex] + segmentDeltaY[segmentIndex] * segmentDeltaY[segmentIndex]);
+    }
+
+    /**
+     * @return length of the route in meters, sum of the lengths of all segments
+     */
+    public double getRouteLength() {
+        return routeLength;
+    }
+
+    /**
+     * @return the point on the route nearest to the given location, null if the route has no segments.
+     * When several segments are equally near, the one earlier on the route wins.
+     */
+    public Snap snap(double latitude, double longitude) {
+        if (segmentsCount == 0) {
+            return null;
+        }
+        NearestSearch search = new NearestSearch(projectX(longitude), projectY(latitude));
+        searchNode(0, search);
+        return buildSnap(search);
+    }
+
+    /**
+     * Snaps to the segments in [fromSegmentIndex, toSegmentIndex) only, with a linear scan - meant for short windows.
+     * @return the point on the segments nearest to the given location, null if the range has no segments
+     */
+    public Snap snap(double latitude, double longitude, int fromSegmentIndex, int toSegmentIndex) {
+        int endSegmentIndex = Math.min(toSegmentIndex, segmentsCount);
+        int startSegmentIndex = Math.max(fromSegmentIndex, 0);
+        if (startSegmentIndex >= endSegmentIndex) {
+            return null;
+        }
+        NearestSearch search = new NearestSearch(projectX(longitude), projectY(latitude));
+        for (int segment = startSegmentIndex; segment < endSegmentIndex; segment++) {
+            offerSegment(segment, search);
+        }
+        return buildSnap(search);
+    }
+
+    private double projectX(double longitude) {
+        return (longitude - referenceLongitude) * metersPerDegreeLongitude;
+    }
+
+    private double projectY(double latitude) {
+        return (latitude - referenceLatitude) * metersPerDegreeLatitude;
+    }
+
+    private int buildNode(int fromIndex, int toIndex) {
+        int node = nodesCount++;
+        nodeFrom[node] = fromIndex;
+        nodeTo[node] = toIndex;
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        double minCenterX = Double.MAX_VALUE, minCenterY = Double.MAX_VALUE;
+        double maxCenterX = -Double.MAX_VALUE, maxCenterY = -Double.MAX_VALUE;
+        for (int orderIndex = fromIndex; orderIndex < toIndex; orderIndex++) {
+            int segment = segmentOrder[orderIndex];
+            double startX = segmentStartX[segment], endX = startX + segmentDeltaX[segment];
+            double startY = segmentStartY[segment], endY = startY + segmentDeltaY[segment];
+            minX = Math.min(minX, Math.min(startX, endX));
+            maxX = Math.max(maxX, Math.max(startX, endX));
+            minY = Math.min(minY, Math.min(startY, endY));
+            maxY = Math.max(maxY, Math.max(startY, endY));
+            double centerX = (startX + endX) / 2.0d;
+            double centerY = (startY + endY) / 2.0d;
+            minCenterX = Math.min(minCenterX, centerX);
+            maxCenterX = Math.max(maxCenterX, centerX);
+            minCenterY = Math.min(minCenterY, centerY);
+            maxCenterY = Math.max(maxCenterY, centerY);
+        }
+        nodeMinX[node] = minX;
+        nodeMinY[node] = minY;
+        nodeMaxX[node] = maxX;
+        nodeMaxY[node] = maxY;
+        if ((toIndex - fromIndex) <= LEAF_SIZE) {
+            nodeLeft[node] = -1;
+            nodeRight[node] = -1;
+        } else {
+            int splitIndex = (fromIndex + toIndex) >>> 1;
+            selectByCenter(fromIndex, toIndex, splitIndex, (maxCenterX - minCenterX) > (maxCenterY - minCenterY));
+            nodeLeft[node] = buildNode(fromIndex, splitIndex);
+            nodeRight[node] = buildNode(splitIndex, toIndex);
+        }
+        return node;
+    }
+
+    /**
+     * Quickselect of segmentOrder by the segment centers: the k-th smallest goes to k, not greater before and not less after it.
+     */
+    private void selectByCenter(int fromIndex, int toIndex, int k, boolean byX) {
+        int left = fromIndex;
+        int right = toIndex - 1;
+        while (right > left) {
+            double pivot = getSegmentCenter(segmentOrder[(left + right) >>> 1], byX);
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (getSegmentCenter(segmentOrder[i], byX) < pivot) {
+                    i++;
+                }
+                while (getSegmentCenter(segmentOrder[j], byX) > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int segment = segmentOrder[i];
+                    segmentOrder[i] = segmentOrder[j];
+                    segmentOrder[j] = segment;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                break;
+            }
+        }
+    }
+
+    private double getSegmentCenter(int segment, boolean byX) {
+        return byX ? (segmentStartX[segment] + segmentDeltaX[segment] / 2.0d) : (segmentStartY[segment] + segmentDeltaY[segment] / 2.0d);
+    }
+
+    private void searchNode(int node, NearestSearch search) {
+        if (nodeLeft[node] < 0) {
+            for (int orderIndex = nodeFrom[node]; orderIndex < nodeTo[node]; orderIndex++) {
+                offerSegment(segmentOrder[orderIndex], search);
+            }
+            return;
+        }
+        int left = nodeLeft[node];
+        int right = nodeRight[node];
+        double leftDistanceSquared = getNodeDistanceSquared(left, search.x, search.y);
+        double rightDistanceSquared = getNodeDistanceSquared(right, search.x, search.y);
+        int nearNode = (leftDistanceSquared <= rightDistanceSquared) ? left : right;
+        int farNode = (nearNode == left) ? right : left;
+        double farDistanceSquared = (nearNode == left) ? rightDistanceSquared : leftDistanceSquared;
+        if (Math.min(leftDistanceSquared, rightDistanceSquared) <= search.distanceSquared) {
+            searchNode(nearNode, search);
+        }
+        // Equally near segments may still win on their route order
+        if (farDistanceSquared <= search.distanceSquared) {
+            searchNode(farNode, search);
+        }
+    }
+
+    private double getNodeDistanceSquared(int node, double x, double y) {
+        double dx = Math.max(0.0d, Math.max(nodeMinX[node] - x, x - nodeMaxX[node]));
+        double dy = Math.max(0.0d, Math.max(nodeMinY[node] - y, y - nodeMaxY[node]));
+        return dx * dx + dy * dy;
+    }
+
+    private void offerSegment(int segment, NearestSearch search) {
+        double deltaX = segmentDeltaX[segment];
+        double deltaY = segmentDeltaY[segment];
+        double offsetX = search.x - segmentStartX[segment];
+        double offsetY = search.y - segmentStartY[segment];
+        double lengthSquared = deltaX * deltaX + deltaY * deltaY;
+        double fraction = (lengthSquared > 0.0d) ? Math.max(0.0d, Math.min(1.0d, (offsetX * deltaX + offsetY * deltaY) / lengthSquared)) : 0.0d;
+        double distanceX = offsetX - fraction * deltaX;
+        double distanceY = offsetY - fraction * deltaY;
+        double distanceSquared = distanceX * distanceX + distanceY * distanceY;
+        if ((distanceSquared < search.distanceSquared) ||
+                ((distanceSquared == search.distanceSquared) && (segment < search.segment))) {
+            search.segment = segment;
+            search.fraction = fraction;
+            search.distanceSquared = distanceSquared;
+        }
+    }
+
+    private Snap buildSnap(NearestSearch search) {
+        int segment = search.segment;
+        double deltaX = segmentDeltaX[segment];
+        double deltaY = segmentDeltaY[segment];
+        double segmentLength = Math.sqrt(deltaX * deltaX + deltaY * deltaY);
+        double snappedX = segmentStartX[segment] + search.fraction * deltaX;
+        double snappedY = segmentStartY[segment] + search.fraction * deltaY;
+        double distance = Math.sqrt(search.distanceSquared);
+        // Positive when the location is on the right side of the travel direction
+        double cross = deltaX * (search.y - segmentStartY[segment]) - deltaY * (search.x - segmentStartX[segment]);
+        double crossTrackError = (cross > 0.0d) ? -distance : distance;
+        return new Snap(segmentLegIndexes[segment], segmentStepIndexes[segment], segment,
+                segmentStartDistances[segment] + search.fraction * segmentLength, crossTrackError, search.fraction,
+                referenceLatitude + snappedY / metersPerDegreeLatitude, referenceLongitude + snappedX / metersPerDegreeLongitude);
+    }
+
+    private static class NearestSearch {
+        private final double x;
+        private final double y;
+        private int segment = -1;
+        private double fraction;
+        private double distanceSquared = Double.MAX_VALUE;
+
+        private NearestSearch(double x, double y) {
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    /**
+     * Collects the route step by step, in route order.
+     */
+    public static class Builder {
+        private final MapPointArray vertices = new MapPointArray(64);
+        private final List<BuilderStep> steps = new ArrayList<>();
+
+        public Builder addStep(int legIndex, int stepIndex, List<LatLng> points) {
+            int fromVertex = vertices.size();
+            if (points != null) {
+                for (LatLng point : points) {
+                    vertices.add(point.latitude, point.longitude);
+                }
+            }
+            steps.add(new BuilderStep(legIndex, stepIndex, fromVertex, vertices.size()));
+            return this;
+        }
+
+        /**
+         * Adds the step with the points of its polyline, read from the decoded packed coordinates.
+         */
+        public Builder addStep(int legIndex, int stepIndex, NavPolyline polyline) {
+            int fromVertex = vertices.size();
+            int pointsCount = (polyline != null) ? polyline.getPointsCount() : 0;
+            for (int pointIndex = 0; pointIndex < pointsCount; pointIndex++) {
+                vertices.add(polyline.getLatitude(pointIndex), polyline.getLongitude(pointIndex));
+            }
+            steps.add(new BuilderStep(legIndex, stepIndex, fromVertex, vertices.size()));
+            return this;
+        }
+
+        public MapRouteSnapper build() {
+            return new MapRouteSnapper(this);
+        }
+    }
+
+    private static class BuilderStep {
+        private final int legIndex;
+        private final int stepIndex;
+        private final int fromVertex;
+        private final int toVertex;
+
+        private BuilderStep(int legIndex, int stepIndex, int fromVertex, int toVertex) {
+            this.legIndex = legIndex;
+            this.stepIndex = stepIndex;
+            this.fromVertex = fromVertex;
+            this.toVertex = toVertex;
+        }
+    }
+
+    /**
+     * Location snapped to the route.
+     */
+    public static class Snap {
+        private final int legIndex;
+        private final int stepIndex;
+        private final int segmentIndex;
+        private final double distanceAlongRoute;
+        private final double crossTrackError;
+        private final double segmentFraction;
+        private final double latitude;
+        private final double longitude;
+
+        private Snap(int legIndex, int stepIndex, int segmentIndex, double distanceAlongRoute, double crossTrackError, double segmentFraction,
+                     double latitude, double longitude) {
+            this.legIndex = legIndex;
+            this.stepIndex = stepIndex;
+            this.segmentIndex = segmentIndex;
+            this.distanceAlongRoute = distanceAlongRoute;
+            this.crossTrackError = crossTrackError;
+            this.segmentFraction = segmentFraction;
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+
+        public int getLegIndex() {
+            return legIndex;
+        }
+
+        public int getStepIndex() {
+            return stepIndex;
+        }
+
+        /**
+         * @return index of the segment in route order
+         */
+        public int getSegmentIndex() {
+            return segmentIndex;
+        }
+
+        /**
+         * @return distance in meters from the start of the route to the snapped point
+         */
+        public double getDistanceAlongRoute() {
+            return distanceAlongRoute;
+        }
+
+        /**
+         * @return distance in meters from the route to the location, positive on the right side of the travel direction, negative on the left
+         */
+        public double getCrossTrackError() {
+            return crossTrackError;
+        }
+
+        /**
+         * @return position of the snapped point on its segment, 0 at the segment start and 1 at its end
+         */
+        public double getSegmentFraction() {
+            return segmentFraction;
+        }
+
+        public LatLng getLatLng() {
+            return new LatLng(latitude, longitude);
+        }
+    }
+}
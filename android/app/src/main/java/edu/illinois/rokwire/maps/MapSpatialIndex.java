@@ -0,0 +1,471 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.rokwire.maps;
+
+import java.util.Arrays;
+import java.util.List;
+
+import edu.illinois.rokwire.Utils;
+
+/**
+ * Immutable KD-tree over coordinates, with bounds, radius, nearest and k-nearest queries.
+ * The tree is implicit: points are reordered so that every node is a range of the arrays with its split point in the middle,
+ * the left half has keys not greater and the right half keys not less than the split point. Small ranges are scanned linearly.
+ * A node splits on the axis with the larger spread in meters.
+ * Points are referred to by their ids - the index in the source list or {@link MapPointArray}.
+ * Radius and nearest queries measure with the meters per degree fixed at the query point (see {@link Utils.Location#getDistanceSquared})
+ * and do not wrap longitudes, so points across the antimeridian from the query point are not found. Bounds queries handle bounds crossing it.
+ * Bounds and radius queries do not allocate. The index is safe to query from any thread.
+ * {@link PointLabels} answer the lowest label set on a point within a radius, for grouping points in their order.
+ */
+public class MapSpatialIndex {
+
+    private static final int LEAF_SIZE = 8;
+
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final int[] ids;
+    // Split axis and bounds of the node whose split point is at the index
+    private final boolean[] splitsLongitude;
+    private final double[] nodeSouths;
+    private final double[] nodeWests;
+    private final double[] nodeNorths;
+    private final double[] nodeEasts;
+    private final int size;
+
+    private MapSpatialIndex(double[] latitudes, double[] longitudes, int[] ids, int size) {
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.ids = ids;
+        this.splitsLongitude = new boolean[size];
+        this.nodeSouths = new double[size];
+        this.nodeWests = new double[size];
+        this.nodeNorths = new double[size];
+        this.nodeEasts = new double[size];
+        this.size = size;
+        buildNode(0, size);
+    }
+
+    /**
+     * @return index of the points, point ids are their indexes in the array
+     */
+    public static MapSpatialIndex build(MapPointArray points) {
+        int size = (points != null) ? points.size() : 0;
+        double[] latitudes = new double[size];
+        double[] longitudes = new double[size];
+        int[] ids = new int[size];
+        for (int index = 0; index < size; index++) {
+            latitudes[index] = points.getLatitude(index);
+            longitudes[index] = points.getLongitude(index);
+            ids[index] = index;
+        }
+        return new MapSpatialIndex(latitudes, longitudes, ids, size);
+    }
+
+    /**
+     * @return index of the explores that have a location, point ids are the explores' indexes in the list
+     */
+    public static MapSpatialIndex build(List<MapExplore> explores) {
+        int exploresCount = (explores != null) ? explores.size() : 0;
+        double[] latitudes = new double[exploresCount];
+        double[] longitudes = new double[exploresCount];
+        int[] ids = new int[exploresCount];
+        int size = 0;
+        for (int exploreIndex = 0; exploreIndex < exploresCount; exploreIndex++) {
+            MapExplore explore = explores.get(exploreIndex);
+            if (explore.hasLocation()) {
+                latitudes[size] = explore.getLatitude();
+                longitudes[size] = explore.getLongitude();
+                ids[size] = exploreIndex;
+                size++;
+            }
+        }
+        return new MapSpatialIndex(latitudes, longitudes, ids, size);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Finds the points inside the bounds, west may be greater than east for bounds crossing the antimeridian.
+     * @param outIds receives the ids of the found points, in no particular order
+     * @return count of the found points, only as many as fit are written to outIds
+     */
+    public int findInBounds(double south, double west, double north, double east, int[] outIds) {
+        if (west <= east) {
+            return collectInBounds(0, size, south, west, north, east, outIds, 0);
+        }
+        int count = collectInBounds(0, size, south, west, north, 180.0d, outIds, 0);
+        return collectInBounds(0, size, south, -180.0d, north, east, outIds, count);
+    }
+
+    /**
+     * @param outIds receives the ids of the points within the radius, in no particular order
+     * @return count of the points within the radius, only as many as fit are written to outIds
+     */
+    public int findWithinRadius(double latitude, double longitude, double radius, int[] outIds) {
+        double metersPerDegreeLatitude = Utils.Location.getMetersPerDegreeLatitude(latitude);
+        double metersPerDegreeLongitude = Utils.Location.getMetersPerDegreeLongitude(latitude);
+        return collectWithinRadius(0, size, latitude, longitude, metersPerDegreeLatitude, metersPerDegreeLongitude,
+                radius * radius, outIds, 0);
+    }
+
+    /**
+     * @return id of the point nearest to the given location, -1 if there are no points
+     */
+    public int findNearest(double latitude, double longitude) {
+        int[] nearestIds = new int[1];
+        int count = findKNearest(latitude, longitude, nearestIds, new double[1]);
+        return (count > 0) ? nearestIds[0] : -1;
+    }
+
+    /**
+     * Finds up to k points nearest to the given location, k is limited by the length of the output arrays.
+     * @param outIds receives the point ids ordered from the nearest
+     * @param outDistances receives the distances in meters of the found points
+     * @return count of the found points
+     */
+    public int findKNearest(double latitude, double longitude, int[] outIds, double[] outDistances) {
+        int k = Math.min(outIds.length, outDistances.length);
+        if (k == 0) {
+            return 0;
+        }
+        double metersPerDegreeLatitude = Utils.Location.getMetersPerDegreeLatitude(latitude);
+        double metersPerDegreeLongitude = Utils.Location.getMetersPerDegreeLongitude(latitude);
+        int count = collectNearest(0, size, latitude, longitude, metersPerDegreeLatitude, metersPerDegreeLongitude,
+                outIds, outDistances, k, 0);
+        for (int position = 0; position < count; position++) {
+            outDistances[position] = Math.sqrt(outDistances[position]);
+        }
+        return count;
+    }
+
+    /**
+     * @return labels of the points of the index, none of them set yet
+     */
+    public PointLabels newPointLabels() {
+        return new PointLabels();
+    }
+
+    private void buildNode(int fromIndex, int toIndex) {
+        if ((toIndex - fromIndex) <= LEAF_SIZE) {
+            return;
+        }
+        double minLatitude = latitudes[fromIndex], maxLatitude = minLatitude;
+        double minLongitude = longitudes[fromIndex], maxLongitude = minLongitude;
+        for (int index = fromIndex + 1; index < toIndex; index++) {
+            minLatitude = Math.min(minLatitude, latitudes[index]);
+            maxLatitude = Math.max(maxLatitude, latitudes[index]);
+            minLongitude = Math.min(minLongitude, longitudes[index]);
+            maxLongitude = Math.max(maxLongitude, longitudes[index]);
+        }
+        double middleLatitude = (minLatitude + maxLatitude) / 2.0d;
+        double latitudeSpread = (maxLatitude - minLatitude) * Utils.Location.getMetersPerDegreeLatitude(middleLatitude);
+        double longitudeSpread = (maxLongitude - minLongitude) * Utils.Location.getMetersPerDegreeLongitude(middleLatitude);
+        boolean splitLongitude = (longitudeSpread > latitudeSpread);
+
+        int splitIndex = (fromIndex + toIndex) >>> 1;
+        select(fromIndex, toIndex, splitIndex, splitLongitude);
+        splitsLongitude[splitIndex] = splitLongitude;
+        nodeSouths[splitIndex] = minLatitude;
+        nodeWests[splitIndex] = minLongitude;
+        nodeNorths[splitIndex] = maxLatitude;
+        nodeEasts[splitIndex] = maxLongitude;
+        buildNode(fromIndex, splitIndex);
+        buildNode(splitIndex + 1, toIndex);
+    }
+
+    /**
+     * Quickselect: moves the point with the k-th smallest key to k, with not greater keys before and not less keys after it.
+     */
+    private void select(int fromIndex, int toIndex, int k, boolean byLongitude) {
+        double[] keys = byLongitude ? longitudes : latitudes;
+        int left = fromIndex;
+        int right = toIndex - 1;
+        while (right > left) {
+            double pivot = keys[(left + right) >>> 1];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (keys[i] < pivot) {
+                    i++;
+                }
+                while (keys[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                break;
+            }
+        }
+    }
+
+    private void swap(int i, int j) {
+        double latitude = latitudes[i];
+        latitudes[i] = latitudes[j];
+        latitudes[j] = latitude;
+        double longitude = longitudes[i];
+        longitudes[i] = longitudes[j];
+        longitudes[j] = longitude;
+        int id = ids[i];
+        ids[i] = ids[j];
+        ids[j] = id;
+    }
+
+    private int collectInBounds(int fromIndex, int toIndex, double south, double west, double north, double east, int[] outIds, int count) {
+        if ((toIndex - fromIndex) <= LEAF_SIZE) {
+            for (int index = fromIndex; index < toIndex; index++) {
+                count = collectIfInBounds(index, south, west, north, east, outIds, count);
+            }
+            return count;
+        }
+        int splitIndex = (fromIndex + toIndex) >>> 1;
+        double splitKey = splitsLongitude[splitIndex] ? longitudes[splitIndex] : latitudes[splitIndex];
+        double minKey = splitsLongitude[splitIndex] ? west : south;
+        double maxKey = splitsLongitude[splitIndex] ? east : north;
+        if (minKey <= splitKey) {
+            count = collectInBounds(fromIndex, splitIndex, south, west, north, east, outIds, count);
+        }
+        count = collectIfInBounds(splitIndex, south, west, north, east, outIds, count);
+        if (splitKey <= maxKey) {
+            count = collectInBounds(splitIndex + 1, toIndex, south, west, north, east, outIds, count);
+        }
+        return count;
+    }
+
+    private int collectIfInBounds(int index, double south, double west, double north, double east, int[] outIds, int count) {
+        double latitude = latitudes[index];
+        double longitude = longitudes[index];
+        if ((south <= latitude) && (latitude <= north) && (west <= longitude) && (longitude <= east)) {
+            if (count < outIds.length) {
+                outIds[count] = ids[index];
+            }
+            count++;
+        }
+        return count;
+    }
+
+    private int collectWithinRadius(int fromIndex, int toIndex, double latitude, double longitude,
+                                    double metersPerDegreeLatitude, double metersPerDegreeLongitude, double radiusSquared,
+                                    int[] outIds, int count) {
+        if ((toIndex - fromIndex) <= LEAF_SIZE) {
+            for (int index = fromIndex; index < toIndex; index++) {
+                count = collectIfWithinRadius(index, latitude, longitude, metersPerDegreeLatitude, metersPerDegreeLongitude, radiusSquared, outIds, count);
+            }
+            return count;
+        }
+        int splitIndex = (fromIndex + toIndex) >>> 1;
+        double splitDistance = getSplitDistance(splitIndex, latitude, longitude, metersPerDegreeLatitude, metersPerDegreeLongitude);
+        boolean nearLeft = (splitDistance <= 0.0d);
+        int nearFrom = nearLeft ? fromIndex : (splitIndex + 1);
+        int nearTo = nearLeft ? splitIndex : toIndex;
+        int farFrom = nearLeft ? (splitIndex + 1) : fromIndex;
+        int farTo = nearLeft ? toIndex : splitIndex;
+
+        count = collectWithinRadius(nearFrom, nearTo, latitude, longitude, metersPerDegreeLatitude, metersPerDegreeLongitude, radiusSquared, outIds, count);
+        if ((splitDistance * splitDistance) <= radiusSquared) {
+            count = collectIfWithinRadius(splitIndex, latitude, longitude, metersPerDegreeLatitude, metersPerDegreeLongitude, radiusSquared, outIds, count);
+            count = collectWithinRadius(farFrom, farTo, latitude, longitude, metersPerDegreeLatitude, metersPerDegreeLongitude, radiusSquared, outIds, count);
+        }
+        return count;
+    }
+
+    private int collectIfWithinRadius(int index, double latitude, double longitude, double metersPerDegreeLatitude, double metersPerDegreeLongitude,
+                                      double radiusSquared, int[] outIds, int count) {
+        double distanceSquared = Utils.Location.getDistanceSquared(latitude, longitude, latitudes[index], longitudes[index],
+                metersPerDegreeLatitude, metersPerDegreeLongitude);
+        if (distanceSquared <= radiusSquared) {
+            if (count < outIds.length) {
+                outIds[count] = ids[index];
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Squared distances are kept in outDistances during the search, ordered from the nearest.
+     */
+    private int collectNearest(int fromIndex, int toIndex, double latitude, double longitude,
+                               double metersPerDegreeLatitude, double metersPerDegreeLongitude,
+                               int[] outIds, double[] outDistances, int k, int count) {
+        if ((toIndex - fromIndex) <= LEAF_SIZE) {
+            for (int index = fromIndex; index < toIndex; index++) {
+                count = offerNearest(index, latitude, longitude, metersPerDegreeLatitude, metersPerDegreeLongitude, outIds, outDistances, k, count);
+            }
+            return count;
+        }
+        int splitIndex = (fromIndex + toIndex) >>> 1;
+        double splitDistance = getSplitDistance(splitIndex, latitude, longitude, metersPerDegreeLatitude, metersPerDegreeLongitude);
+        boolean nearLeft = (splitDistance <= 0.0d);
+        int nearFrom = nearLeft ? fromIndex : (splitIndex + 1);
+        int nearTo = nearLeft ? splitIndex : toIndex;
+        int farFrom = nearLeft ? (splitIndex + 1) : fromIndex;
+        int farTo = nearLeft ? toIndex : splitIndex;
+
+        count = collectNearest(nearFrom, nearTo, latitude, longitude, metersPerDegreeLatitude, metersPerDegreeLongitude, outIds, outDistances, k, count);
+        if ((count < k) || ((splitDistance * splitDistance) < outDistances[count - 1])) {
+            count = offerNearest(splitIndex, latitude, longitude, metersPerDegreeLatitude, metersPerDegreeLongitude, outIds, outDistances, k, count);
+            count = collectNearest(farFrom, farTo, latitude, longitude, metersPerDegreeLatitude, metersPerDegreeLongitude, outIds, outDistances, k, count);
+        }
+        return count;
+    }
+
+    private int offerNearest(int index, double latitude, double longitude, double metersPerDegreeLatitude, double metersPerDegreeLongitude,
+                             int[] outIds, double[] outDistances, int k, int count) {
+        double distanceSquared = Utils.Location.getDistanceSquared(latitude, longitude, latitudes[index], longitudes[index],
+                metersPerDegreeLatitude, metersPerDegreeLongitude);
+        if ((count < k) || (distanceSquared < outDistances[count - 1])) {
+            // Insertion into the sorted k best, k is expected to be small
+            int position = (count < k) ? count++ : (count - 1);
+            while ((position > 0) && (outDistances[position - 1] > distanceSquared)) {
+                outDistances[position] = outDistances[position - 1];
+                outIds[position] = outIds[position - 1];
+                position--;
+            }
+            outDistances[position] = distanceSquared;
+            outIds[position] = ids[index];
+        }
+        return count;
+    }
+
+    /**
+     * @return signed distance in meters from the query point to the split plane of the node, not positive when the query point is on the left side
+     */
+    private double getSplitDistance(int splitIndex, double latitude, double longitude, double metersPerDegreeLatitude, double metersPerDegreeLongitude) {
+        return splitsLongitude[splitIndex] ?
+                ((longitude - longitudes[splitIndex]) * metersPerDegreeLongitude) :
+                ((latitude - latitudes[splitIndex]) * metersPerDegreeLatitude);
+    }
+
+    /**
+     * Labels set on the points of the index, with the lowest label set on a point within a radius.
+     * Every node keeps the lowest label set below it, so a query skips nodes that cannot lower the label found so far
+     * and takes the lowest label of a node inside the radius as a whole. Labels measure like {@link #findWithinRadius}.
+     * Labels are not safe to use from several threads.
+     */
+    public class PointLabels {
+
+        public static final int NO_LABEL = -1;
+
+        // Label of the point at the index, Integer.MAX_VALUE until it is set
+        private final int[] labels;
+        // Lowest label of the node whose split point is at the index
+        private final int[] nodeLabels;
+        // Index of the point by its id
+        private final int[] idIndexes;
+
+        private PointLabels() {
+            labels = new int[size];
+            Arrays.fill(labels, Integer.MAX_VALUE);
+            nodeLabels = new int[size];
+            Arrays.fill(nodeLabels, Integer.MAX_VALUE);
+            int maxId = -1;
+            for (int index = 0; index < size; index++) {
+                maxId = Math.max(maxId, ids[index]);
+            }
+            idIndexes = new int[maxId + 1];
+            for (int index = 0; index < size; index++) {
+                idIndexes[ids[index]] = index;
+            }
+        }
+
+        /**
+         * Sets the label of the point with the given id, a label may only be lowered.
+         */
+        public void setLabel(int id, int label) {
+            int index = idIndexes[id];
+            labels[index] = Math.min(labels[index], label);
+            int fromIndex = 0;
+            int toIndex = size;
+            while ((toIndex - fromIndex) > LEAF_SIZE) {
+                int splitIndex = (fromIndex + toIndex) >>> 1;
+                nodeLabels[splitIndex] = Math.min(nodeLabels[splitIndex], label);
+                if (index == splitIndex) {
+                    break;
+                } else if (index < splitIndex) {
+                    toIndex = splitIndex;
+                } else {
+                    fromIndex = splitIndex + 1;
+                }
+            }
+        }
+
+        /**
+         * @return the lowest label set on a point within the radius, {@link #NO_LABEL} if there is none
+         */
+        public int findLowestWithinRadius(double latitude, double longitude, double radius) {
+            double metersPerDegreeLatitude = Utils.Location.getMetersPerDegreeLatitude(latitude);
+            double metersPerDegreeLongitude = Utils.Location.getMetersPerDegreeLongitude(latitude);
+            int label = findLowest(0, size, latitude, longitude, metersPerDegreeLatitude, metersPerDegreeLongitude,
+                    radius * radius, Integer.MAX_VALUE);
+            return (label != Integer.MAX_VALUE) ? label : NO_LABEL;
+        }
+
+        private int findLowest(int fromIndex, int toIndex, double latitude, double longitude,
+                               double metersPerDegreeLatitude, double metersPerDegreeLongitude, double radiusSquared, int label) {
+            if ((toIndex - fromIndex) <= LEAF_SIZE) {
+                for (int index = fromIndex; index < toIndex; index++) {
+                    label = getLowerWithinRadius(index, latitude, longitude, metersPerDegreeLatitude, metersPerDegreeLongitude, radiusSquared, label);
+                }
+                return label;
+            }
+            int splitIndex = (fromIndex + toIndex) >>> 1;
+            if (nodeLabels[splitIndex] >= label) {
+                return label;
+            }
+            double nearLatitude = Math.max(nodeSouths[splitIndex] - latitude, Math.max(0.0d, latitude - nodeNorths[splitIndex])) * metersPerDegreeLatitude;
+            double nearLongitude = Math.max(nodeWests[splitIndex] - longitude, Math.max(0.0d, longitude - nodeEasts[splitIndex])) * metersPerDegreeLongitude;
+            if ((nearLatitude * nearLatitude + nearLongitude * nearLongitude) > radiusSquared) {
+                return label;
+            }
+            double farLatitude = Math.max(latitude - nodeSouths[splitIndex], nodeNorths[splitIndex] - latitude) * metersPerDegreeLatitude;
+            double farLongitude = Math.max(longitude - nodeWests[splitIndex], nodeEasts[splitIndex] - longitude) * metersPerDegreeLongitude;
+            if ((farLatitude * farLatitude + farLongitude * farLongitude) <= radiusSquared) {
+                // The whole node is within the radius
+                return nodeLabels[splitIndex];
+            }
+            boolean nearLeft = (getSplitDistance(splitIndex, latitude, longitude, metersPerDegreeLatitude, metersPerDegreeLongitude) <= 0.0d);
+            label = nearLeft ?
+                    findLowest(fromIndex, splitIndex, latitude, longitude, metersPerDegreeLatitude, metersPerDegreeLongitude, radiusSquared, label) :
+                    findLowest(splitIndex + 1, toIndex, latitude, longitude, metersPerDegreeLatitude, metersPerDegreeLongitude, radiusSquared, label);
+            label = getLowerWithinRadius(splitIndex, latitude, longitude, metersPerDegreeLatitude, metersPerDegreeLongitude, radiusSquared, label);
+            return nearLeft ?
+                    findLowest(splitIndex + 1, toIndex, latitude, longitude, metersPerDegreeLatitude, metersPerDegreeLongitude, radiusSquared, label) :
+                    findLowest(fromIndex, splitIndex, latitude, longitude, metersPerDegreeLatitude, metersPerDegreeLongitude, radiusSquared, label);
+        }
+
+        private int getLowerWithinRadius(int index, double latitude, double longitude, double metersPerDegreeLatitude, double metersPerDegreeLongitude,
+                                         double radiusSquared, int label) {
+            if ((labels[index] < label) && (Utils.Location.getDistanceSquared(latitude, longitude, latitudes[index], longitudes[index],
+                    metersPerDegreeLatitude, metersPerDegreeLongitude) <= radiusSquared)) {
+                return labels[index];
+            }
+            return label;
+        }
+    }
+}
@@ -20,9 +20,7 @@ import android.annotation.SuppressLint;
 import android.app.Activity;
 import android.content.Context;
 import android.content.res.Resources;
-import android.os.AsyncTask;
 import android.util.Log;
-import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewParent;
 import android.widget.FrameLayout;
@@ -32,6 +30,7 @@ import com.google.android.gms.maps.CameraUpdate;
 import com.google.android.gms.maps.CameraUpdateFactory;
 import com.google.android.gms.maps.GoogleMap;
 import com.google.android.gms.maps.OnMapReadyCallback;
+import com.google.android.gms.maps.model.BitmapDescriptor;
 import com.google.android.gms.maps.model.CameraPosition;
 import com.google.android.gms.maps.model.LatLng;
 import com.google.android.gms.maps.model.LatLngBounds;
@@ -40,15 +39,16 @@ import com.google.android.gms.maps.model.Marker;
 import com.google.android.gms.maps.model.MarkerOptions;
 import com.google.android.gms.maps.model.PointOfInterest;
 import com.google.gson.Gson;
-import com.google.maps.android.ui.IconGenerator;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -72,12 +72,23 @@ public class MapView extends FrameLayout implements OnMapReadyCallback {
     private ArrayList<Object> explores;
     private HashMap exploreOptions;
     private List<Object> displayExplores;
-    private List<Marker> markers;
+    private List<MapExplore> compiledExplores;
+    private IdentityHashMap<HashMap, MapExplore> compiledExploresMap;
+    private MapSpatialIndex exploresIndex;
+    // Compiled explores and their index of the list the display explores were built from
+    private List<MapExplore> displayCompiledExplores;
+    private MapSpatialIndex displayExploresIndex;
+    private IdentityHashMap<HashMap, Object> displayExploreAnchors;
+    private int[] displayExploresQueryIds;
+    private MapExploreClusterHierarchy exploreClusterHierarchy;
+    private MapClusteringScheduler<ClusteringResult> clusteringScheduler;
+    private HashMap<String, Marker> markers;
+    private HashMap<String, PendingMarker> pendingMarkers;
+    private HashMap<Marker, BitmapDescriptor[]> markerIconVariants;
+    private IdentityHashMap<Object, String> displayExploreKeys;
     private Marker markMarker;
 
-    private IconGenerator iconGenerator;
-    private View markerLayoutView;
-    private View markerGroupLayoutView;
+    private MapMarkerIconRenderer markerIconRenderer;
     private float cameraZoom;
 
     private boolean mapLayoutPassed;
@@ -95,6 +106,14 @@ public class MapView extends FrameLayout implements OnMapReadyCallback {
     }
 
     public void onDestroy() {
+        if (clusteringScheduler != null) {
+            clusteringScheduler.shutdown();
+            clusteringScheduler = null;
+        }
+        if (markerIconRenderer != null) {
+            markerIconRenderer.shutdown();
+            markerIconRenderer = null;
+        }
         clearMarkers();
         if (googleMapView != null) {
             googleMapView.onDestroy();
@@ -123,8 +142,9 @@ public class MapView extends FrameLayout implements OnMapReadyCallback {
     }
 
     private void init() {
+        clusteringScheduler = new MapClusteringScheduler<>();
+        markerIconRenderer = new MapMarkerIconRenderer(context);
         initValuesFromArguments();
-        initMarkerView();
         initMapView();
         initMapStyleOptions();
     }
@@ -137,14 +157,6 @@ public class MapView extends FrameLayout implements OnMapReadyCallback {
         googleMapView.getMapAsync(this);
     }
 
-    private void initMarkerView() {
-        iconGenerator = new IconGenerator(activity);
-        iconGenerator.setBackground(activity.getDrawable(R.color.transparent));
-        LayoutInflater inflater = (activity != null) ? (LayoutInflater) activity.getSystemService(Context.LAYOUT_INFLATER_SERVICE) : null;
-        markerLayoutView = (inflater != null) ? inflater.inflate(R.layout.marker_info_layout, null) : null;
-        markerGroupLayoutView = (inflater != null) ? inflater.inflate(R.layout.marker_group_layout, null) : null;
-    }
-
     private void initMapStyleOptions() {
         // No Poi map style options
         try {
@@ -194,6 +206,11 @@ public class MapView extends FrameLayout implements OnMapReadyCallback {
     public void applyExplores(ArrayList explores, HashMap options) {
         this.explores = explores;
         this.exploreOptions = options;
+        this.exploreClusterHierarchy = null;
+        this.displayExploreKeys = null;
+        this.compiledExplores = null;
+        this.compiledExploresMap = null;
+        this.exploresIndex = null;
         if (mapLayoutPassed) {
             Object exploreUpdateOnlyParam = (exploreOptions != null) ? exploreOptions.get("UpdateOnly") : null;
             Boolean exploreUpdateOnly = (exploreUpdateOnlyParam instanceof Boolean) ? ((Boolean)exploreUpdateOnlyParam) : false;
@@ -218,7 +235,7 @@ public class MapView extends FrameLayout implements OnMapReadyCallback {
     public void markPoi(HashMap explore) {
         if (mapLayoutPassed) {
             if (explore != null) {
-                MarkerOptions markerOptions = Utils.Explore.constructMarkerOptions(getContext(), explore, markerLayoutView, markerGroupLayoutView, iconGenerator);
+                MarkerOptions markerOptions = Utils.Explore.constructMarkerOptions(getContext(), explore, getMarkerZoomBand());
                 if (markerOptions != null) {
                     if (markMarker != null) {
                         markMarker.remove();
@@ -238,6 +255,10 @@ public class MapView extends FrameLayout implements OnMapReadyCallback {
         }
     }
 
+    public MapClusteringScheduler.Statistics getClusteringStatistics() {
+        return (clusteringScheduler != null) ? clusteringScheduler.getStatistics() : null;
+    }
+
     // This has already been checked in flutter portion of the app
     @SuppressLint("MissingPermission")
     public void enableMyLocation(boolean enable) {
@@ -254,14 +275,7 @@ public class MapView extends FrameLayout implements OnMapReadyCallback {
                 final int cameraPadding = 150;
                 CameraUpdate cameraUpdate = CameraUpdateFactory.newLatLngBounds(bounds, cameraPadding);
                 googleMap.moveCamera(cameraUpdate);
-                double thresholdDistance;
-                Object exploreLocationThresholdParam = (exploreOptions != null) ? exploreOptions.get("LocationThresoldDistance") : null;
-                if (exploreLocationThresholdParam instanceof Double) {
-                    thresholdDistance = (Double) exploreLocationThresholdParam;
-                } else {
-                    thresholdDistance = getThresholdDistance(googleMap.getCameraPosition().zoom);
-                }
-                buildDisplayExploresForThresholdDistance(thresholdDistance);
+                buildDisplayExplores();
             } else {
                 CameraUpdate cameraUpdate = CameraUpdateFactory.newLatLngZoom(Constants.DEFAULT_INITIAL_CAMERA_POSITION, Constants.DEFAULT_CAMERA_ZOOM);
                 googleMap.moveCamera(cameraUpdate);
@@ -270,104 +284,380 @@ public class MapView extends FrameLayout implements OnMapReadyCallback {
     }
 
     private void buildDisplayExplores() {
-        if (mapLayoutPassed) {
-            Object exploreLocationThresholdParam = (exploreOptions != null) ? exploreOptions.get("LocationThresoldDistance") : null;
-            double thresholdDistance = (exploreLocationThresholdParam instanceof Double) ? (Double) exploreLocationThresholdParam : getAutomaticThresholdDistance();
-            buildDisplayExploresAsyncForThresholdDistance(thresholdDistance);
+        if (mapLayoutPassed && (clusteringScheduler != null)) {
+            Double thresholdDistance = optExploreLocationThresholdDistance();
+            float zoom = googleMap.getCameraPosition().zoom;
+            if ((thresholdDistance == null) && (exploreClusterHierarchy != null)) {
+                // Zoom change is a lookup in the precomputed cluster levels
+                clusteringScheduler.cancel();
+                setDisplayExplores(exploreClusterHierarchy.getDisplayExplores(zoom));
+                showExploresOnMap();
+            } else {
+                final ArrayList<Object> rawExplores = explores;
+                final List<MapExplore> currentCompiledExplores = compiledExplores;
+                final MapSpatialIndex currentExploresIndex = (currentCompiledExplores != null) ? exploresIndex : null;
+                final Context appContext = context.getApplicationContext();
+                clusteringScheduler.submit(() -> {
+                    // Explores are compiled and indexed once per applied list and reused by the following clustering runs
+                    List<MapExplore> mapExplores = (currentCompiledExplores != null) ? currentCompiledExplores : MapExplore.compileList(appContext, rawExplores);
+                    MapSpatialIndex mapExploresIndex = (currentExploresIndex != null) ? currentExploresIndex : MapSpatialIndex.build(mapExplores);
+                    if (thresholdDistance != null) {
+                        return new ClusteringResult(rawExplores, mapExplores, mapExploresIndex, null,
+                                MapExploreClusterer.buildExplores(mapExplores, mapExploresIndex, thresholdDistance));
+                    }
+                    MapExploreClusterHierarchy clusterHierarchy = new MapExploreClusterHierarchy(mapExplores, mapExploresIndex);
+                    return new ClusteringResult(rawExplores, mapExplores, mapExploresIndex, clusterHierarchy, clusterHierarchy.getDisplayExplores(zoom));
+                }, this::onClusteringResult);
+            }
         }
     }
 
-    private void buildDisplayExploresAsyncForThresholdDistance(double thresholdDistance) {
-        MarkersAsyncTask markersAsyncTask = new MarkersAsyncTask();
-        markersAsyncTask.execute(thresholdDistance);
+    private void onClusteringResult(ClusteringResult result) {
+        if (result.rawExplores != explores) {
+            return;
+        }
+        if (result.clusterHierarchy != null) {
+            exploreClusterHierarchy = result.clusterHierarchy;
+        }
+        if (compiledExplores != result.compiledExplores) {
+            compiledExplores = result.compiledExplores;
+            compiledExploresMap = new IdentityHashMap<>();
+            for (MapExplore compiledExplore : compiledExplores) {
+                compiledExploresMap.put(compiledExplore.getRawExplore(), compiledExplore);
+            }
+        }
+        exploresIndex = result.exploresIndex;
+        setDisplayExplores(result.displayExplores);
+        showExploresOnMap();
     }
 
-    private void buildDisplayExploresForThresholdDistance(double thresholdDistance) {
-        displayExplores = buildExplores(explores, thresholdDistance);
-        showExploresOnMap();
+    /**
+     * Display explores must come from the current compiled explores - their index is kept for the viewport queries
+     * until the next display explores are set, even if a new explores list is applied meanwhile.
+     */
+    private void setDisplayExplores(List<Object> displayExplores) {
+        this.displayExplores = displayExplores;
+        this.displayCompiledExplores = compiledExplores;
+        this.displayExploresIndex = exploresIndex;
+        this.displayExploreAnchors = null;
     }
 
-    private List<Object> buildExplores(ArrayList rawExplores, double thresholdDistance) {
-        if (rawExplores == null || rawExplores.size() == 0) {
-            return null;
+    private Double optExploreLocationThresholdDistance() {
+        Object exploreLocationThresholdParam = (exploreOptions != null) ? exploreOptions.get("LocationThresoldDistance") : null;
+        return (exploreLocationThresholdParam instanceof Double) ? (Double) exploreLocationThresholdParam : null;
+    }
+
+    private void showExploresOnMap() {
+        if (googleMap == null || !mapLayoutPassed) {
+            return;
         }
-        List<ArrayList<HashMap>> mappedExploreGroups = new ArrayList<>();
-        int rawExploresCount = rawExplores.size();
-        for (int rawExploresIndex = 0; rawExploresIndex < rawExploresCount; rawExploresIndex++) {
-            Object exploreObject = rawExplores.get(rawExploresIndex);
-            if (exploreObject instanceof HashMap) {
-                HashMap explore = (HashMap) exploreObject;
-                Integer exploreFloor = Utils.Explore.optLocationFloor(explore);
-                LatLng exploreLatLng = Utils.Explore.optLocationLatLng(explore);
-                if (exploreLatLng != null) {
-                    boolean exploreMapped = false;
-                    for (List<HashMap> mappedExploreGroup : mappedExploreGroups) {
-                        for (HashMap mappedExplore : mappedExploreGroup) {
-                            LatLng mappedExploreLatLng = Utils.Explore.optLocationLatLng(mappedExplore);
-                            Double distance = Utils.Location.getDistanceBetween(exploreLatLng, mappedExploreLatLng);
-                            Integer mappedExploreFloor = Utils.Explore.optLocationFloor(mappedExplore);
-                            boolean sameFloor = (exploreFloor == null && mappedExploreFloor == null) ||
-                                    ((exploreFloor != null && mappedExploreFloor != null) && exploreFloor.equals(mappedExploreFloor));
-                            if ((distance != null) && (distance <= thresholdDistance) && sameFloor) {
-                                mappedExploreGroup.add(explore);
-                                exploreMapped = true;
-                                break;
-                            }
-                        }
-                        if (exploreMapped) {
-                            break;
-                        }
-                    }
-                    if (!exploreMapped) {
-                        ArrayList<HashMap> mappedExploreGroup = new ArrayList<>(Collections.singletonList(explore));
-                        mappedExploreGroups.add(mappedExploreGroup);
-                    }
+        updateViewportMarkers();
+        updateMarkers();
+    }
+
+    /**
+     * Reconciles the markers on the map with the display explores inside the visible region extended by the viewport margin.
+     * Markers are keyed by a stable cluster identity, so unchanged clusters keep their markers, moved ones are repositioned
+     * and only the difference is added or removed.
+     * Icons of new markers are rendered off the main thread, a marker is added once its icon is ready
+     * and it is still wanted - until then it is kept as pending.
+     */
+    private void updateViewportMarkers() {
+        if ((displayExplores == null) || displayExplores.isEmpty()) {
+            clearMarkers();
+            return;
+        }
+        LatLngBounds markersBounds = getViewportMarkersBounds();
+        HashMap<String, Object> targetExplores = new HashMap<>();
+        HashMap<String, LatLng> targetLatLngs = new HashMap<>();
+        if ((markersBounds != null) && (displayExploresIndex != null) && (displayCompiledExplores != null)) {
+            // Only the explores in the viewport are visited. A display explore is placed at its first explore, which is its anchor.
+            IdentityHashMap<HashMap, Object> anchors = getDisplayExploreAnchors();
+            if ((displayExploresQueryIds == null) || (displayExploresQueryIds.length < displayExploresIndex.size())) {
+                displayExploresQueryIds = new int[displayExploresIndex.size()];
+            }
+            int exploresCount = displayExploresIndex.findInBounds(markersBounds.southwest.latitude, markersBounds.southwest.longitude,
+                    markersBounds.northeast.latitude, markersBounds.northeast.longitude, displayExploresQueryIds);
+            // Index order keeps the keys of duplicated explore ids stable
+            Arrays.sort(displayExploresQueryIds, 0, exploresCount);
+            for (int queryIndex = 0; queryIndex < exploresCount; queryIndex++) {
+                MapExplore compiledExplore = displayCompiledExplores.get(displayExploresQueryIds[queryIndex]);
+                Object explore = anchors.get(compiledExplore.getRawExplore());
+                if (explore != null) {
+                    addTargetExplore(targetExplores, targetLatLngs, explore, compiledExplore.getLatLng());
+                }
+            }
+        } else {
+            for (Object explore : displayExplores) {
+                LatLng exploreLatLng = getDisplayExploreLatLng(explore);
+                if ((exploreLatLng != null) && ((markersBounds == null) || markersBounds.contains(exploreLatLng))) {
+                    addTargetExplore(targetExplores, targetLatLngs, explore, exploreLatLng);
                 }
             }
         }
-        List<Object> resultExplores = new ArrayList<>();
-        for (List<HashMap> mappedExploreGroup : mappedExploreGroups) {
-            if (mappedExploreGroup.size() == 1) {
-                HashMap firstExplore = mappedExploreGroup.get(0);
-                resultExplores.add(firstExplore);
+
+        int markerZoomBand = getMarkerZoomBand();
+        HashMap<String, PendingMarker> currentPendingMarkers = (pendingMarkers != null) ? pendingMarkers : new HashMap<>();
+        pendingMarkers = new HashMap<>();
+        for (java.util.Map.Entry<String, PendingMarker> pendingEntry : currentPendingMarkers.entrySet()) {
+            String exploreKey = pendingEntry.getKey();
+            PendingMarker pendingMarker = pendingEntry.getValue();
+            Object explore = targetExplores.get(exploreKey);
+            if ((explore != null) && (pendingMarker.zoomBand == markerZoomBand) &&
+                    ((explore == pendingMarker.explore) || explore.equals(pendingMarker.explore))) {
+                pendingMarker.markerOptions.position(targetLatLngs.get(exploreKey));
+                pendingMarker.explore = explore;
+                pendingMarkers.put(exploreKey, pendingMarker);
+                targetExplores.remove(exploreKey);
+            }
+        }
+
+        HashMap<String, Marker> currentMarkers = (markers != null) ? markers : new HashMap<>();
+        markers = new HashMap<>();
+        for (java.util.Map.Entry<String, Marker> markerEntry : currentMarkers.entrySet()) {
+            String exploreKey = markerEntry.getKey();
+            Marker marker = markerEntry.getValue();
+            Object explore = targetExplores.get(exploreKey);
+            Object markerExplore = Utils.Explore.optExploreMarkerRawData(marker);
+            if ((explore != null) && ((explore == markerExplore) || explore.equals(markerExplore))) {
+                LatLng exploreLatLng = targetLatLngs.get(exploreKey);
+                if (!exploreLatLng.equals(marker.getPosition())) {
+                    marker.setPosition(exploreLatLng);
+                }
+                if (explore != markerExplore) {
+                    marker.setTag(Utils.Explore.constructMarkerTagJson(getContext(), marker.getTitle(), explore));
+                }
+                markers.put(exploreKey, marker);
+                targetExplores.remove(exploreKey);
             } else {
-                resultExplores.add(mappedExploreGroup);
+                marker.remove();
+                if (markerIconVariants != null) {
+                    markerIconVariants.remove(marker);
+                }
+            }
+        }
+
+        for (java.util.Map.Entry<String, Object> exploreEntry : targetExplores.entrySet()) {
+            String exploreKey = exploreEntry.getKey();
+            Object explore = exploreEntry.getValue();
+            MapExplore markerExplore = getDisplayExploreCompiled(explore);
+            MarkerOptions markerOptions = Utils.Explore.constructMarkerBaseOptions(explore, markerExplore, targetLatLngs.get(exploreKey));
+            if (markerOptions != null) {
+                PendingMarker pendingMarker = new PendingMarker(explore, markerOptions, markerZoomBand);
+                pendingMarkers.put(exploreKey, pendingMarker);
+                MapMarkerIconCache.Key iconKey = Utils.Explore.constructMarkerIconKey(getContext(), explore, markerExplore, markerOptions.getTitle(), markerZoomBand);
+                markerIconRenderer.requestIcon(iconKey, icon -> onPendingMarkerIcon(exploreKey, pendingMarker, icon));
             }
         }
-        return resultExplores;
     }
 
-    private void showExploresOnMap() {
-        if (googleMap == null || !mapLayoutPassed) {
+    private void addTargetExplore(HashMap<String, Object> targetExplores, HashMap<String, LatLng> targetLatLngs, Object explore, LatLng exploreLatLng) {
+        String exploreKey = getDisplayExploreKey(explore);
+        while (targetExplores.containsKey(exploreKey)) {
+            // Duplicated explore ids - keep both markers
+            exploreKey += "+";
+        }
+        targetExplores.put(exploreKey, explore);
+        targetLatLngs.put(exploreKey, exploreLatLng);
+    }
+
+    /**
+     * @return display explores mapped by their first explore
+     */
+    private IdentityHashMap<HashMap, Object> getDisplayExploreAnchors() {
+        if (displayExploreAnchors == null) {
+            displayExploreAnchors = new IdentityHashMap<>();
+            for (Object displayExplore : displayExplores) {
+                Object anchorExplore = displayExplore;
+                if (displayExplore instanceof ArrayList) {
+                    ArrayList exploreGroup = (ArrayList) displayExplore;
+                    anchorExplore = !exploreGroup.isEmpty() ? exploreGroup.get(0) : null;
+                }
+                if (anchorExplore instanceof HashMap) {
+                    displayExploreAnchors.put((HashMap) anchorExplore, displayExplore);
+                }
+            }
+        }
+        return displayExploreAnchors;
+    }
+
+    private void onPendingMarkerIcon(String exploreKey, PendingMarker pendingMarker, BitmapDescriptor icon) {
+        if ((googleMap == null) || (pendingMarkers == null) || (pendingMarkers.get(exploreKey) != pendingMarker)) {
+            // Superseded or no longer in the viewport
             return;
         }
-        clearMarkers();
-        if ((displayExplores != null) && (displayExplores.size() > 0)) {
-            markers = new ArrayList<>();
-            for (Object explore : displayExplores) {
-                MarkerOptions markerOptions = Utils.Explore.constructMarkerOptions(getContext(), explore, markerLayoutView, markerGroupLayoutView, iconGenerator);
-                if (markerOptions != null) {
-                    Marker marker = googleMap.addMarker(markerOptions);
-                    if (marker != null) {
-                        JSONObject tagJson = Utils.Explore.constructMarkerTagJson(getContext(), marker.getTitle(), explore);
-                        marker.setTag(tagJson);
-                        markers.add(marker);
+        pendingMarkers.remove(exploreKey);
+        Marker marker = googleMap.addMarker(pendingMarker.markerOptions.icon(icon));
+        if (marker != null) {
+            JSONObject tagJson = Utils.Explore.constructMarkerTagJson(getContext(), marker.getTitle(), pendingMarker.explore);
+            marker.setTag(tagJson);
+            if (markers == null) {
+                markers = new HashMap<>();
+            }
+            markers.put(exploreKey, marker);
+            prerenderMarkerIconVariants(exploreKey, marker, pendingMarker.zoomBand, icon);
+        }
+    }
+
+    /**
+     * Renders the icons of the other zoom bands of a marker in the background,
+     * so that crossing a zoom threshold only swaps the marker icon.
+     */
+    private void prerenderMarkerIconVariants(String exploreKey, Marker marker, int renderedZoomBand, BitmapDescriptor renderedIcon) {
+        boolean showMarkerPopups = Utils.Map.getValueFromPath(exploreOptions, "ShowMarkerPopus", true);
+        if (!showMarkerPopups) {
+            return;
+        }
+        if (markerIconVariants == null) {
+            markerIconVariants = new HashMap<>();
+        }
+        BitmapDescriptor[] iconVariants = new BitmapDescriptor[Constants.MAP_MARKER_ZOOM_BANDS_COUNT];
+        iconVariants[renderedZoomBand] = renderedIcon;
+        markerIconVariants.put(marker, iconVariants);
+        for (int zoomBand = 0; zoomBand < iconVariants.length; zoomBand++) {
+            if (zoomBand != renderedZoomBand) {
+                final int variantZoomBand = zoomBand;
+                MapMarkerIconCache.Key iconKey = Utils.Explore.constructMarkerIconKey(getContext(), marker, variantZoomBand);
+                markerIconRenderer.requestIcon(iconKey, icon -> {
+                    if ((markers != null) && (markers.get(exploreKey) == marker) && (markerIconVariants != null) && (markerIconVariants.get(marker) == iconVariants)) {
+                        iconVariants[variantZoomBand] = icon;
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Sets the marker icon for the zoom band - a prerendered variant when there is one, otherwise a freshly rendered one.
+     * Icons are set in frame sized batches.
+     */
+    private void applyMarkerZoomBandIcon(String exploreKey, Marker marker, int markerZoomBand) {
+        BitmapDescriptor[] iconVariants = (markerIconVariants != null) ? markerIconVariants.get(marker) : null;
+        MapMarkerIconRenderer.IconCallback iconCallback = icon -> {
+            // Skip icons outdated by a later zoom band change
+            if ((markers != null) && (markers.get(exploreKey) == marker) && (getMarkerZoomBand() == markerZoomBand)) {
+                marker.setIcon(icon);
+                if (iconVariants != null) {
+                    iconVariants[markerZoomBand] = icon;
+                }
+            }
+        };
+        BitmapDescriptor iconVariant = (iconVariants != null) ? iconVariants[markerZoomBand] : null;
+        if (iconVariant != null) {
+            markerIconRenderer.postFrameOperation(() -> iconCallback.onIcon(iconVariant));
+        } else {
+            MapMarkerIconCache.Key iconKey = Utils.Explore.constructMarkerIconKey(getContext(), marker, markerZoomBand);
+            markerIconRenderer.requestIcon(iconKey, iconCallback);
+        }
+    }
+
+    /**
+     * @return the sorted ids of the explores in the display explore followed by their floor
+     */
+    private String getDisplayExploreKey(Object displayExplore) {
+        if (displayExploreKeys == null) {
+            displayExploreKeys = new IdentityHashMap<>();
+        }
+        String exploreKey = displayExploreKeys.get(displayExplore);
+        if (exploreKey == null) {
+            List<String> exploreIds = new ArrayList<>();
+            MapExplore firstExplore = null;
+            if (displayExplore instanceof HashMap) {
+                firstExplore = getCompiledExplore((HashMap) displayExplore);
+                exploreIds.add(firstExplore.getId());
+            } else if (displayExplore instanceof ArrayList) {
+                for (Object explore : (ArrayList) displayExplore) {
+                    if (explore instanceof HashMap) {
+                        MapExplore compiledExplore = getCompiledExplore((HashMap) explore);
+                        if (firstExplore == null) {
+                            firstExplore = compiledExplore;
+                        }
+                        exploreIds.add(compiledExplore.getId());
                     }
                 }
             }
+            Collections.sort(exploreIds);
+            StringBuilder keyBuilder = new StringBuilder();
+            for (String exploreId : exploreIds) {
+                keyBuilder.append(exploreId).append('|');
+            }
+            keyBuilder.append('@').append((firstExplore != null) ? firstExplore.getFloor() : null);
+            exploreKey = keyBuilder.toString();
+            displayExploreKeys.put(displayExplore, exploreKey);
+        }
+        return exploreKey;
+    }
+
+    /**
+     * @return visible map bounds extended on every side by "MarkersViewportMargin" (fraction of the visible span),
+     * null if the extended bounds cover the whole world.
+     */
+    private LatLngBounds getViewportMarkersBounds() {
+        LatLngBounds visibleBounds = googleMap.getProjection().getVisibleRegion().latLngBounds;
+        double margin = Utils.Map.getValueFromPath(exploreOptions, "MarkersViewportMargin", Constants.MAP_MARKERS_VIEWPORT_MARGIN);
+        double latSpan = visibleBounds.northeast.latitude - visibleBounds.southwest.latitude;
+        double lngSpan = visibleBounds.northeast.longitude - visibleBounds.southwest.longitude;
+        if (lngSpan < 0) {
+            lngSpan += 360.0d;
+        }
+        double lngMargin = lngSpan * margin;
+        if ((lngSpan + 2 * lngMargin) >= 360.0d) {
+            return null;
         }
-        updateMarkers();
+        double latMargin = latSpan * margin;
+        LatLng southwest = new LatLng(Math.max(-90.0d, visibleBounds.southwest.latitude - latMargin), visibleBounds.southwest.longitude - lngMargin);
+        LatLng northeast = new LatLng(Math.min(90.0d, visibleBounds.northeast.latitude + latMargin), visibleBounds.northeast.longitude + lngMargin);
+        return new LatLngBounds(southwest, northeast);
+    }
+
+    private LatLng getDisplayExploreLatLng(Object displayExplore) {
+        MapExplore compiledExplore = getDisplayExploreCompiled(displayExplore);
+        return (compiledExplore != null) ? compiledExplore.getLatLng() : null;
+    }
+
+    /**
+     * @return compiled explore of a single display explore, the first compiled explore of a group
+     */
+    private MapExplore getDisplayExploreCompiled(Object displayExplore) {
+        Object singleExplore = displayExplore;
+        if (displayExplore instanceof ArrayList) {
+            ArrayList exploreGroup = (ArrayList) displayExplore;
+            singleExplore = !exploreGroup.isEmpty() ? exploreGroup.get(0) : null;
+        }
+        return (singleExplore instanceof HashMap) ? getCompiledExplore((HashMap) singleExplore) : null;
+    }
+
+    private MapExplore getCompiledExplore(HashMap rawExplore) {
+        if (compiledExploresMap == null) {
+            compiledExploresMap = new IdentityHashMap<>();
+        }
+        MapExplore compiledExplore = compiledExploresMap.get(rawExplore);
+        if (compiledExplore == null) {
+            // Display explores of a previous explores list, still shown until the new list is clustered
+            compiledExplore = MapExplore.compile(getContext(), rawExplore);
+            compiledExploresMap.put(rawExplore, compiledExplore);
+        }
+        return compiledExplore;
+    }
+
+    private int getMarkerZoomBand() {
+        boolean showMarkerPopups = Utils.Map.getValueFromPath(exploreOptions, "ShowMarkerPopus", true);
+        return showMarkerPopups ? Utils.Explore.getMarkerZoomBand(googleMap.getCameraPosition().zoom) : 0;
     }
 
     private synchronized void clearMarkers() {
-        Utils.Explore.showMarkerInfo(markerLayoutView, false);
         if (markers != null) {
-            for (Marker marker : markers) {
+            for (Marker marker : markers.values()) {
                 marker.remove();
             }
             markers.clear();
             markers = null;
         }
+        pendingMarkers = null;
+        markerIconVariants = null;
+        if (markerIconRenderer != null) {
+            markerIconRenderer.cancelAll();
+        }
     }
 
     private void updateMarkers() {
@@ -380,12 +670,19 @@ public class MapView extends FrameLayout implements OnMapReadyCallback {
             boolean hasMarkers = (markers != null && !markers.isEmpty());
             if (hasMarkers) {
                 LatLngBounds visibleMapBounds = googleMap.getProjection().getVisibleRegion().latLngBounds;
-                for (Marker marker : markers) {
-                    if (visibleMapBounds.contains(marker.getPosition())) {
-                        boolean singleExploreMarker = Utils.Explore.optSingleExploreMarker(marker);
-                        Utils.Explore.updateCustomMarkerAppearance(getContext(), marker, singleExploreMarker, currentCameraZoom, cameraZoom, markerLayoutView, markerGroupLayoutView, iconGenerator);
+                int markerZoomBand = getMarkerZoomBand();
+                // Visible markers first, then the ones in the viewport margin
+                List<String> offscreenMarkerKeys = new ArrayList<>();
+                for (java.util.Map.Entry<String, Marker> markerEntry : markers.entrySet()) {
+                    if (visibleMapBounds.contains(markerEntry.getValue().getPosition())) {
+                        applyMarkerZoomBandIcon(markerEntry.getKey(), markerEntry.getValue(), markerZoomBand);
+                    } else {
+                        offscreenMarkerKeys.add(markerEntry.getKey());
                     }
                 }
+                for (String exploreKey : offscreenMarkerKeys) {
+                    applyMarkerZoomBandIcon(exploreKey, markers.get(exploreKey), markerZoomBand);
+                }
             }
         }
         cameraZoom = currentCameraZoom;
@@ -407,6 +704,9 @@ public class MapView extends FrameLayout implements OnMapReadyCallback {
 
     private boolean onMarkerClicked(Marker marker) {
         Object rawData = Utils.Explore.optExploreMarkerRawData(marker);
+        if (expandExploreGroup(rawData, marker.getPosition())) {
+            return true;
+        }
         if (rawData != null) {
             if (rawData instanceof HashMap) {
                 Gson gson = new Gson();
@@ -434,6 +734,18 @@ public class MapView extends FrameLayout implements OnMapReadyCallback {
         return false;
     }
 
+    private boolean expandExploreGroup(Object rawData, LatLng position) {
+        boolean expandGroupOnTap = Utils.Map.getValueFromPath(exploreOptions, "ExpandGroupOnTap", false);
+        if (expandGroupOnTap && (rawData instanceof ArrayList) && (exploreClusterHierarchy != null)) {
+            int expansionZoom = exploreClusterHierarchy.getClusterExpansionZoom(rawData);
+            if (expansionZoom > 0) {
+                googleMap.animateCamera(CameraUpdateFactory.newLatLngZoom(position, expansionZoom));
+                return true;
+            }
+        }
+        return false;
+    }
+
     private void onMapClick(LatLng latLng) {
         JSONObject jsonArgs = new JSONObject();
         try {
@@ -480,6 +792,7 @@ public class MapView extends FrameLayout implements OnMapReadyCallback {
         if (zoomDeltaPassed) {
             buildDisplayExplores();
         } else {
+            updateViewportMarkers();
             updateMarkers();
         }
         updateMapStyle();
@@ -526,11 +839,7 @@ public class MapView extends FrameLayout implements OnMapReadyCallback {
         return (boundsBuilder != null) ? boundsBuilder.build() : null;
     }
 
-    private double getAutomaticThresholdDistance() {
-        return getThresholdDistance(googleMap.getCameraPosition().zoom);
-    }
-
-    private float getThresholdDistance(float zoom) {
+    static float getThresholdDistance(float zoom) {
         final float[] thresholdDistanceByZoom = {
             1000000, 800000, 600000, 200000, 100000,    // zoom 0 - 4
             100000,  80000,  60000,  20000,  10000,     // zoom 5 - 9
@@ -547,17 +856,32 @@ public class MapView extends FrameLayout implements OnMapReadyCallback {
         return 0;
     }
 
-    private class MarkersAsyncTask extends AsyncTask<Double, Void, List<Object>> {
+    private static class PendingMarker {
+        private final MarkerOptions markerOptions;
+        private final int zoomBand;
+        private Object explore;
 
-        @Override
-        protected List<Object> doInBackground(Double... params) {
-            return buildExplores(explores, params[0]);
+        private PendingMarker(Object explore, MarkerOptions markerOptions, int zoomBand) {
+            this.explore = explore;
+            this.markerOptions = markerOptions;
+            this.zoomBand = zoomBand;
         }
+    }
+
+    private static class ClusteringResult {
+        private final ArrayList<Object> rawExplores;
+        private final List<MapExplore> compiledExplores;
+        private final MapSpatialIndex exploresIndex;
+        private final MapExploreClusterHierarchy clusterHierarchy;
+        private final List<Object> displayExplores;
 
-        @Override
-        protected void onPostExecute(List<Object> explores) {
-            displayExplores = explores;
-            showExploresOnMap();
+        private ClusteringResult(ArrayList<Object> rawExplores, List<MapExplore> compiledExplores, MapSpatialIndex exploresIndex,
+                                 MapExploreClusterHierarchy clusterHierarchy, List<Object> displayExplores) {
+            this.rawExplores = rawExplores;
+            this.compiledExplores = compiledExplores;
+            this.exploresIndex = exploresIndex;
+            this.clusterHierarchy = clusterHierarchy;
+            this.displayExplores = displayExplores;
         }
     }
-}
\ No newline at end of file
+}
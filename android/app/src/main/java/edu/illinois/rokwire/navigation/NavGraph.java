@@ -0,0 +1,248 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.rokwire.navigation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.charset.Charset;
+
+import edu.illinois.rokwire.maps.MapPointArray;
+import edu.illinois.rokwire.maps.MapSpatialIndex;
+
+/**
+ * Immutable pedestrian graph in compressed sparse row form: the edges leaving a node are stored together,
+ * in the range {@link #getEdgesFrom} - {@link #getEdgesTo}. Paths are walkable both ways, every path is stored as two edges.
+ * The graph is a view over its binary form, written by scripts/navigation/NavGraphCompiler.java - see the format there.
+ * Nothing is copied or decoded when the graph is opened, so a graph mapped from a file opens at the same cost whatever its size:
+ * accessors read the fixed-width records in place, names are decoded on first use and the nodes index is built by the first nearest node query.
+ * Edge lengths are great-circle distances rounded to centimeters.
+ * The graph may hold a contraction hierarchy: for every node the up edges to nodes contracted after it,
+ * original edges or shortcuts over a lower ranked middle node, searched by {@link NavHierarchyRouter}.
+ * Indexes in the data are validated by the compiler, opening checks only the header and the section sizes.
+ */
+public class NavGraph {
+
+    private static final int MAGIC = 0x524E4156; // "RNAV"
+    private static final int VERSION = 1;
+
+    private static final int HEADER_INTS = 8;
+    private static final int NODE_INTS = 4;
+    private static final int EDGE_INTS = 3;
+    private static final int UP_EDGE_INTS = 3;
+
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    private final int nodesCount;
+    // (nodesCount + 1) x {latitude E7, longitude E7, first edge, first up edge}, the last record ends the edge ranges
+    private final IntBuffer nodes;
+    // {target node, length in cm, name index or -1}
+    private final IntBuffer edges;
+    // {target node, length in cm, middle node or -1}
+    private final IntBuffer upEdges;
+    private final int upEdgesCount;
+    private final IntBuffer nameOffsets;
+    private final ByteBuffer stringData;
+    private final String[] names;
+    private volatile MapSpatialIndex nodesIndex;
+
+    private NavGraph(int nodesCount, IntBuffer nodes, IntBuffer edges, IntBuffer upEdges, int upEdgesCount, IntBuffer nameOffsets,
+                     ByteBuffer stringData, int namesCount) {
+        this.nodesCount = nodesCount;
+        this.nodes = nodes;
+        this.edges = edges;
+        this.upEdges = upEdges;
+        this.upEdgesCount = upEdgesCount;
+        this.nameOffsets = nameOffsets;
+        this.stringData = stringData;
+        this.names = new String[namesCount];
+    }
+
+    /**
+     * Opens the graph in the buffer, typically mapped from a file, without copying it. The buffer is not modified.
+     * @throws IOException if the data is not a graph of a supported version or its sections do not fit the buffer
+     */
+    public static NavGraph open(ByteBuffer buffer) throws IOException {
+        ByteBuffer data = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        data.position(0);
+        if (data.remaining() < (HEADER_INTS * 4)) {
+            throw new IOException("Not a navigation graph");
+        }
+        IntBuffer header = data.asIntBuffer();
+        if (header.get(0) != MAGIC) {
+            throw new IOException("Not a navigation graph");
+        }
+        int version = header.get(1);
+        if (version != VERSION) {
+            throw new IOException("Unsupported navigation graph version " + version);
+        }
+        int nodesCount = header.get(2);
+        int edgesCount = header.get(3);
+        int upEdgesCount = header.get(4);
+        int namesCount = header.get(5);
+        int stringDataLength = header.get(6);
+        if ((nodesCount < 0) || (edgesCount < 0) || (upEdgesCount < 0) || (namesCount < 0) || (stringDataLength < 0)) {
+            throw new IOException("Invalid navigation graph header");
+        }
+
+        long nodesOffset = HEADER_INTS * 4L;
+        long edgesOffset = nodesOffset + (nodesCount + 1L) * NODE_INTS * 4L;
+        long upEdgesOffset = edgesOffset + (long) edgesCount * EDGE_INTS * 4L;
+        long nameOffsetsOffset = upEdgesOffset + (long) upEdgesCount * UP_EDGE_INTS * 4L;
+        long stringDataOffset = nameOffsetsOffset + (namesCount + 1L) * 4L;
+        long endOffset = stringDataOffset + stringDataLength;
+        if (endOffset > data.limit()) {
+            throw new IOException("Truncated navigation graph: " + data.limit() + " of " + endOffset + " bytes");
+        }
+        IntBuffer nodes = getSection(data, nodesOffset, edgesOffset).asIntBuffer();
+        if ((nodes.get(2) != 0) || (nodes.get(NODE_INTS * nodesCount + 2) != edgesCount) ||
+                (nodes.get(3) != 0) || (nodes.get(NODE_INTS * nodesCount + 3) != upEdgesCount)) {
+            throw new IOException("Invalid navigation graph edge ranges");
+        }
+        return new NavGraph(nodesCount, nodes,
+                getSection(data, edgesOffset, upEdgesOffset).asIntBuffer(),
+                getSection(data, upEdgesOffset, nameOffsetsOffset).asIntBuffer(), upEdgesCount,
+                getSection(data, nameOffsetsOffset, stringDataOffset).asIntBuffer(),
+                getSection(data, stringDataOffset, endOffset), namesCount);
+    }
+
+    private static ByteBuffer getSection(ByteBuffer data, long from, long to) {
+        ByteBuffer section = data.duplicate();
+        section.limit((int) to);
+        section.position((int) from);
+        return section.slice();
+    }
+
+    public int getNodesCount() {
+        return nodesCount;
+    }
+
+    public double getLatitude(int node) {
+        return nodes.get(NODE_INTS * node) / 1E7;
+    }
+
+    public double getLongitude(int node) {
+        return nodes.get(NODE_INTS * node + 1) / 1E7;
+    }
+
+    public int getEdgesFrom(int node) {
+        return nodes.get(NODE_INTS * node + 2);
+    }
+
+    public int getEdgesTo(int node) {
+        return nodes.get(NODE_INTS * (node + 1) + 2);
+    }
+
+    public int getEdgeTarget(int edge) {
+        return edges.get(EDGE_INTS * edge);
+    }
+
+    /**
+     * @return length of the edge in meters
+     */
+    public double getEdgeLength(int edge) {
+        return edges.get(EDGE_INTS * edge + 1) / 100.0d;
+    }
+
+    /**
+     * @return name of the path of the edge, null if it has none
+     */
+    public String getEdgeName(int edge) {
+        int nameIndex = getEdgeNameIndex(edge);
+        if (nameIndex < 0) {
+            return null;
+        }
+        String name = names[nameIndex];
+        if (name == null) {
+            // Decoding twice from different threads is harmless, both results are equal
+            int offset = nameOffsets.get(nameIndex);
+            byte[] bytes = new byte[nameOffsets.get(nameIndex + 1) - offset];
+            ByteBuffer nameData = stringData.duplicate();
+            nameData.position(offset);
+            nameData.get(bytes);
+            name = new String(bytes, CHARSET);
+            names[nameIndex] = name;
+        }
+        return name;
+    }
+
+    public int getEdgeNameIndex(int edge) {
+        return edges.get(EDGE_INTS * edge + 2);
+    }
+
+    /**
+     * @return true if the graph was compiled with its contraction hierarchy
+     */
+    public boolean hasHierarchy() {
+        return (upEdgesCount > 0);
+    }
+
+    public int getUpEdgesFrom(int node) {
+        return nodes.get(NODE_INTS * node + 3);
+    }
+
+    public int getUpEdgesTo(int node) {
+        return nodes.get(NODE_INTS * (node + 1) + 3);
+    }
+
+    public int getUpEdgeTarget(int upEdge) {
+        return upEdges.get(UP_EDGE_INTS * upEdge);
+    }
+
+    /**
+     * @return length of the up edge in centimeters
+     */
+    public int getUpEdgeLength(int upEdge) {
+        return upEdges.get(UP_EDGE_INTS * upEdge + 1);
+    }
+
+    /**
+     * @return the node a shortcut leads over, -1 for an original edge
+     */
+    public int getUpEdgeMiddle(int upEdge) {
+        return upEdges.get(UP_EDGE_INTS * upEdge + 2);
+    }
+
+    /**
+     * @return the node nearest to the location not farther than the distance in meters, -1 if there is none
+     */
+    public int findNearestNode(double latitude, double longitude, double maxDistance) {
+        int[] nearestNodes = new int[1];
+        double[] nearestDistances = new double[1];
+        int count = getNodesIndex().findKNearest(latitude, longitude, nearestNodes, nearestDistances);
+        return ((count > 0) && (nearestDistances[0] <= maxDistance)) ? nearestNodes[0] : -1;
+    }
+
+    private MapSpatialIndex getNodesIndex() {
+        MapSpatialIndex index = nodesIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = nodesIndex;
+                if (index == null) {
+                    MapPointArray nodePoints = new MapPointArray(nodesCount);
+                    for (int node = 0; node < nodesCount; node++) {
+                        nodePoints.add(getLatitude(node), getLongitude(node));
+                    }
+                    index = MapSpatialIndex.build(nodePoints);
+                    nodesIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.rokwire.navigation;
+
+import java.util.Arrays;
+
+import edu.illinois.rokwire.Utils;
+
+/**
+ * A* search of the shortest path between two nodes of a {@link NavGraph}, the heuristic is the great-circle distance to the target.
+ * Edge lengths are rounded to centimeters, the heuristic may exceed them by fractions of a centimeter, too little to change a walking route.
+ * The search state is kept in arrays sized to the graph and reused by the following searches; the arrays are not reset between
+ * searches, a node's state is valid only when its stamp is the stamp of the current search. A router is not thread safe.
+ */
+public class NavGraphRouter {
+
+    private final NavGraph graph;
+
+    private final double[] distances;
+    private final int[] previousNodes;
+    private final int[] stamps;
+    private final boolean[] settled;
+    private int stamp;
+
+    // Binary min-heap of nodes by estimated path length; a node may be in it more than once, its stale entries are skipped
+    private int[] heapNodes;
+    private double[] heapKeys;
+    private int heapSize;
+
+    private int settledCount;
+
+    public NavGraphRouter(NavGraph graph) {
+        this.graph = graph;
+        int nodesCount = graph.getNodesCount();
+        distances = new double[nodesCount];
+        previousNodes = new int[nodesCount];
+        stamps = new int[nodesCount];
+        settled = new boolean[nodesCount];
+        heapNodes = new int[64];
+        heapKeys = new double[64];
+    }
+
+    /**
+     * @return nodes of the shortest path from the source to the target including both, null if the target is not reachable
+     */
+    public int[] findPath(int source, int target) {
+        if (++stamp == 0) {
+            Arrays.fill(stamps, 0);
+            stamp = 1;
+        }
+        heapSize = 0;
+        settledCount = 0;
+        double targetLatitude = graph.getLatitude(target);
+        double targetLongitude = graph.getLongitude(target);
+
+        visit(source, 0.0d, -1);
+        push(source, getHeuristic(source, targetLatitude, targetLongitude));
+        while (heapSize > 0) {
+            int node = pop();
+            if (settled[node]) {
+                continue;
+            }
+            settled[node] = true;
+            settledCount++;
+            if (node == target) {
+                return buildPath(target);
+            }
+            double nodeDistance = distances[node];
+            for (int edge = graph.getEdgesFrom(node); edge < graph.getEdgesTo(node); edge++) {
+                int nextNode = graph.getEdgeTarget(edge);
+                double nextDistance = nodeDistance + graph.getEdgeLength(edge);
+                if (stamps[nextNode] != stamp) {
+                    visit(nextNode, nextDistance, node);
+                } else if (settled[nextNode] || (nextDistance >= distances[nextNode])) {
+                    continue;
+                } else {
+                    distances[nextNode] = nextDistance;
+                    previousNodes[nextNode] = node;
+                }
+                push(nextNode, nextDistance + getHeuristic(nextNode, targetLatitude, targetLongitude));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return length in meters of the path found by the last search ending at the node
+     */
+    public double getPathLength(int node) {
+        return (stamps[node] == stamp) ? distances[node] : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * @return count of the nodes settled by the last search
+     */
+    public int getSettledCount() {
+        return settledCount;
+    }
+
+    private void visit(int node, double distance, int previousNode) {
+        stamps[node] = stamp;
+        distances[node] = distance;
+        previousNodes[node] = previousNode;
+        settled[node] = false;
+    }
+
+    private double getHeuristic(int node, double targetLatitude, double targetLongitude) {
+        return Utils.Location.getHaversineDistance(graph.getLatitude(node), graph.getLongitude(node), targetLatitude, targetLongitude);
+    }
+
+    private int[] buildPath(int target) {
+        int length = 0;
+        for (int node = target; node != -1; node = previousNodes[node]) {
+            length++;
+        }
+        int[] path = new int[length];
+        for (int node = target; node != -1; node = previousNodes[node]) {
+            path[--length] = node;
+        }
+        return path;
+    }
+
+    private void push(int node, double key) {
+        if (heapSize == heapNodes.length) {
+            heapNodes = Arrays.copyOf(heapNodes, 2 * heapSize);
+            heapKeys = Arrays.copyOf(heapKeys, 2 * heapSize);
+        }
+        int index = heapSize++;
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heapKeys[parent] <= key) {
+                break;
+            }
+            heapNodes[index] = heapNodes[parent];
+            heapKeys[index] = heapKeys[parent];
+            index = parent;
+        }
+        heapNodes[index] = node;
+        heapKeys[index] = key;
+    }
+
+    private int pop() {
+        int top = heapNodes[0];
+        int lastNode = heapNodes[--heapSize];
+        double lastKey = heapKeys[heapSize];
+        int index = 0;
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (((child + 1) < heapSize) && (heapKeys[child + 1] < heapKeys[child])) {
+                child++;
+            }
+            if (lastKey <= heapKeys[child]) {
+                break;
+            }
+            heapNodes[index] = heapNodes[child];
+            heapKeys[index] = heapKeys[child];
+            index = child;
+        }
+        heapNodes[index] = lastNode;
+        heapKeys[index] = lastKey;
+        return top;
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.rokwire.navigation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import edu.illinois.rokwire.Utils;
+import edu.illinois.rokwire.navigation.model.NavBounds;
+import edu.illinois.rokwire.navigation.model.NavCoord;
+import edu.illinois.rokwire.navigation.model.NavIntVal;
+import edu.illinois.rokwire.navigation.model.NavPolyline;
+import edu.illinois.rokwire.navigation.model.NavRoute;
+import edu.illinois.rokwire.navigation.model.NavRouteLeg;
+import edu.illinois.rokwire.navigation.model.NavRouteStep;
+
+/**
+ * Walking routes over a {@link NavGraph}: the origin and the destination snap to their nearest nodes, the path between them is searched
+ * over the contraction hierarchy, or with A* if the graph has none, and built into the route model of the Directions API responses:
+ * a single leg from the origin to the destination whose steps break at intersections where the path turns or changes its name.
+ * Instructions and formatted values come from {@link Texts}, so routes are built without Android resources. A builder is not thread safe.
+ */
+class NavOfflineRouteBuilder {
+
+    // Farthest origin or destination from the nearest graph node to route offline
+    static final double MAX_SNAP_DISTANCE_METERS = 150.0d;
+    static final double WALKING_SPEED_METERS_PER_SECOND = 1.34d;
+    private static final String TRAVEL_MODE = "WALKING";
+
+    // Turns at an intersection below this angle in degrees continue the current step
+    private static final double MIN_TURN_DEGREES = 30.0d;
+    private static final double MIN_REGULAR_TURN_DEGREES = 60.0d;
+    private static final double MIN_UTURN_DEGREES = 150.0d;
+
+    private final NavGraph graph;
+    private final Texts texts;
+    // One of them, by whether the graph has a hierarchy
+    private final NavHierarchyRouter hierarchyRouter;
+    private final NavGraphRouter graphRouter;
+    private int settledCount;
+
+    NavOfflineRouteBuilder(NavGraph graph, Texts texts) {
+        this.graph = graph;
+        this.texts = texts;
+        this.hierarchyRouter = graph.hasHierarchy() ? new NavHierarchyRouter(graph) : null;
+        this.graphRouter = graph.hasHierarchy() ? null : new NavGraphRouter(graph);
+    }
+
+    /**
+     * @return the walking route, null if the origin or the destination is away from the graph or there is no path between them
+     */
+    NavRoute findRoute(NavCoord origin, NavCoord destination) {
+        settledCount = 0;
+        int sourceNode = graph.findNearestNode(origin.getLat(), origin.getLng(), MAX_SNAP_DISTANCE_METERS);
+        int targetNode = graph.findNearestNode(destination.getLat(), destination.getLng(), MAX_SNAP_DISTANCE_METERS);
+        if ((sourceNode == -1) || (targetNode == -1)) {
+            return null;
+        }
+        int[] path;
+        if (hierarchyRouter != null) {
+            path = hierarchyRouter.findPath(sourceNode, targetNode);
+            settledCount = hierarchyRouter.getSettledCount();
+        } else {
+            path = graphRouter.findPath(sourceNode, targetNode);
+            settledCount = graphRouter.getSettledCount();
+        }
+        return (path != null) ? buildRoute(origin, destination, path) : null;
+    }
+
+    /**
+     * @return count of the nodes settled by the last path search, 0 if the last route did not get to the search
+     */
+    int getSettledCount() {
+        return settledCount;
+    }
+
+    private NavRoute buildRoute(NavCoord origin, NavCoord destination, int[] path) {
+        // Edges along the path, the shortest one of parallel edges between the same nodes
+        int[] pathEdges = new int[path.length - 1];
+        for (int index = 0; index < pathEdges.length; index++) {
+            pathEdges[index] = findEdge(path[index], path[index + 1]);
+        }
+
+        List<NavRouteStep> steps = new ArrayList<>();
+        int totalDistance = 0;
+        int totalDuration = 0;
+        int stepFrom = 0;
+        String stepManeuver = null;
+        String longestStepName = null;
+        int longestStepDistance = -1;
+        for (int index = 1; index <= pathEdges.length; index++) {
+            String maneuver = null;
+            if (index < pathEdges.length) {
+                int node = path[index];
+                boolean isIntersection = (graph.getEdgesTo(node) - graph.getEdgesFrom(node)) > 2;
+                boolean isNameChange = graph.getEdgeNameIndex(pathEdges[index - 1]) != graph.getEdgeNameIndex(pathEdges[index]);
+                double turn = getTurnDegrees(path[index - 1], node, path[index + 1]);
+                if (isNameChange || (isIntersection && (Math.abs(turn) >= MIN_TURN_DEGREES))) {
+                    maneuver = getManeuver(turn);
+                } else {
+                    continue;
+                }
+            }
+            // Step over the path nodes stepFrom..index; the first step starts at the origin and the last one ends at the destination
+            NavCoord start = (stepFrom == 0) ? origin : getNodeCoord(path[stepFrom]);
+            NavCoord end = (index == pathEdges.length) ? destination : getNodeCoord(path[index]);
+            String name = graph.getEdgeName(pathEdges[stepFrom]);
+            NavRouteStep step = buildStep(start, end, buildStepPointsE5(path, stepFrom, index, start, end), stepManeuver, name);
+            steps.add(step);
+            totalDistance += step.getDistance().getValue();
+            totalDuration += step.getDuration().getValue();
+            if ((name != null) && (step.getDistance().getValue() > longestStepDistance)) {
+                longestStepName = name;
+                longestStepDistance = step.getDistance().getValue();
+            }
+            stepFrom = index;
+            stepManeuver = maneuver;
+        }
+        if (steps.isEmpty()) {
+            // Origin and destination snap to the same node
+            NavRouteStep step = buildStep(origin, destination, buildStepPointsE5(path, 0, 0, origin, destination), null, null);
+            steps.add(step);
+            totalDistance = step.getDistance().getValue();
+            totalDuration = step.getDuration().getValue();
+        }
+
+        int[] routePointsE5 = buildStepPointsE5(path, 0, path.length - 1, origin, destination);
+        NavRouteLeg leg = new NavRouteLeg(new NavIntVal(totalDistance, texts.formatDistance(totalDistance)), new NavIntVal(totalDuration, texts.formatDuration(totalDuration)),
+                origin, destination, null, null, steps);
+        return new NavRoute(getBounds(routePointsE5), null, longestStepName, Collections.singletonList(leg), NavPolyline.fromPointsE5(routePointsE5));
+    }
+
+    private NavRouteStep buildStep(NavCoord start, NavCoord end, int[] pointsE5, String maneuver, String name) {
+        double length = getPolylineLength(pointsE5);
+        int distance = (int) Math.round(length);
+        int duration = (int) Math.round(length / WALKING_SPEED_METERS_PER_SECOND);
+        return new NavRouteStep(new NavIntVal(distance, texts.formatDistance(distance)), new NavIntVal(duration, texts.formatDuration(duration)),
+                start, end, texts.getInstructions(maneuver, name), maneuver, NavPolyline.fromPointsE5(pointsE5), TRAVEL_MODE);
+    }
+
+    private int findEdge(int fromNode, int toNode) {
+        int foundEdge = -1;
+        for (int edge = graph.getEdgesFrom(fromNode); edge < graph.getEdgesTo(fromNode); edge++) {
+            if ((graph.getEdgeTarget(edge) == toNode) && ((foundEdge == -1) || (graph.getEdgeLength(edge) < graph.getEdgeLength(foundEdge)))) {
+                foundEdge = edge;
+            }
+        }
+        return foundEdge;
+    }
+
+    /**
+     * @return points of the start, the path nodes from..to without the ones at the start and the end, and the end, in 1E-5 degrees
+     */
+    private int[] buildStepPointsE5(int[] path, int from, int to, NavCoord start, NavCoord end) {
+        int[] pointsE5 = new int[2 * (to - from + 3)];
+        int count = 0;
+        count = addPointE5(pointsE5, count, start.getLat(), start.getLng());
+        for (int index = from; index <= to; index++) {
+            count = addPointE5(pointsE5, count, graph.getLatitude(path[index]), graph.getLongitude(path[index]));
+        }
+        count = addPointE5(pointsE5, count, end.getLat(), end.getLng());
+        return (count < pointsE5.length) ? Arrays.copyOf(pointsE5, count) : pointsE5;
+    }
+
+    /**
+     * Adds the point unless it repeats the last one.
+     * @return count of the values in the array
+     */
+    private static int addPointE5(int[] pointsE5, int count, double latitude, double longitude) {
+        int latitudeE5 = (int) Math.round(latitude * 1E5);
+        int longitudeE5 = (int) Math.round(longitude * 1E5);
+        if ((count > 0) && (pointsE5[count - 2] == latitudeE5) && (pointsE5[count - 1] == longitudeE5)) {
+            return count;
+        }
+        pointsE5[count] = latitudeE5;
+        pointsE5[count + 1] = longitudeE5;
+        return count + 2;
+    }
+
+    private static double getPolylineLength(int[] pointsE5) {
+        double length = 0.0d;
+        for (int index = 2; index < pointsE5.length; index += 2) {
+            length += Utils.Location.getHaversineDistance(pointsE5[index - 2] / 1E5, pointsE5[index - 1] / 1E5, pointsE5[index] / 1E5, pointsE5[index + 1] / 1E5);
+        }
+        return length;
+    }
+
+    private static NavBounds getBounds(int[] pointsE5) {
+        int south = Integer.MAX_VALUE, west = Integer.MAX_VALUE, north = Integer.MIN_VALUE, east = Integer.MIN_VALUE;
+        for (int index = 0; index < pointsE5.length; index += 2) {
+            south = Math.min(south, pointsE5[index]);
+            north = Math.max(north, pointsE5[index]);
+            west = Math.min(west, pointsE5[index + 1]);
+            east = Math.max(east, pointsE5[index + 1]);
+        }
+        return new NavBounds(new NavCoord(north / 1E5, east / 1E5), new NavCoord(south / 1E5, west / 1E5));
+    }
+
+    private NavCoord getNodeCoord(int node) {
+        return new NavCoord(graph.getLatitude(node), graph.getLongitude(node));
+    }
+
+    /**
+     * @return angle in degrees between the heading into the node and the heading out of it, positive to the right
+     */
+    private double getTurnDegrees(int previousNode, int node, int nextNode) {
+        double turn = getBearingDegrees(node, nextNode) - getBearingDegrees(previousNode, node);
+        if (turn > 180.0d) {
+            turn -= 360.0d;
+        } else if (turn <= -180.0d) {
+            turn += 360.0d;
+        }
+        return turn;
+    }
+
+    private double getBearingDegrees(int fromNode, int toNode) {
+        double deltaLatitude = graph.getLatitude(toNode) - graph.getLatitude(fromNode);
+        double deltaLongitude = (graph.getLongitude(toNode) - graph.getLongitude(fromNode)) * Math.cos(Math.toRadians(graph.getLatitude(fromNode)));
+        return Math.toDegrees(Math.atan2(deltaLongitude, deltaLatitude));
+    }
+
+    /**
+     * @return maneuver in the Directions API terms
+     */
+    private static String getManeuver(double turn) {
+        double angle = Math.abs(turn);
+        if (angle < MIN_TURN_DEGREES) {
+            return "straight";
+        } else if (angle < MIN_REGULAR_TURN_DEGREES) {
+            return (turn < 0) ? "turn-slight-left" : "turn-slight-right";
+        } else if (angle < MIN_UTURN_DEGREES) {
+            return (turn < 0) ? "turn-left" : "turn-right";
+        } else {
+            return (turn < 0) ? "uturn-left" : "uturn-right";
+        }
+    }
+
+    /**
+     * Localized texts of the built routes.
+     */
+    interface Texts {
+
+        /**
+         * @param maneuver maneuver at the start of the step in the Directions API terms, null for the first step
+         * @param name name of the path the step goes along, null if it has none
+         * @return HTML instructions of the step
+         */
+        String getInstructions(String maneuver, String name);
+
+        String formatDistance(int meters);
+
+        String formatDuration(int seconds);
+    }
+}
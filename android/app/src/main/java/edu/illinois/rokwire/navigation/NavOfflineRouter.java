@@ -0,0 +1,217 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.rokwire.navigation;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import edu.illinois.rokwire.R;
+import edu.illinois.rokwire.navigation.model.NavCoord;
+import edu.illinois.rokwire.navigation.model.NavRoute;
+
+/**
+ * On-device walking router over the campus pedestrian graph shipped in the app assets (see {@link NavGraph}).
+ * The graph asset is memory mapped straight from the APK, where it is stored uncompressed, and searched over its contraction hierarchy,
+ * or with A* if it was compiled without one. Routes are built by {@link NavOfflineRouteBuilder} with the instructions from the app strings.
+ * Origins and destinations away from the graph are left to the Directions API.
+ * The graph is opened by {@link #open}, which takes a few milliseconds, or else by the first search. Searches are serialized
+ * and should not run on the main thread, the first one builds the nodes index.
+ */
+public class NavOfflineRouter {
+
+    private static final String TAG = NavOfflineRouter.class.getSimpleName();
+
+    private static final String GRAPH_ASSET_DIRECTORY = "navigation";
+    private static final String GRAPH_ASSET_FILE_NAME = "campus_walking_graph.bin";
+
+    private static NavOfflineRouter instance;
+
+    private final Context context;
+    private NavOfflineRouteBuilder routeBuilder;
+    private volatile boolean unavailable;
+
+    private NavOfflineRouter(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    public static synchronized NavOfflineRouter getInstance(Context context) {
+        if (instance == null) {
+            instance = new NavOfflineRouter(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Maps the graph asset unless it is open already or turned out to be unavailable.
+     */
+    public synchronized void open() {
+        loadGraph();
+    }
+
+    /**
+     * @return true once the graph turned out to be missing or failed to load, searches return no routes then
+     */
+    public boolean isUnavailable() {
+        return unavailable;
+    }
+
+    /**
+     * @return a single walking route, null if the graph is not available, the origin or the destination is away from it
+     * or there is no path between them
+     */
+    public synchronized List<NavRoute> findRoutes(NavCoord origin, NavCoord destination) {
+        if (!loadGraph()) {
+            return null;
+        }
+        long startTime = System.nanoTime();
+        NavRoute route = routeBuilder.findRoute(origin, destination);
+        Log.d(TAG, String.format(Locale.US, "Offline routing settled %d nodes in %.3f ms",
+                routeBuilder.getSettledCount(), (System.nanoTime() - startTime) / 1E6));
+        return (route != null) ? Collections.singletonList(route) : null;
+    }
+
+    private boolean loadGraph() {
+        if (routeBuilder != null) {
+            return true;
+        }
+        if (unavailable) {
+            return false;
+        }
+        long startTime = System.nanoTime();
+        NavGraph graph = null;
+        try {
+            graph = mapGraph();
+            if (graph == null) {
+                Log.d(TAG, "No walking graph in the assets, routing online only");
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to open walking graph. Print stacktrace:");
+            e.printStackTrace();
+        }
+        if (graph != null) {
+            routeBuilder = new NavOfflineRouteBuilder(graph, new ResourceTexts(context));
+            Log.d(TAG, String.format(Locale.US, "Opened walking graph of %d nodes%s in %.1f ms", graph.getNodesCount(),
+                    graph.hasHierarchy() ? " with hierarchy" : "", (System.nanoTime() - startTime) / 1E6));
+            return true;
+        }
+        unavailable = true;
+        return false;
+    }
+
+    /**
+     * @return the graph mapped from the asset, null if there is no such asset
+     */
+    private NavGraph mapGraph() throws IOException {
+        String assetName = GRAPH_ASSET_DIRECTORY + "/" + GRAPH_ASSET_FILE_NAME;
+        AssetFileDescriptor descriptor;
+        try {
+            descriptor = context.getAssets().openFd(assetName);
+        } catch (FileNotFoundException e) {
+            // Compressed assets have no file descriptor either
+            String[] assetFileNames = context.getAssets().list(GRAPH_ASSET_DIRECTORY);
+            if ((assetFileNames != null) && Arrays.asList(assetFileNames).contains(GRAPH_ASSET_FILE_NAME)) {
+                throw new IOException("Walking graph asset is compressed, it has to be stored uncompressed to be mapped", e);
+            }
+            return null;
+        }
+        try (FileInputStream inputStream = descriptor.createInputStream()) {
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = inputStream.getChannel().map(FileChannel.MapMode.READ_ONLY, descriptor.getStartOffset(), descriptor.getLength());
+            return NavGraph.open(buffer);
+        } finally {
+            descriptor.close();
+        }
+    }
+
+    /**
+     * Instructions from the app strings, distances in feet or miles and durations in minutes as the Directions API formats them.
+     */
+    private static class ResourceTexts implements NavOfflineRouteBuilder.Texts {
+
+        private static final double METERS_PER_MILE = 1609.34d;
+        private static final double METERS_PER_FOOT = 0.3048d;
+        // Shorter distances are given in feet
+        private static final double MIN_MILES = 0.1d;
+
+        private final Context context;
+
+        private ResourceTexts(Context context) {
+            this.context = context;
+        }
+
+        @Override
+        public String getInstructions(String maneuver, String name) {
+            String action;
+            if (maneuver == null) {
+                action = context.getString(R.string.offline_route_head_out);
+            } else {
+                switch (maneuver) {
+                    case "turn-slight-left":
+                        action = context.getString(R.string.offline_route_turn_slight_left);
+                        break;
+                    case "turn-slight-right":
+                        action = context.getString(R.string.offline_route_turn_slight_right);
+                        break;
+                    case "turn-left":
+                        action = context.getString(R.string.offline_route_turn_left);
+                        break;
+                    case "turn-right":
+                        action = context.getString(R.string.offline_route_turn_right);
+                        break;
+                    case "uturn-left":
+                    case "uturn-right":
+                        action = context.getString(R.string.offline_route_uturn);
+                        break;
+                    default:
+                        action = context.getString(R.string.offline_route_continue);
+                        break;
+                }
+            }
+            return (name != null) ? context.getString(R.string.offline_route_onto_format, action, TextUtils.htmlEncode(name)) : action;
+        }
+
+        @Override
+        public String formatDistance(int meters) {
+            double miles = (meters / METERS_PER_MILE);
+            if (miles < MIN_MILES) {
+                long feet = Math.round(meters / METERS_PER_FOOT);
+                return String.format(Locale.getDefault(), "%d %s", feet, context.getString((feet != 1) ? R.string.feet : R.string.foot));
+            }
+            // Singular or plural as the distance is shown
+            double roundedMiles = Math.round(miles * 10.0d) / 10.0d;
+            return String.format(Locale.getDefault(), "%.1f %s", roundedMiles, context.getString((roundedMiles != 1.0) ? R.string.miles : R.string.mile));
+        }
+
+        @Override
+        public String formatDuration(int seconds) {
+            long minutes = Math.max(1, Math.round(seconds / 60.0d));
+            return String.format(Locale.getDefault(), "%d %s", minutes, context.getString(R.string.minute));
+        }
+    }
+}
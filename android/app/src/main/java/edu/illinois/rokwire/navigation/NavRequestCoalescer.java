@@ -0,0 +1,222 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.rokwire.navigation;
+
+import android.content.Context;
+
+import com.android.volley.Request;
+import com.android.volley.RequestQueue;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.StringRequest;
+import com.android.volley.toolbox.Volley;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Single-flight Directions API requests: subscriptions with the same key share one network call while it is in flight,
+ * and every subscription receives its result. A call is cancelled when its last subscription is cancelled.
+ * Keys are the route cache keys, so requests that would be cached under the same key are coalesced.
+ * Must be used on the main thread, where Volley delivers the responses.
+ */
+public class NavRequestCoalescer {
+
+    private static final String TAG = NavRequestCoalescer.class.getSimpleName();
+
+    private static NavRequestCoalescer instance;
+
+    private final RequestQueue requestQueue;
+    private final Map<String, InFlightRequest> inFlightRequests = new HashMap<>();
+
+    // Statistics
+    private int requestedCount;
+    private int coalescedCount;
+    private int supersededCount;
+    private int cancelledCount;
+    private int deliveredCount;
+
+    private NavRequestCoalescer(Context context) {
+        requestQueue = Volley.newRequestQueue(context.getApplicationContext());
+    }
+
+    public static synchronized NavRequestCoalescer getInstance(Context context) {
+        if (instance == null) {
+            instance = new NavRequestCoalescer(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Subscribes the callback to the request with the key, starting a network call for the url if none is in flight.
+     * @return the subscription, to be passed to {@link #cancel} when the result is no longer needed
+     */
+    public Subscription request(String key, String url, Callback callback) {
+        Subscription subscription = new Subscription(key, callback);
+        InFlightRequest inFlightRequest = inFlightRequests.get(key);
+        if (inFlightRequest != null) {
+            inFlightRequest.subscriptions.add(subscription);
+            coalescedCount++;
+            return subscription;
+        }
+        StringRequest stringRequest = new StringRequest(Request.Method.GET, url,
+                response -> deliver(key, response, null),
+                error -> deliver(key, null, error));
+        stringRequest.setTag(TAG);
+        inFlightRequest = new InFlightRequest(stringRequest);
+        inFlightRequest.subscriptions.add(subscription);
+        inFlightRequests.put(key, inFlightRequest);
+        requestedCount++;
+        requestQueue.add(stringRequest);
+        return subscription;
+    }
+
+    /**
+     * Drops the subscription, its callback is not called anymore. Cancels the network call if no other subscription waits for it.
+     * @param superseded true if the subscription is replaced by a newer request of the same caller
+     */
+    public void cancel(Subscription subscription, boolean superseded) {
+        if ((subscription == null) || subscription.isDone()) {
+            return;
+        }
+        subscription.done = true;
+        if (superseded) {
+            supersededCount++;
+        }
+        InFlightRequest inFlightRequest = inFlightRequests.get(subscription.key);
+        if (inFlightRequest != null) {
+            inFlightRequest.subscriptions.remove(subscription);
+            if (inFlightRequest.subscriptions.isEmpty()) {
+                inFlightRequests.remove(subscription.key);
+                inFlightRequest.request.cancel();
+                cancelledCount++;
+            }
+        }
+    }
+
+    public Statistics getStatistics() {
+        return new Statistics(inFlightRequests.size(), requestedCount, coalescedCount, supersededCount, cancelledCount, deliveredCount);
+    }
+
+    private void deliver(String key, String response, VolleyError error) {
+        InFlightRequest inFlightRequest = inFlightRequests.remove(key);
+        if (inFlightRequest == null) {
+            return;
+        }
+        for (Subscription subscription : inFlightRequest.subscriptions) {
+            subscription.done = true;
+            deliveredCount++;
+            subscription.callback.onResponse(response, error);
+        }
+    }
+
+    public interface Callback {
+        void onResponse(String response, VolleyError error);
+    }
+
+    public static class Subscription {
+        private final String key;
+        private final Callback callback;
+        private boolean done;
+
+        private Subscription(String key, Callback callback) {
+            this.key = key;
+            this.callback = callback;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @return true once the result has been delivered or the subscription has been cancelled
+         */
+        public boolean isDone() {
+            return done;
+        }
+    }
+
+    private static class InFlightRequest {
+        private final StringRequest request;
+        private final List<Subscription> subscriptions = new ArrayList<>();
+
+        private InFlightRequest(StringRequest request) {
+            this.request = request;
+        }
+    }
+
+    public static class Statistics {
+        private final int inFlightCount;
+        private final int requestedCount;
+        private final int coalescedCount;
+        private final int supersededCount;
+        private final int cancelledCount;
+        private final int deliveredCount;
+
+        private Statistics(int inFlightCount, int requestedCount, int coalescedCount, int supersededCount, int cancelledCount, int deliveredCount) {
+            this.inFlightCount = inFlightCount;
+            this.requestedCount = requestedCount;
+            this.coalescedCount = coalescedCount;
+            this.supersededCount = supersededCount;
+            this.cancelledCount = cancelledCount;
+            this.deliveredCount = deliveredCount;
+        }
+
+        public int getInFlightCount() {
+            return inFlightCount;
+        }
+
+        /**
+         * @return network calls started
+         */
+        public int getRequestedCount() {
+            return requestedCount;
+        }
+
+        /**
+         * @return subscriptions that joined a call already in flight instead of starting a new one
+         */
+        public int getCoalescedCount() {
+            return coalescedCount;
+        }
+
+        /**
+         * @return subscriptions dropped because their caller made a newer request
+         */
+        public int getSupersededCount() {
+            return supersededCount;
+        }
+
+        /**
+         * @return network calls cancelled because no subscription waited for them anymore
+         */
+        public int getCancelledCount() {
+            return cancelledCount;
+        }
+
+        public int getDeliveredCount() {
+            return deliveredCount;
+        }
+
+        @Override
+        public String toString() {
+            return "in flight: " + inFlightCount + ", requested: " + requestedCount + ", coalesced: " + coalescedCount +
+                    ", superseded: " + supersededCount + ", cancelled: " + cancelledCount + ", delivered: " + deliveredCount;
+        }
+    }
+}
@@ -0,0 +1,377 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.rokwire.navigation;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.illinois.rokwire.navigation.model.NavBounds;
+import edu.illinois.rokwire.navigation.model.NavCoord;
+import edu.illinois.rokwire.navigation.model.NavIntVal;
+import edu.illinois.rokwire.navigation.model.NavPolyline;
+import edu.illinois.rokwire.navigation.model.NavRoute;
+import edu.illinois.rokwire.navigation.model.NavRouteLeg;
+import edu.illinois.rokwire.navigation.model.NavRouteStep;
+
+/**
+ * Streaming parser of Directions API responses.
+ * Reads the response in one pass without building a JSON tree, only the fields of the route model are kept - transit details,
+ * sub-steps of transit steps, waypoints and the like are skipped. Polylines stay encoded until they are decoded on first use.
+ * Missing numbers and coordinates read as 0, so that the model getters do not return null for them.
+ * Does not touch the main thread and may run on any thread.
+ */
+public class NavResponseParser {
+
+    public static Response parse(String response) throws IOException {
+        String status = null;
+        String errorMessage = null;
+        List<NavRoute> routes = null;
+        try (JsonReader reader = new JsonReader(new StringReader(response))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "status":
+                        status = readString(reader);
+                        break;
+                    case "error_message":
+                        errorMessage = readString(reader);
+                        break;
+                    case "routes":
+                        routes = readRoutes(reader);
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+        } catch (IllegalStateException | NumberFormatException e) {
+            // Unexpected value types
+            throw new IOException(e);
+        }
+        return new Response(status, errorMessage, routes);
+    }
+
+    private static List<NavRoute> readRoutes(JsonReader reader) throws IOException {
+        if (skipNull(reader)) {
+            return null;
+        }
+        List<NavRoute> routes = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            routes.add(readRoute(reader));
+        }
+        reader.endArray();
+        return routes;
+    }
+
+    private static NavRoute readRoute(JsonReader reader) throws IOException {
+        NavBounds bounds = null;
+        String copyrights = null;
+        String summary = null;
+        List<NavRouteLeg> legs = null;
+        NavPolyline polyline = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "bounds":
+                    bounds = readBounds(reader);
+                    break;
+                case "copyrights":
+                    copyrights = readString(reader);
+                    break;
+                case "summary":
+                    summary = readString(reader);
+                    break;
+                case "legs":
+                    legs = readLegs(reader);
+                    break;
+                case "overview_polyline":
+                    polyline = readPolyline(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return new NavRoute((bounds != null) ? bounds : new NavBounds(new NavCoord(0, 0), new NavCoord(0, 0)),
+                copyrights, summary, legs, (polyline != null) ? polyline : new NavPolyline(null));
+    }
+
+    private static List<NavRouteLeg> readLegs(JsonReader reader) throws IOException {
+        if (skipNull(reader)) {
+            return null;
+        }
+        List<NavRouteLeg> legs = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            legs.add(readLeg(reader));
+        }
+        reader.endArray();
+        return legs;
+    }
+
+    private static NavRouteLeg readLeg(JsonReader reader) throws IOException {
+        NavIntVal distance = null;
+        NavIntVal duration = null;
+        NavCoord startLocation = null;
+        NavCoord endLocation = null;
+        String startAddress = null;
+        String endAddress = null;
+        List<NavRouteStep> steps = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "distance":
+                    distance = readIntVal(reader);
+                    break;
+                case "duration":
+                    duration = readIntVal(reader);
+                    break;
+                case "start_location":
+                    startLocation = readCoord(reader);
+                    break;
+                case "end_location":
+                    endLocation = readCoord(reader);
+                    break;
+                case "start_address":
+                    startAddress = readString(reader);
+                    break;
+                case "end_address":
+                    endAddress = readString(reader);
+                    break;
+                case "steps":
+                    steps = readSteps(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return new NavRouteLeg(orEmpty(distance), orEmpty(duration), orOrigin(startLocation), orOrigin(endLocation),
+                startAddress, endAddress, steps);
+    }
+
+    private static List<NavRouteStep> readSteps(JsonReader reader) throws IOException {
+        if (skipNull(reader)) {
+            return null;
+        }
+        List<NavRouteStep> steps = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            steps.add(readStep(reader));
+        }
+        reader.endArray();
+        return steps;
+    }
+
+    private static NavRouteStep readStep(JsonReader reader) throws IOException {
+        NavIntVal distance = null;
+        NavIntVal duration = null;
+        NavCoord startLocation = null;
+        NavCoord endLocation = null;
+        String htmlInstructions = null;
+        String maneuver = null;
+        NavPolyline polyline = null;
+        String travelMode = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "distance":
+                    distance = readIntVal(reader);
+                    break;
+                case "duration":
+                    duration = readIntVal(reader);
+                    break;
+                case "start_location":
+                    startLocation = readCoord(reader);
+                    break;
+                case "end_location":
+                    endLocation = readCoord(reader);
+                    break;
+                case "html_instructions":
+                    htmlInstructions = readString(reader);
+                    break;
+                case "maneuver":
+                    maneuver = readString(reader);
+                    break;
+                case "polyline":
+                    polyline = readPolyline(reader);
+                    break;
+                case "travel_mode":
+                    travelMode = readString(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return new NavRouteStep(orEmpty(distance), orEmpty(duration), orOrigin(startLocation), orOrigin(endLocation),
+                htmlInstructions, maneuver, (polyline != null) ? polyline : new NavPolyline(null), travelMode);
+    }
+
+    private static NavIntVal readIntVal(JsonReader reader) throws IOException {
+        if (skipNull(reader)) {
+            return null;
+        }
+        int value = 0;
+        String text = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "value":
+                    value = skipNull(reader) ? 0 : reader.nextInt();
+                    break;
+                case "text":
+                    text = readString(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return new NavIntVal(value, text);
+    }
+
+    private static NavCoord readCoord(JsonReader reader) throws IOException {
+        if (skipNull(reader)) {
+            return null;
+        }
+        double lat = 0.0d;
+        double lng = 0.0d;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "lat":
+                    lat = skipNull(reader) ? 0.0d : reader.nextDouble();
+                    break;
+                case "lng":
+                    lng = skipNull(reader) ? 0.0d : reader.nextDouble();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return new NavCoord(lat, lng);
+    }
+
+    private static NavBounds readBounds(JsonReader reader) throws IOException {
+        if (skipNull(reader)) {
+            return null;
+        }
+        NavCoord northeast = null;
+        NavCoord southwest = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "northeast":
+                    northeast = readCoord(reader);
+                    break;
+                case "southwest":
+                    southwest = readCoord(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return new NavBounds(orOrigin(northeast), orOrigin(southwest));
+    }
+
+    private static NavPolyline readPolyline(JsonReader reader) throws IOException {
+        if (skipNull(reader)) {
+            return null;
+        }
+        String points = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("points".equals(reader.nextName())) {
+                points = readString(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new NavPolyline(points);
+    }
+
+    private static String readString(JsonReader reader) throws IOException {
+        return skipNull(reader) ? null : reader.nextString();
+    }
+
+    /**
+     * @return true if the next value is null, which is consumed
+     */
+    private static boolean skipNull(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return true;
+        }
+        return false;
+    }
+
+    private static NavIntVal orEmpty(NavIntVal value) {
+        return (value != null) ? value : new NavIntVal(0, null);
+    }
+
+    private static NavCoord orOrigin(NavCoord coord) {
+        return (coord != null) ? coord : new NavCoord(0, 0);
+    }
+
+    public static class Response {
+        private final String status;
+        private final String errorMessage;
+        private final List<NavRoute> routes;
+
+        private Response(String status, String errorMessage, List<NavRoute> routes) {
+            this.status = status;
+            this.errorMessage = errorMessage;
+            this.routes = routes;
+        }
+
+        public boolean isOk() {
+            return "OK".equalsIgnoreCase(status);
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public String getErrorMessage() {
+            return errorMessage;
+        }
+
+        /**
+         * @return parsed routes, null if the response has none
+         */
+        public List<NavRoute> getRoutes() {
+            return routes;
+        }
+    }
+}
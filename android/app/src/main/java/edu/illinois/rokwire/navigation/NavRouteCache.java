@@ -0,0 +1,290 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.rokwire.navigation;
+
+import android.content.Context;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import edu.illinois.rokwire.navigation.model.NavCoord;
+
+/**
+ * Two tier cache of successful Directions API responses: a memory LRU and a size bounded directory in the app cache.
+ * Responses are keyed by origin and destination quantized to about 20 m and 10 m, travel mode, alternatives and language,
+ * so requests from nearly the same place share a response.
+ * Entries expire by travel mode: transit routes depend on departure times and driving routes on traffic, walking and bicycling routes hardly change.
+ * Disk reads are synchronous - responses are tens of kilobytes - disk writes run on a background thread.
+ */
+public class NavRouteCache {
+
+    private static final String TAG = NavRouteCache.class.getSimpleName();
+
+    private static final int MAX_MEMORY_SIZE_CHARS = 512 * 1024;
+    private static final long MAX_DISK_SIZE_BYTES = 2 * 1024 * 1024;
+    private static final String DISK_DIRECTORY_NAME = "directions";
+
+    private static final double ORIGIN_QUANTUM_DEGREES = 0.0002d;
+    private static final double DESTINATION_QUANTUM_DEGREES = 0.0001d;
+
+    private static final long TRANSIT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(2);
+    private static final long DRIVING_TTL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    private static final long DEFAULT_TTL_MILLIS = TimeUnit.HOURS.toMillis(24);
+
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    private static NavRouteCache instance;
+
+    private final LruCache<String, Entry> memoryCache;
+    private final File diskDirectory;
+    private final ExecutorService diskWriter;
+
+    // Statistics
+    private int memoryHitCount;
+    private int diskHitCount;
+    private int missCount;
+    private long bytesSaved;
+
+    private NavRouteCache(Context context) {
+        memoryCache = new LruCache<String, Entry>(MAX_MEMORY_SIZE_CHARS) {
+            @Override
+            protected int sizeOf(String key, Entry entry) {
+                return Math.max(entry.response.length(), 1);
+            }
+        };
+        diskDirectory = new File(context.getApplicationContext().getCacheDir(), DISK_DIRECTORY_NAME);
+        diskWriter = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "NavRouteCache");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static synchronized NavRouteCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new NavRouteCache(context);
+        }
+        return instance;
+    }
+
+    public static String buildKey(NavCoord origin, NavCoord destination, String travelMode, boolean alternatives, String language) {
+        return String.format(Locale.US, "%d,%d;%d,%d;%s;%s;%s",
+                quantize(origin.getLat(), ORIGIN_QUANTUM_DEGREES), quantize(origin.getLng(), ORIGIN_QUANTUM_DEGREES),
+                quantize(destination.getLat(), DESTINATION_QUANTUM_DEGREES), quantize(destination.getLng(), DESTINATION_QUANTUM_DEGREES),
+                travelMode, alternatives, language);
+    }
+
+    /**
+     * @return the cached response for the key, null if there is none or it has expired
+     */
+    public synchronized String get(String key, String travelMode) {
+        long now = System.currentTimeMillis();
+        long ttlMillis = getTtlMillis(travelMode);
+        Entry entry = memoryCache.get(key);
+        if ((entry != null) && ((now - entry.timestamp) <= ttlMillis)) {
+            memoryHitCount++;
+            bytesSaved += entry.response.length();
+            return entry.response;
+        }
+        entry = readDiskEntry(key, now, ttlMillis);
+        if (entry != null) {
+            memoryCache.put(key, entry);
+            diskHitCount++;
+            bytesSaved += entry.response.length();
+            return entry.response;
+        }
+        missCount++;
+        return null;
+    }
+
+    public synchronized void put(String key, String response) {
+        if ((key == null) || (response == null)) {
+            return;
+        }
+        Entry existingEntry = memoryCache.get(key);
+        if ((existingEntry != null) && (existingEntry.response.equals(response))) {
+            // Coalesced requests store the same response once per subscriber
+            return;
+        }
+        Entry entry = new Entry(response, System.currentTimeMillis());
+        memoryCache.put(key, entry);
+        diskWriter.execute(() -> writeDiskEntry(key, entry));
+    }
+
+    public synchronized int getMemoryHitCount() {
+        return memoryHitCount;
+    }
+
+    public synchronized int getDiskHitCount() {
+        return diskHitCount;
+    }
+
+    public synchronized int getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return share of the lookups served from either tier, 0 before the first lookup
+     */
+    public synchronized double getHitRate() {
+        int lookupsCount = memoryHitCount + diskHitCount + missCount;
+        return (lookupsCount > 0) ? ((double) (memoryHitCount + diskHitCount) / lookupsCount) : 0.0d;
+    }
+
+    /**
+     * @return response characters served from the cache instead of the network
+     */
+    public synchronized long getBytesSaved() {
+        return bytesSaved;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "NavRouteCache[memoryHits=%d,diskHits=%d,misses=%d,hitRate=%.0f%%,bytesSaved=%d]",
+                memoryHitCount, diskHitCount, missCount, getHitRate() * 100.0d, bytesSaved);
+    }
+
+    private static long quantize(double degrees, double quantum) {
+        return Math.round(degrees / quantum);
+    }
+
+    static long getTtlMillis(String travelMode) {
+        if (Navigation.TRAVEL_MODE_TRANSIT.equals(travelMode)) {
+            return TRANSIT_TTL_MILLIS;
+        } else if (Navigation.TRAVEL_MODE_DRIVING.equals(travelMode)) {
+            return DRIVING_TTL_MILLIS;
+        } else {
+            return DEFAULT_TTL_MILLIS;
+        }
+    }
+
+    private Entry readDiskEntry(String key, long now, long ttlMillis) {
+        File file = getDiskFile(key);
+        if ((file == null) || !file.exists()) {
+            return null;
+        }
+        long timestamp = file.lastModified();
+        if ((now - timestamp) > ttlMillis) {
+            return null;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), CHARSET))) {
+            // The first line holds the key, file names are hashes
+            String fileKey = reader.readLine();
+            if (!key.equals(fileKey)) {
+                return null;
+            }
+            StringBuilder responseBuilder = new StringBuilder();
+            char[] buffer = new char[8192];
+            int count;
+            while ((count = reader.read(buffer)) > 0) {
+                responseBuilder.append(buffer, 0, count);
+            }
+            return new Entry(responseBuilder.toString(), timestamp);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read cached directions response. Stacktrace:");
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private void writeDiskEntry(String key, Entry entry) {
+        File file = getDiskFile(key);
+        if ((file == null) || (!diskDirectory.exists() && !diskDirectory.mkdirs())) {
+            return;
+        }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), CHARSET)) {
+            writer.write(key);
+            writer.write('\n');
+            writer.write(entry.response);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write cached directions response. Stacktrace:");
+            e.printStackTrace();
+            file.delete();
+            return;
+        }
+        trimDisk();
+    }
+
+    /**
+     * Deletes the least recently written files until the directory fits its size bound.
+     */
+    private void trimDisk() {
+        File[] files = diskDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long totalSize = 0;
+        for (File file : files) {
+            totalSize += file.length();
+        }
+        if (totalSize <= MAX_DISK_SIZE_BYTES) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            if (totalSize <= MAX_DISK_SIZE_BYTES) {
+                break;
+            }
+            long fileSize = file.length();
+            if (file.delete()) {
+                totalSize -= fileSize;
+            }
+        }
+    }
+
+    private File getDiskFile(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(CHARSET));
+            StringBuilder nameBuilder = new StringBuilder(digest.length * 2);
+            for (byte value : digest) {
+                nameBuilder.append(String.format(Locale.US, "%02x", value));
+            }
+            return new File(diskDirectory, nameBuilder.toString());
+        } catch (NoSuchAlgorithmException e) {
+            Log.e(TAG, "Failed to hash directions cache key. Stacktrace:");
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private static class Entry {
+        private final String response;
+        private final long timestamp;
+
+        private Entry(String response, long timestamp) {
+            this.response = response;
+            this.timestamp = timestamp;
+        }
+    }
+}
@@ -18,21 +18,23 @@ package edu.illinois.rokwire.navigation;
 
 import android.content.Context;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
-import com.android.volley.Request;
-import com.android.volley.RequestQueue;
 import com.android.volley.VolleyError;
-import com.android.volley.toolbox.StringRequest;
-import com.android.volley.toolbox.Volley;
 import com.google.android.gms.maps.model.LatLng;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import androidx.annotation.NonNull;
 import edu.illinois.rokwire.MainActivity;
@@ -50,20 +52,55 @@ public class Navigation {
 
     private static final String TAG = Navigation.class.getCanonicalName();
 
+    // Network responses are parsed and offline routes are searched off the main thread, one at a time
+    private static final ExecutorService parseExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "NavigationParser");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private final Context context;
     private final NavigationListener listener;
-    private final RequestQueue requestQueue;
+    private final NavRequestCoalescer requestCoalescer;
+    private final NavRouteCache routeCache;
+    private final NavOfflineRouter offlineRouter;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // The latest routes request, a newer one supersedes it. Responses of earlier requests are dropped by their id
+    private NavRequestCoalescer.Subscription routesSubscription;
+    private String pendingRoutesKey;
+    private int routesRequestId;
+
+    // Prefetch is opt-in, it is enabled by setting a prefetch listener
+    private PrefetchListener prefetchListener;
+    private final Map<String, PrefetchedRoutes> prefetchedRoutes = new HashMap<>();
+    private final Map<String, NavRequestCoalescer.Subscription> prefetchSubscriptions = new HashMap<>();
+    private final Set<String> prefetchKeys = new HashSet<>();
 
     public Navigation(Context context, NavigationListener listener) {
         this.context = context;
         this.listener = listener;
-        this.requestQueue = Volley.newRequestQueue(context);
+        this.requestCoalescer = NavRequestCoalescer.getInstance(context);
+        this.routeCache = NavRouteCache.getInstance(context);
+        this.offlineRouter = NavOfflineRouter.getInstance(context);
     }
 
     public void dismiss() {
-        if (requestQueue != null) {
-            requestQueue.cancelAll(TAG);
+        requestCoalescer.cancel(routesSubscription, false);
+        routesSubscription = null;
+        pendingRoutesKey = null;
+        routesRequestId++;
+        for (NavRequestCoalescer.Subscription subscription : prefetchSubscriptions.values()) {
+            requestCoalescer.cancel(subscription, false);
         }
+        prefetchSubscriptions.clear();
+        prefetchListener = null;
+        prefetchedRoutes.clear();
+        prefetchKeys.clear();
+    }
+
+    public void setPrefetchListener(PrefetchListener prefetchListener) {
+        this.prefetchListener = prefetchListener;
     }
 
     public void findRoutesFromOrigin(@NonNull NavCoord origin, @NonNull NavCoord destination, @NonNull String travelMode) {
@@ -71,54 +108,214 @@ public class Navigation {
     }
 
     public void findRoutesFromOrigin(@NonNull NavCoord origin, @NonNull NavCoord destination, @NonNull String travelMode, boolean alternatives) {
-        String apiUrl = null;
-        String apiKey = null;
-        if (MainActivity.getInstance() != null) {
-            apiUrl = Utils.Map.getStringValueForKey(MainActivity.getInstance().getThirdPartyServices(), "google_directions_url");
-            apiKey = Utils.Map.getValueFromPath(MainActivity.getInstance().getSecretKeys(), "google.maps.api_key", null);
+        String language = getCurrentLocale().getLanguage();
+        String cacheKey = NavRouteCache.buildKey(origin, destination, travelMode, alternatives, language);
+        if (cacheKey.equals(pendingRoutesKey)) {
+            // The same request is still in flight or being parsed, its response answers this one as well
+            Log.d(TAG, "Directions request already in flight: " + requestCoalescer.getStatistics());
+            return;
+        }
+        requestCoalescer.cancel(routesSubscription, true);
+        routesSubscription = null;
+        pendingRoutesKey = null;
+        int requestId = ++routesRequestId;
+
+        List<NavRoute> readyRoutes = getPrefetchedRoutes(cacheKey, travelMode);
+        if (readyRoutes != null) {
+            if (listener != null) {
+                listener.onNavigationResponse(readyRoutes, null);
+            }
+            return;
+        }
+        String cachedResponse = routeCache.get(cacheKey, travelMode);
+        if (cachedResponse != null) {
+            Log.d(TAG, "Directions served from cache: " + routeCache);
+            notifyResponse(cachedResponse, null, null);
+            return;
+        }
+
+        if (TRAVEL_MODE_WALKING.equals(travelMode) && !offlineRouter.isUnavailable()) {
+            // Walking routes on campus are found on the device, the Directions API answers the rest
+            pendingRoutesKey = cacheKey;
+            parseExecutor.execute(() -> {
+                List<NavRoute> offlineRoutes = offlineRouter.findRoutes(origin, destination);
+                mainHandler.post(() -> {
+                    if (requestId != routesRequestId) {
+                        // Superseded by a newer request or dismissed
+                        return;
+                    }
+                    if (offlineRoutes != null) {
+                        pendingRoutesKey = null;
+                        if (listener != null) {
+                            listener.onNavigationResponse(offlineRoutes, null);
+                        }
+                    } else {
+                        requestRoutes(requestId, cacheKey, origin, destination, travelMode, alternatives, language);
+                    }
+                });
+            });
+            return;
         }
-        String url = String.format(getCurrentLocale(), "%s?origin=%.6f,%.6f&destination=%.6f,%.6f&mode=%s&alternatives=%s&language=%s&key=%s",
-                apiUrl, origin.getLat(), origin.getLng(), destination.getLat(), destination.getLng(), travelMode, (alternatives ? "true" : "false"), getCurrentLocale().getLanguage(), apiKey);
+        requestRoutes(requestId, cacheKey, origin, destination, travelMode, alternatives, language);
+    }
 
-        StringRequest stringRequest = new StringRequest(Request.Method.GET, url,
-                response -> notifyResponse(response, null),
-                error -> notifyResponse(null, error));
-        stringRequest.setTag(TAG);
-        requestQueue.add(stringRequest);
+    private void requestRoutes(int requestId, String cacheKey, NavCoord origin, NavCoord destination, String travelMode, boolean alternatives, String language) {
+        String url = buildUrl(getApiUrl(), getApiKey(), origin, destination, travelMode, alternatives, language);
+        pendingRoutesKey = cacheKey;
+        routesSubscription = requestCoalescer.request(cacheKey, url,
+                (response, error) -> parseAndNotifyResponse(requestId, response, error, (error == null) ? cacheKey : null));
     }
 
-    private void notifyResponse(String apiResponse, VolleyError volleyError) {
+    public NavRequestCoalescer.Statistics getRequestStatistics() {
+        return requestCoalescer.getStatistics();
+    }
+
+    /**
+     * Requests routes for every travel mode in the background and keeps them parsed, so that a following
+     * {@link #findRoutesFromOrigin} for the same origin and destination responds at once. Has no effect without a prefetch listener.
+     * Routes prefetched for other origins or destinations are dropped.
+     */
+    public void prefetchRoutesFromOrigin(@NonNull NavCoord origin, @NonNull NavCoord destination, @NonNull String[] travelModes) {
+        if (prefetchListener == null) {
+            return;
+        }
+        String language = getCurrentLocale().getLanguage();
+        Map<String, String> travelModeKeys = new HashMap<>();
+        for (String travelMode : travelModes) {
+            travelModeKeys.put(travelMode, NavRouteCache.buildKey(origin, destination, travelMode, false, language));
+        }
+        prefetchKeys.clear();
+        prefetchKeys.addAll(travelModeKeys.values());
+        prefetchedRoutes.keySet().retainAll(prefetchKeys);
+        Iterator<Map.Entry<String, NavRequestCoalescer.Subscription>> subscriptionsIterator = prefetchSubscriptions.entrySet().iterator();
+        while (subscriptionsIterator.hasNext()) {
+            Map.Entry<String, NavRequestCoalescer.Subscription> subscriptionEntry = subscriptionsIterator.next();
+            if (subscriptionEntry.getValue().isDone() || !prefetchKeys.contains(subscriptionEntry.getKey())) {
+                requestCoalescer.cancel(subscriptionEntry.getValue(), true);
+                subscriptionsIterator.remove();
+            }
+        }
+
+        String apiUrl = getApiUrl();
+        String apiKey = getApiKey();
+        for (Map.Entry<String, String> travelModeKey : travelModeKeys.entrySet()) {
+            String travelMode = travelModeKey.getKey();
+            String cacheKey = travelModeKey.getValue();
+            if ((getPrefetchedRoutes(cacheKey, travelMode) != null) || prefetchSubscriptions.containsKey(cacheKey)) {
+                continue;
+            }
+            String cachedResponse = routeCache.get(cacheKey, travelMode);
+            if (cachedResponse != null) {
+                parsePrefetchResponse(travelMode, cacheKey, cachedResponse, null);
+                continue;
+            }
+            String url = buildUrl(apiUrl, apiKey, origin, destination, travelMode, false, language);
+            prefetchSubscriptions.put(cacheKey, requestCoalescer.request(cacheKey, url, (response, error) -> {
+                prefetchSubscriptions.remove(cacheKey);
+                if (error != null) {
+                    Log.d(TAG, "Failed to prefetch " + travelMode + " routes: " + error.getLocalizedMessage());
+                } else {
+                    parsePrefetchResponse(travelMode, cacheKey, response, cacheKey);
+                }
+            }));
+        }
+    }
+
+    private void parsePrefetchResponse(String travelMode, String key, String apiResponse, String cacheKey) {
+        parseExecutor.execute(() -> {
+            RoutesResponse routesResponse = parseResponse(apiResponse, null, cacheKey);
+            mainHandler.post(() -> {
+                PrefetchListener currentListener = prefetchListener;
+                if ((currentListener == null) || (routesResponse.routes == null) || !prefetchKeys.contains(key)) {
+                    return;
+                }
+                prefetchedRoutes.put(key, new PrefetchedRoutes(routesResponse.routes, System.currentTimeMillis()));
+                currentListener.onRoutesPrefetched(travelMode, routesResponse.routes);
+            });
+        });
+    }
+
+    /**
+     * @return prefetched routes for the key, null if there are none or they have expired
+     */
+    private List<NavRoute> getPrefetchedRoutes(String key, String travelMode) {
+        PrefetchedRoutes entry = prefetchedRoutes.get(key);
+        if ((entry != null) && ((System.currentTimeMillis() - entry.timestamp) > NavRouteCache.getTtlMillis(travelMode))) {
+            prefetchedRoutes.remove(key);
+            entry = null;
+        }
+        return (entry != null) ? entry.routes : null;
+    }
+
+    private void parseAndNotifyResponse(int requestId, String apiResponse, VolleyError volleyError, String cacheKey) {
+        parseExecutor.execute(() -> {
+            RoutesResponse routesResponse = parseResponse(apiResponse, volleyError, cacheKey);
+            mainHandler.post(() -> {
+                if (requestId != routesRequestId) {
+                    // Superseded by a newer request or dismissed
+                    return;
+                }
+                routesSubscription = null;
+                pendingRoutesKey = null;
+                if (listener != null) {
+                    listener.onNavigationResponse(routesResponse.routes, routesResponse.errorResponse);
+                }
+            });
+        });
+    }
+
+    /**
+     * @param cacheKey key to cache a successful response under, null for responses that must not be cached
+     */
+    private void notifyResponse(String apiResponse, VolleyError volleyError, String cacheKey) {
+        RoutesResponse routesResponse = parseResponse(apiResponse, volleyError, cacheKey);
+        if (listener != null) {
+            listener.onNavigationResponse(routesResponse.routes, routesResponse.errorResponse);
+        }
+    }
+
+    /**
+     * Safe to call off the main thread.
+     * @param cacheKey key to cache a successful response under, null for responses that must not be cached
+     */
+    private RoutesResponse parseResponse(String apiResponse, VolleyError volleyError, String cacheKey) {
         List<NavRoute> routes = null;
         String errorResponse = null;
         if (volleyError != null) {
             errorResponse = volleyError.getLocalizedMessage();
         } else if (!Utils.Str.isEmpty(apiResponse)) {
-            JSONObject jsonResponse = null;
+            NavResponseParser.Response parsedResponse = null;
             try {
-                jsonResponse = new JSONObject(apiResponse);
-            } catch (JSONException e) {
+                parsedResponse = NavResponseParser.parse(apiResponse);
+            } catch (IOException e) {
                 Log.e(TAG, "Failed to parse Directions API response. Print stacktrace:");
                 e.printStackTrace();
             }
-            if (jsonResponse != null) {
-                String status = Utils.Json.getStringValueForKey(jsonResponse, "status");
-                if ("OK".equalsIgnoreCase(status)) {
-                    JSONArray routesJson = Utils.Json.getJsonArrayForKey(jsonResponse, "routes");
-                    if (routesJson != null) {
-                        routes = NavRoute.createNavRouteList(routesJson);
-                    }
+            if (parsedResponse != null) {
+                if (parsedResponse.isOk()) {
+                    routes = parsedResponse.getRoutes();
+                    routeCache.put(cacheKey, apiResponse);
                 } else {
-                    String serverErrMsg = Utils.Json.getStringValueForKey(jsonResponse, "error_message");
-                    errorResponse = String.format(getCurrentLocale(), "%s: %s", status, serverErrMsg);
+                    errorResponse = String.format(getCurrentLocale(), "%s: %s", parsedResponse.getStatus(), parsedResponse.getErrorMessage());
                 }
             } else {
                 errorResponse = context.getString(R.string.invalid_server_response);
             }
         }
+        return new RoutesResponse(routes, errorResponse);
+    }
 
-        if (listener != null) {
-            listener.onNavigationResponse(routes, errorResponse);
-        }
+    private String buildUrl(String apiUrl, String apiKey, NavCoord origin, NavCoord destination, String travelMode, boolean alternatives, String language) {
+        return String.format(getCurrentLocale(), "%s?origin=%.6f,%.6f&destination=%.6f,%.6f&mode=%s&alternatives=%s&language=%s&key=%s",
+                apiUrl, origin.getLat(), origin.getLng(), destination.getLat(), destination.getLng(), travelMode, (alternatives ? "true" : "false"), language, apiKey);
+    }
+
+    private String getApiUrl() {
+        return (MainActivity.getInstance() != null) ? Utils.Map.getStringValueForKey(MainActivity.getInstance().getThirdPartyServices(), "google_directions_url") : null;
+    }
+
+    private String getApiKey() {
+        return (MainActivity.getInstance() != null) ? Utils.Map.getValueFromPath(MainActivity.getInstance().getSecretKeys(), "google.maps.api_key", null) : null;
     }
 
     private Locale getCurrentLocale() {
@@ -134,4 +331,28 @@ public class Navigation {
     public interface NavigationListener {
         void onNavigationResponse(List<NavRoute> routes, String errorResponse);
     }
+
+    public interface PrefetchListener {
+        void onRoutesPrefetched(String travelMode, List<NavRoute> routes);
+    }
+
+    private static class RoutesResponse {
+        private final List<NavRoute> routes;
+        private final String errorResponse;
+
+        private RoutesResponse(List<NavRoute> routes, String errorResponse) {
+            this.routes = routes;
+            this.errorResponse = errorResponse;
+        }
+    }
+
+    private static class PrefetchedRoutes {
+        private final List<NavRoute> routes;
+        private final long timestamp;
+
+        private PrefetchedRoutes(List<NavRoute> routes, long timestamp) {
+            this.routes = routes;
+            this.timestamp = timestamp;
+        }
+    }
 }
@@ -16,17 +16,27 @@
 
 package edu.illinois.rokwire.navigation.model;
 
-import org.json.JSONObject;
-
-import edu.illinois.rokwire.Utils;
-
 public class NavBounds {
     private NavCoord northeast;
     private NavCoord southwest;
 
-    public NavBounds(JSONObject json) {
-        this.northeast = new NavCoord(Utils.Json.getJsonObjectForKey(json, "northeast"));
-        this.southwest = new NavCoord(Utils.Json.getJsonObjectForKey(json, "southwest"));
+    public NavBounds(NavCoord northeast, NavCoord southwest) {
+        this.northeast = northeast;
+        this.southwest = southwest;
+    }
+
+    /**
+     * @return bounds that contain both bounds, the other one if one of them is null
+     */
+    public static NavBounds union(NavBounds bounds, NavBounds otherBounds) {
+        if ((bounds == null) || (otherBounds == null)) {
+            return (bounds != null) ? bounds : otherBounds;
+        }
+        NavCoord northeast = new NavCoord(Math.max(bounds.northeast.getLat(), otherBounds.northeast.getLat()),
+                Math.max(bounds.northeast.getLng(), otherBounds.northeast.getLng()));
+        NavCoord southwest = new NavCoord(Math.min(bounds.southwest.getLat(), otherBounds.southwest.getLat()),
+                Math.min(bounds.southwest.getLng(), otherBounds.southwest.getLng()));
+        return new NavBounds(northeast, southwest);
     }
 
     public NavCoord getNortheast() {
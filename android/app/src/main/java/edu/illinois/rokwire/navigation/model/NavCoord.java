@@ -18,13 +18,9 @@ package edu.illinois.rokwire.navigation.model;
 
 import com.google.android.gms.maps.model.LatLng;
 
-import org.json.JSONObject;
-
 import java.util.ArrayList;
 import java.util.List;
 
-import edu.illinois.rokwire.Utils;
-
 public class NavCoord {
     private final double lat;
     private final double lng;
@@ -34,41 +30,12 @@ public class NavCoord {
         this.lng = lng;
     }
 
-    public NavCoord(JSONObject json) {
-        this.lat = Utils.Json.getDoubleValueForKey(json, "lat");
-        this.lng = Utils.Json.getDoubleValueForKey(json, "lng");
-    }
-
     public static List<NavCoord> createListFromEncodedString(String encodedString) {
         List<NavCoord> poly = new ArrayList<>();
-        int index = 0, len = encodedString.length();
-        int lat = 0, lng = 0;
-
-        while (index < len) {
-            int b, shift = 0, result = 0;
-            do {
-                b = encodedString.charAt(index++) - 63;
-                result |= (b & 0x1f) << shift;
-                shift += 5;
-            } while (b >= 0x20);
-            int dlat = ((result & 1) != 0 ? ~(result >> 1) : (result >> 1));
-            lat += dlat;
-
-            shift = 0;
-            result = 0;
-            do {
-                b = encodedString.charAt(index++) - 63;
-                result |= (b & 0x1f) << shift;
-                shift += 5;
-            } while (b >= 0x20);
-            int dlng = ((result & 1) != 0 ? ~(result >> 1) : (result >> 1));
-            lng += dlng;
-
-            NavCoord p = new NavCoord((((double) lat / 1E5)),
-                    (((double) lng / 1E5)));
-            poly.add(p);
+        NavPolylineDecoder decoder = new NavPolylineDecoder().reset(encodedString);
+        while (decoder.next()) {
+            poly.add(new NavCoord(decoder.getLatitude(), decoder.getLongitude()));
         }
-
         return poly;
     }
 
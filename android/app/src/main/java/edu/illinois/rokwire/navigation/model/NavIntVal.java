@@ -16,17 +16,13 @@
 
 package edu.illinois.rokwire.navigation.model;
 
-import org.json.JSONObject;
-
-import edu.illinois.rokwire.Utils;
-
 public class NavIntVal {
     private int value;
     private String text;
 
-    public NavIntVal(JSONObject json) {
-        this.value = Utils.Json.getIntValueForKey(json, "value");
-        this.text = Utils.Json.getStringValueForKey(json, "text");
+    public NavIntVal(int value, String text) {
+        this.value = value;
+        this.text = text;
     }
 
     public String getText() {
@@ -18,37 +18,113 @@ package edu.illinois.rokwire.navigation.model;
 
 import com.google.android.gms.maps.model.LatLng;
 
-import org.json.JSONObject;
-
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
-import edu.illinois.rokwire.Utils;
-
+/**
+ * Encoded polyline, decoded on first access into a packed array that is kept for the following ones.
+ * The point accessors read the packed array, the coordinate lists are built from it.
+ */
 public class NavPolyline {
     private final String points;
+    // Latitude and longitude of every point one after another, in 1E-5 degrees
+    private volatile int[] pointsE5;
+    private volatile List<LatLng> latLngCoordinates;
 
-    public NavPolyline(JSONObject json) {
-        this.points = Utils.Json.getStringValueForKey(json, "points");
+    public NavPolyline(String points) {
+        this.points = points;
+    }
+
+    /**
+     * @param pointsE5 latitude and longitude of every point one after another, in 1E-5 degrees; kept as the decoded points
+     */
+    public static NavPolyline fromPointsE5(int[] pointsE5) {
+        NavPolyline polyline = new NavPolyline(encodeE5(pointsE5));
+        polyline.pointsE5 = pointsE5;
+        return polyline;
+    }
+
+    private static String encodeE5(int[] pointsE5) {
+        StringBuilder encoded = new StringBuilder(3 * pointsE5.length);
+        int previousLatitudeE5 = 0;
+        int previousLongitudeE5 = 0;
+        for (int index = 0; (index + 1) < pointsE5.length; index += 2) {
+            encodeValue(pointsE5[index] - previousLatitudeE5, encoded);
+            encodeValue(pointsE5[index + 1] - previousLongitudeE5, encoded);
+            previousLatitudeE5 = pointsE5[index];
+            previousLongitudeE5 = pointsE5[index + 1];
+        }
+        return encoded.toString();
+    }
+
+    private static void encodeValue(int value, StringBuilder encoded) {
+        int zigzag = (value < 0) ? ~(value << 1) : (value << 1);
+        while (zigzag >= 0x20) {
+            encoded.append((char) ((0x20 | (zigzag & 0x1f)) + 63));
+            zigzag >>>= 5;
+        }
+        encoded.append((char) (zigzag + 63));
     }
 
     public String getPoints() {
         return points;
     }
 
+    public int getPointsCount() {
+        return getPointsE5().length / 2;
+    }
+
+    public double getLatitude(int index) {
+        return getPointsE5()[2 * index] / 1E5;
+    }
+
+    public double getLongitude(int index) {
+        return getPointsE5()[2 * index + 1] / 1E5;
+    }
+
+    /**
+     * @return null if there are no encoded points
+     */
     public List<NavCoord> getNavCoordinates() {
-        return NavCoord.createListFromEncodedString(points);
+        if (points == null) {
+            return null;
+        }
+        int[] e5 = getPointsE5();
+        List<NavCoord> coordinates = new ArrayList<>(e5.length / 2);
+        for (int index = 0; index < e5.length; index += 2) {
+            coordinates.add(new NavCoord(e5[index] / 1E5, e5[index + 1] / 1E5));
+        }
+        return coordinates;
     }
 
+    /**
+     * @return unmodifiable list shared by all callers, null if there are no encoded points
+     */
     public List<LatLng> getLatLngCoordinates() {
-        List<NavCoord> coordinates = getNavCoordinates();
-        if (coordinates == null) {
+        if (points == null) {
             return null;
         }
-        List<LatLng> latLngCoordinates = new ArrayList<>();
-        for (NavCoord navCoord : coordinates) {
-            latLngCoordinates.add(navCoord.toLatLng());
+        List<LatLng> coordinates = latLngCoordinates;
+        if (coordinates == null) {
+            int[] e5 = getPointsE5();
+            List<LatLng> decodedCoordinates = new ArrayList<>(e5.length / 2);
+            for (int index = 0; index < e5.length; index += 2) {
+                decodedCoordinates.add(new LatLng(e5[index] / 1E5, e5[index + 1] / 1E5));
+            }
+            coordinates = Collections.unmodifiableList(decodedCoordinates);
+            latLngCoordinates = coordinates;
+        }
+        return coordinates;
+    }
+
+    private int[] getPointsE5() {
+        int[] e5 = pointsE5;
+        if (e5 == null) {
+            // Decoding twice from different threads is harmless, both results are equal
+            e5 = NavPolylineDecoder.decodeE5(points);
+            pointsE5 = e5;
         }
-        return latLngCoordinates;
+        return e5;
     }
 }
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.rokwire.navigation.model;
+
+/**
+ * Decoder of encoded polylines (Google polyline algorithm, coordinates in 1E-5 degrees).
+ * Decodes a whole polyline into a packed array, or streams its points as a cursor that allocates nothing per point:
+ * <pre>
+ * NavPolylineDecoder decoder = new NavPolylineDecoder().reset(encoded);
+ * while (decoder.next()) {
+ *     decoder.getLatitude(); decoder.getLongitude();
+ * }
+ * </pre>
+ * A truncated polyline ends with its last complete point.
+ */
+public class NavPolylineDecoder {
+
+    private static final double E5 = 1E5;
+
+    private String encoded;
+    private int index;
+    private int latitudeE5;
+    private int longitudeE5;
+
+    /**
+     * @return latitude and longitude of every point one after another, in 1E-5 degrees
+     */
+    public static int[] decodeE5(String encoded) {
+        int length = (encoded != null) ? encoded.length() : 0;
+        // Every value ends with a chunk without the continuation bit, a point has two values
+        int valuesCount = 0;
+        for (int charIndex = 0; charIndex < length; charIndex++) {
+            if ((encoded.charAt(charIndex) - 63) < 0x20) {
+                valuesCount++;
+            }
+        }
+        int[] pointsE5 = new int[valuesCount & ~1];
+        NavPolylineDecoder decoder = new NavPolylineDecoder().reset(encoded);
+        int pointIndex = 0;
+        while ((pointIndex < pointsE5.length) && decoder.next()) {
+            pointsE5[pointIndex++] = decoder.latitudeE5;
+            pointsE5[pointIndex++] = decoder.longitudeE5;
+        }
+        return pointsE5;
+    }
+
+    public NavPolylineDecoder reset(String encoded) {
+        this.encoded = encoded;
+        index = 0;
+        latitudeE5 = 0;
+        longitudeE5 = 0;
+        return this;
+    }
+
+    /**
+     * Moves to the next point.
+     * @return false when there are no more points
+     */
+    public boolean next() {
+        int length = (encoded != null) ? encoded.length() : 0;
+        long latitudeDelta = nextValue(length);
+        long longitudeDelta = (latitudeDelta != Long.MIN_VALUE) ? nextValue(length) : Long.MIN_VALUE;
+        if (longitudeDelta == Long.MIN_VALUE) {
+            // Stays at the end
+            encoded = null;
+            return false;
+        }
+        latitudeE5 += (int) latitudeDelta;
+        longitudeE5 += (int) longitudeDelta;
+        return true;
+    }
+
+    public int getLatitudeE5() {
+        return latitudeE5;
+    }
+
+    public int getLongitudeE5() {
+        return longitudeE5;
+    }
+
+    public double getLatitude() {
+        return latitudeE5 / E5;
+    }
+
+    public double getLongitude() {
+        return longitudeE5 / E5;
+    }
+
+    /**
+     * @return the next zigzag decoded value, Long.MIN_VALUE if the polyline ends before it does
+     */
+    private long nextValue(int length) {
+        int result = 0;
+        int shift = 0;
+        int chunk;
+        do {
+            if (index >= length) {
+                return Long.MIN_VALUE;
+            }
+            chunk = encoded.charAt(index++) - 63;
+            result |= (chunk & 0x1f) << shift;
+            shift += 5;
+        } while (chunk >= 0x20);
+        return ((result & 1) != 0) ? ~(result >> 1) : (result >> 1);
+    }
+}
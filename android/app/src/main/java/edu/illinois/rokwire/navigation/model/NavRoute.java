@@ -16,14 +16,9 @@
 
 package edu.illinois.rokwire.navigation.model;
 
-import org.json.JSONArray;
-import org.json.JSONObject;
-
 import java.util.ArrayList;
 import java.util.List;
 
-import edu.illinois.rokwire.Utils;
-
 public class NavRoute {
     private NavBounds bounds;
     private String copyrights;
@@ -31,29 +26,51 @@ public class NavRoute {
     private List<NavRouteLeg> legs;
     private NavPolyline polyline;
 
-    public NavRoute(JSONObject json) {
-        if (json != null) {
-            this.bounds = new NavBounds(Utils.Json.getJsonObjectForKey(json, "bounds"));
-            this.copyrights = Utils.Json.getStringValueForKey(json, "copyrights");
-            this.summary = Utils.Json.getStringValueForKey(json, "summary");
-            this.legs = NavRouteLeg.createNavRouteLegList(Utils.Json.getJsonArrayForKey(json, "legs"));
-            this.polyline = new NavPolyline(Utils.Json.getJsonObjectForKey(json, "overview_polyline"));
-        }
+    public NavRoute(NavBounds bounds, String copyrights, String summary, List<NavRouteLeg> legs, NavPolyline polyline) {
+        this.bounds = bounds;
+        this.copyrights = copyrights;
+        this.summary = summary;
+        this.legs = legs;
+        this.polyline = polyline;
     }
 
-    public static List<NavRoute> createNavRouteList(JSONArray jsonArray) {
-        List<NavRoute> routes = null;
-        if (jsonArray != null) {
-            routes = new ArrayList<>();
-            int count = jsonArray.length();
-            for (int i = 0; i < count; i++) {
-                JSONObject routeJson = Utils.Json.getJsonObjectForIndex(jsonArray, i);
-                if (routeJson != null) {
-                    routes.add(new NavRoute(routeJson));
-                }
+    /**
+     * Joins a detour to the part of the route that follows the rejoin step.
+     * The steps of the detour and the rest of the rejoin leg make the first leg, the following legs are kept as they are.
+     * Distance and duration of the joined leg have no display text.
+     * @param detour route from the current position to the end of the rejoin step
+     * @param rejoinLegIndex leg of the rejoin step, -1 when the detour goes to the destination and replaces the route
+     */
+    public static NavRoute createRejoinedRoute(NavRoute detour, NavRoute route, int rejoinLegIndex, int rejoinStepIndex) {
+        if ((detour == null) || (detour.getLegs() == null) || (route == null) || (route.getLegs() == null) ||
+                (rejoinLegIndex < 0) || (rejoinLegIndex >= route.getLegs().size())) {
+            return detour;
+        }
+        List<NavRouteStep> steps = new ArrayList<>();
+        int distance = 0;
+        int duration = 0;
+        for (NavRouteLeg detourLeg : detour.getLegs()) {
+            if (detourLeg.getSteps() != null) {
+                steps.addAll(detourLeg.getSteps());
             }
+            distance += detourLeg.getDistance().getValue();
+            duration += detourLeg.getDuration().getValue();
+        }
+        NavRouteLeg rejoinLeg = route.getLegs().get(rejoinLegIndex);
+        List<NavRouteStep> rejoinLegSteps = (rejoinLeg.getSteps() != null) ? rejoinLeg.getSteps() : new ArrayList<>();
+        for (int stepIndex = rejoinStepIndex + 1; stepIndex < rejoinLegSteps.size(); stepIndex++) {
+            NavRouteStep step = rejoinLegSteps.get(stepIndex);
+            steps.add(step);
+            distance += step.getDistance().getValue();
+            duration += step.getDuration().getValue();
         }
-        return routes;
+        NavRouteLeg firstDetourLeg = !detour.getLegs().isEmpty() ? detour.getLegs().get(0) : rejoinLeg;
+        List<NavRouteLeg> legs = new ArrayList<>();
+        legs.add(new NavRouteLeg(new NavIntVal(distance, null), new NavIntVal(duration, null),
+                firstDetourLeg.getStartLocation(), rejoinLeg.getEndLocation(), firstDetourLeg.getStartAddress(), rejoinLeg.getEndAddress(), steps));
+        legs.addAll(route.getLegs().subList(rejoinLegIndex + 1, route.getLegs().size()));
+        return new NavRoute(NavBounds.union(detour.getBounds(), route.getBounds()), route.getCopyrights(), route.getSummary(),
+                legs, route.getPolyline());
     }
 
     public NavBounds getBounds() {
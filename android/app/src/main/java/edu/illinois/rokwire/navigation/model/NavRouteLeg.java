@@ -16,14 +16,8 @@
 
 package edu.illinois.rokwire.navigation.model;
 
-import org.json.JSONArray;
-import org.json.JSONObject;
-
-import java.util.ArrayList;
 import java.util.List;
 
-import edu.illinois.rokwire.Utils;
-
 public class NavRouteLeg {
     private final NavIntVal distance;
     private final NavIntVal duration;
@@ -33,29 +27,15 @@ public class NavRouteLeg {
     private final String endAddress;
     private final List<NavRouteStep> steps;
 
-    public NavRouteLeg(JSONObject json) {
-        this.distance = new NavIntVal(Utils.Json.getJsonObjectForKey(json, "distance"));
-        this.duration = new NavIntVal(Utils.Json.getJsonObjectForKey(json, "duration"));
-        this.startLocation = new NavCoord(Utils.Json.getJsonObjectForKey(json, "start_location"));
-        this.endLocation = new NavCoord(Utils.Json.getJsonObjectForKey(json, "end_location"));
-        this.startAddress = Utils.Json.getStringValueForKey(json, "start_address");
-        this.endAddress = Utils.Json.getStringValueForKey(json, "end_address");
-        this.steps = NavRouteStep.createNavRouteStepList(Utils.Json.getJsonArrayForKey(json, "steps"));
-    }
-
-    public static List<NavRouteLeg> createNavRouteLegList(JSONArray jsonArray) {
-        List<NavRouteLeg> legs = null;
-        if (jsonArray != null) {
-            legs = new ArrayList<>();
-            int count = jsonArray.length();
-            for (int i = 0; i < count; i++) {
-                JSONObject legJson = Utils.Json.getJsonObjectForIndex(jsonArray, i);
-                if (legJson != null) {
-                    legs.add(new NavRouteLeg(legJson));
-                }
-            }
-        }
-        return legs;
+    public NavRouteLeg(NavIntVal distance, NavIntVal duration, NavCoord startLocation, NavCoord endLocation,
+                       String startAddress, String endAddress, List<NavRouteStep> steps) {
+        this.distance = distance;
+        this.duration = duration;
+        this.startLocation = startLocation;
+        this.endLocation = endLocation;
+        this.startAddress = startAddress;
+        this.endAddress = endAddress;
+        this.steps = steps;
     }
 
     public NavIntVal getDistance() {
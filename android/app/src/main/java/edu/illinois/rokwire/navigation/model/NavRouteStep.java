@@ -16,14 +16,6 @@
 
 package edu.illinois.rokwire.navigation.model;
 
-import org.json.JSONArray;
-import org.json.JSONObject;
-
-import java.util.ArrayList;
-import java.util.List;
-
-import edu.illinois.rokwire.Utils;
-
 public class NavRouteStep {
     private final NavIntVal distance;
     private final NavIntVal duration;
@@ -34,30 +26,16 @@ public class NavRouteStep {
     private final NavPolyline polyline;
     private final String travelMode;
 
-    public NavRouteStep(JSONObject json) {
-        this.distance = new NavIntVal(Utils.Json.getJsonObjectForKey(json, "distance"));
-        this.duration = new NavIntVal(Utils.Json.getJsonObjectForKey(json, "duration"));
-        this.startLocation = new NavCoord(Utils.Json.getJsonObjectForKey(json, "start_location"));
-        this.endLocation = new NavCoord(Utils.Json.getJsonObjectForKey(json, "end_location"));
-        this.htmlInstructions = Utils.Json.getStringValueForKey(json, "html_instructions");
-        this.maneuver = Utils.Json.getStringValueForKey(json, "maneuver");
-        this.polyline = new NavPolyline(Utils.Json.getJsonObjectForKey(json, "polyline"));
-        this.travelMode = Utils.Json.getStringValueForKey(json, "travel_mode");
-    }
-
-    public static List<NavRouteStep> createNavRouteStepList(JSONArray jsonArray) {
-        List<NavRouteStep> steps = null;
-        if (jsonArray != null) {
-            steps = new ArrayList<>();
-            int count = jsonArray.length();
-            for (int i = 0; i < count; i++) {
-                JSONObject stepJson = Utils.Json.getJsonObjectForIndex(jsonArray, i);
-                if (stepJson != null) {
-                    steps.add(new NavRouteStep(stepJson));
-                }
-            }
-        }
-        return steps;
+    public NavRouteStep(NavIntVal distance, NavIntVal duration, NavCoord startLocation, NavCoord endLocation,
+                        String htmlInstructions, String maneuver, NavPolyline polyline, String travelMode) {
+        this.distance = distance;
+        this.duration = duration;
+        this.startLocation = startLocation;
+        this.endLocation = endLocation;
+        this.htmlInstructions = htmlInstructions;
+        this.maneuver = maneuver;
+        this.polyline = polyline;
+        this.travelMode = travelMode;
     }
 
     public NavIntVal getDistance() {
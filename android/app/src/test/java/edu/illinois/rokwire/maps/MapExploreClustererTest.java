@@ -0,0 +1,116 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.rokwire.maps;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import edu.illinois.rokwire.Utils;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the explores grouping of {@link MapExploreClusterer} against the grouping rule applied by scanning every earlier explore.
+ */
+public class MapExploreClustererTest {
+
+    private static final double SOUTH = 40.08d;
+    private static final double WEST = -88.26d;
+    private static final double SPAN_DEGREES = 0.05d;
+
+    @Test
+    public void joinsTheGroupOfAnyMemberWithinThreshold() {
+        // Explores 0.6 threshold apart on a line: the third is within the threshold of the second only
+        double threshold = 100.0d;
+        double step = 0.6d * threshold / Utils.Location.getMetersPerDegreeLatitude(SOUTH);
+        double[] latitudes = {SOUTH, SOUTH + step, SOUTH + 2.0d * step};
+        double[] longitudes = {WEST, WEST, WEST};
+        List<List<Integer>> groups = groupPoints(latitudes, longitudes, new Integer[3], threshold);
+        assertEquals(Arrays.asList(Arrays.asList(0, 1, 2)), groups);
+    }
+
+    @Test
+    public void joinsTheEarliestGroupOnTheSameFloor() {
+        double threshold = 100.0d;
+        double step = 0.6d * threshold / Utils.Location.getMetersPerDegreeLatitude(SOUTH);
+        // The middle explore is within the threshold of both groups started before it, the floor 2 explore of neither
+        double[] latitudes = {SOUTH, SOUTH + 2.0d * step, SOUTH + step, SOUTH + step};
+        double[] longitudes = {WEST, WEST, WEST, WEST};
+        Integer[] floors = {1, 1, 1, 2};
+        List<List<Integer>> groups = groupPoints(latitudes, longitudes, floors, threshold);
+        assertEquals(Arrays.asList(Arrays.asList(0, 2), Arrays.asList(1), Arrays.asList(3)), groups);
+    }
+
+    @Test
+    public void groupingMatchesScan() {
+        for (int pointsCount : new int[]{0, 1, 50, 2000}) {
+            Random random = new Random(pointsCount);
+            double[] latitudes = new double[pointsCount];
+            double[] longitudes = new double[pointsCount];
+            Integer[] floors = new Integer[pointsCount];
+            for (int pointIndex = 0; pointIndex < pointsCount; pointIndex++) {
+                latitudes[pointIndex] = SOUTH + random.nextDouble() * SPAN_DEGREES;
+                longitudes[pointIndex] = WEST + random.nextDouble() * SPAN_DEGREES;
+                int floor = random.nextInt(4);
+                floors[pointIndex] = (floor > 0) ? floor : null;
+            }
+            // From no groups to a single group per floor
+            for (double threshold : new double[]{1.0d, 50.0d, 200.0d, 1000.0d, 100000.0d}) {
+                assertEquals(scanGroupPoints(latitudes, longitudes, floors, threshold), groupPoints(latitudes, longitudes, floors, threshold));
+            }
+        }
+    }
+
+    private static List<List<Integer>> groupPoints(double[] latitudes, double[] longitudes, Integer[] floors, double threshold) {
+        MapPointArray points = new MapPointArray(latitudes.length);
+        int[] ids = new int[latitudes.length];
+        for (int pointIndex = 0; pointIndex < latitudes.length; pointIndex++) {
+            ids[pointIndex] = points.add(latitudes[pointIndex], longitudes[pointIndex]);
+        }
+        return MapExploreClusterer.groupPoints(latitudes, longitudes, floors, ids, MapSpatialIndex.build(points), threshold);
+    }
+
+    private static List<List<Integer>> scanGroupPoints(double[] latitudes, double[] longitudes, Integer[] floors, double threshold) {
+        int pointsCount = latitudes.length;
+        int[] groupIndexes = new int[pointsCount];
+        List<List<Integer>> groups = new ArrayList<>();
+        for (int pointIndex = 0; pointIndex < pointsCount; pointIndex++) {
+            double metersPerDegreeLatitude = Utils.Location.getMetersPerDegreeLatitude(latitudes[pointIndex]);
+            double metersPerDegreeLongitude = Utils.Location.getMetersPerDegreeLongitude(latitudes[pointIndex]);
+            int groupIndex = -1;
+            for (int earlierIndex = 0; earlierIndex < pointIndex; earlierIndex++) {
+                double distanceSquared = Utils.Location.getDistanceSquared(latitudes[pointIndex], longitudes[pointIndex],
+                        latitudes[earlierIndex], longitudes[earlierIndex], metersPerDegreeLatitude, metersPerDegreeLongitude);
+                if ((distanceSquared <= threshold * threshold) && ((floors[pointIndex] == null) ? (floors[earlierIndex] == null) : floors[pointIndex].equals(floors[earlierIndex])) &&
+                        ((groupIndex < 0) || (groupIndexes[earlierIndex] < groupIndex))) {
+                    groupIndex = groupIndexes[earlierIndex];
+                }
+            }
+            if (groupIndex < 0) {
+                groupIndex = groups.size();
+                groups.add(new ArrayList<>());
+            }
+            groups.get(groupIndex).add(pointIndex);
+            groupIndexes[pointIndex] = groupIndex;
+        }
+        return groups;
+    }
+}
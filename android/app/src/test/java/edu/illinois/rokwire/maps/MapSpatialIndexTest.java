@@ -0,0 +1,255 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.rokwire.maps;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks {@link MapSpatialIndex} queries against the linear scans of {@link MapPointArray}, and compares their speed when benchmarks are enabled.
+ */
+public class MapSpatialIndexTest {
+
+    // Campus sized area around Urbana-Champaign
+    private static final double SOUTH = 40.08d;
+    private static final double WEST = -88.26d;
+    private static final double SPAN_DEGREES = 0.05d;
+
+    private static final int QUERIES_COUNT = 200;
+    private static final int K = 8;
+
+    @Test
+    public void findWithinRadiusMatchesLinearScan() {
+        for (int pointsCount : new int[]{0, 1, 7, 100, 5000}) {
+            MapPointArray points = buildPoints(pointsCount, new Random(pointsCount));
+            MapSpatialIndex index = MapSpatialIndex.build(points);
+            Random random = new Random(1);
+            int[] indexIds = new int[pointsCount + 1];
+            int[] scanIds = new int[pointsCount + 1];
+            for (int query = 0; query < QUERIES_COUNT; query++) {
+                double latitude = randomLatitude(random);
+                double longitude = randomLongitude(random);
+                double radius = 10.0d + random.nextDouble() * 1000.0d;
+                int indexCount = index.findWithinRadius(latitude, longitude, radius, indexIds);
+                int scanCount = points.findWithinRadius(latitude, longitude, radius, scanIds);
+                assertEquals(scanCount, indexCount);
+                // Scans report in index order, the tree in no particular order
+                Arrays.sort(indexIds, 0, indexCount);
+                assertArrayEquals(Arrays.copyOf(scanIds, scanCount), Arrays.copyOf(indexIds, indexCount));
+            }
+        }
+    }
+
+    @Test
+    public void findKNearestMatchesLinearScan() {
+        for (int pointsCount : new int[]{0, 1, 7, 100, 5000}) {
+            MapPointArray points = buildPoints(pointsCount, new Random(pointsCount));
+            MapSpatialIndex index = MapSpatialIndex.build(points);
+            Random random = new Random(2);
+            int[] indexIds = new int[K];
+            double[] indexDistances = new double[K];
+            int[] scanIds = new int[K];
+            double[] scanDistances = new double[K];
+            for (int query = 0; query < QUERIES_COUNT; query++) {
+                double latitude = randomLatitude(random);
+                double longitude = randomLongitude(random);
+                int indexCount = index.findKNearest(latitude, longitude, indexIds, indexDistances);
+                int scanCount = points.findKNearest(latitude, longitude, scanIds, scanDistances);
+                assertEquals(Math.min(K, pointsCount), indexCount);
+                assertEquals(scanCount, indexCount);
+                for (int position = 0; position < indexCount; position++) {
+                    // Ids may differ only between points at the same distance
+                    assertEquals(scanDistances[position], indexDistances[position], 1E-9);
+                }
+                int nearestId = (pointsCount > 0) ? scanIds[0] : -1;
+                assertEquals(nearestId, points.findNearest(latitude, longitude));
+                assertEquals(nearestId, index.findNearest(latitude, longitude));
+            }
+        }
+    }
+
+    @Test
+    public void findKNearestWithEmptyOutputFindsNothing() {
+        MapPointArray points = buildPoints(100, new Random(3));
+        assertEquals(0, points.findKNearest(SOUTH, WEST, new int[0], new double[0]));
+        assertEquals(0, MapSpatialIndex.build(points).findKNearest(SOUTH, WEST, new int[0], new double[0]));
+    }
+
+    @Test
+    public void findInBoundsMatchesLinearScan() {
+        int pointsCount = 5000;
+        MapPointArray points = buildPoints(pointsCount, new Random(4));
+        MapSpatialIndex index = MapSpatialIndex.build(points);
+        Random random = new Random(5);
+        int[] indexIds = new int[pointsCount];
+        for (int query = 0; query < QUERIES_COUNT; query++) {
+            double south = randomLatitude(random);
+            double west = randomLongitude(random);
+            double north = south + random.nextDouble() * SPAN_DEGREES / 4.0d;
+            double east = west + random.nextDouble() * SPAN_DEGREES / 4.0d;
+            int indexCount = index.findInBounds(south, west, north, east, indexIds);
+            int[] scanIds = new int[pointsCount];
+            int scanCount = 0;
+            for (int id = 0; id < pointsCount; id++) {
+                double latitude = points.getLatitude(id);
+                double longitude = points.getLongitude(id);
+                if ((south <= latitude) && (latitude <= north) && (west <= longitude) && (longitude <= east)) {
+                    scanIds[scanCount++] = id;
+                }
+            }
+            Arrays.sort(indexIds, 0, indexCount);
+            assertArrayEquals(Arrays.copyOf(scanIds, scanCount), Arrays.copyOf(indexIds, indexCount));
+        }
+    }
+
+    @Test
+    public void findInBoundsAcrossAntimeridian() {
+        MapPointArray points = new MapPointArray(4);
+        points.add(10.0d, 179.5d);
+        points.add(10.0d, -179.5d);
+        points.add(10.0d, 0.0d);
+        points.add(30.0d, 179.5d);
+        int[] ids = new int[4];
+        int count = MapSpatialIndex.build(points).findInBounds(0.0d, 179.0d, 20.0d, -179.0d, ids);
+        Arrays.sort(ids, 0, count);
+        assertArrayEquals(new int[]{0, 1}, Arrays.copyOf(ids, count));
+    }
+
+    /**
+     * Times radius and k-nearest queries of the tree and of the linear scans. Campus radius queries find a handful of points,
+     * the tree should be well ahead from some thousand points on; the results are printed, not asserted.
+     */
+    @Test
+    public void findLowestLabelMatchesRadiusQuery() {
+        for (int pointsCount : new int[]{0, 1, 7, 100, 5000}) {
+            MapPointArray points = buildPoints(pointsCount, new Random(pointsCount));
+            MapSpatialIndex index = MapSpatialIndex.build(points);
+            MapSpatialIndex.PointLabels pointLabels = index.newPointLabels();
+            int[] labels = new int[pointsCount];
+            Arrays.fill(labels, MapSpatialIndex.PointLabels.NO_LABEL);
+            Random random = new Random(3);
+            int[] ids = new int[pointsCount + 1];
+            for (int query = 0; query < QUERIES_COUNT; query++) {
+                // Labels a few more points, some of them lowered again
+                for (int labelled = 0; (labelled < pointsCount / QUERIES_COUNT + 1) && (pointsCount > 0); labelled++) {
+                    int id = random.nextInt(pointsCount);
+                    int label = random.nextInt(1000);
+                    labels[id] = (labels[id] == MapSpatialIndex.PointLabels.NO_LABEL) ? label : Math.min(labels[id], label);
+                    pointLabels.setLabel(id, label);
+                }
+                double latitude = randomLatitude(random);
+                double longitude = randomLongitude(random);
+                // Up to radii spanning the whole area
+                double radius = 10.0d + random.nextDouble() * ((query % 2 == 0) ? 1000.0d : 10000.0d);
+                int count = index.findWithinRadius(latitude, longitude, radius, ids);
+                int lowestLabel = MapSpatialIndex.PointLabels.NO_LABEL;
+                for (int position = 0; position < count; position++) {
+                    int label = labels[ids[position]];
+                    if ((label != MapSpatialIndex.PointLabels.NO_LABEL) && ((lowestLabel == MapSpatialIndex.PointLabels.NO_LABEL) || (label < lowestLabel))) {
+                        lowestLabel = label;
+                    }
+                }
+                assertEquals(lowestLabel, pointLabels.findLowestWithinRadius(latitude, longitude, radius));
+            }
+        }
+    }
+
+    /**
+     * Prints timings only, it runs when the benchmarks system property is set: ./gradlew testDebugUnitTest -Pbenchmarks
+     */
+    @Test
+    public void benchmarkAgainstLinearScan() {
+        Assume.assumeTrue("Benchmarks are not enabled", Boolean.getBoolean("benchmarks"));
+        for (int pointsCount : new int[]{1000, 10000, 100000}) {
+            MapPointArray points = buildPoints(pointsCount, new Random(pointsCount));
+            long buildStartTime = System.nanoTime();
+            MapSpatialIndex index = MapSpatialIndex.build(points);
+            long buildTime = System.nanoTime() - buildStartTime;
+
+            int queriesCount = Math.max(100, 1000000 / pointsCount);
+            double[] latitudes = new double[queriesCount];
+            double[] longitudes = new double[queriesCount];
+            Random random = new Random(6);
+            for (int query = 0; query < queriesCount; query++) {
+                latitudes[query] = randomLatitude(random);
+                longitudes[query] = randomLongitude(random);
+            }
+            int[] ids = new int[pointsCount];
+            int[] nearestIds = new int[K];
+            double[] nearestDistances = new double[K];
+            double radius = 50.0d;
+
+            // Warm up both, then measure
+            long[] times = new long[4];
+            long[] counts = new long[2];
+            for (int round = 0; round < 2; round++) {
+                long startTime = System.nanoTime();
+                long indexFound = 0;
+                for (int query = 0; query < queriesCount; query++) {
+                    indexFound += index.findWithinRadius(latitudes[query], longitudes[query], radius, ids);
+                }
+                times[0] = System.nanoTime() - startTime;
+                startTime = System.nanoTime();
+                long scanFound = 0;
+                for (int query = 0; query < queriesCount; query++) {
+                    scanFound += points.findWithinRadius(latitudes[query], longitudes[query], radius, ids);
+                }
+                times[1] = System.nanoTime() - startTime;
+                startTime = System.nanoTime();
+                for (int query = 0; query < queriesCount; query++) {
+                    index.findKNearest(latitudes[query], longitudes[query], nearestIds, nearestDistances);
+                }
+                times[2] = System.nanoTime() - startTime;
+                startTime = System.nanoTime();
+                for (int query = 0; query < queriesCount; query++) {
+                    points.findKNearest(latitudes[query], longitudes[query], nearestIds, nearestDistances);
+                }
+                times[3] = System.nanoTime() - startTime;
+                counts[0] = indexFound;
+                counts[1] = scanFound;
+            }
+            assertEquals(counts[1], counts[0]);
+            System.out.println(String.format(Locale.US,
+                    "%,d points, build %.2f ms; per query: within %.0f m tree %.2f us, scan %.2f us; %d nearest tree %.2f us, scan %.2f us",
+                    pointsCount, buildTime / 1E6, radius, times[0] / 1E3 / queriesCount, times[1] / 1E3 / queriesCount,
+                    K, times[2] / 1E3 / queriesCount, times[3] / 1E3 / queriesCount));
+        }
+    }
+
+    private static MapPointArray buildPoints(int count, Random random) {
+        MapPointArray points = new MapPointArray(count);
+        for (int index = 0; index < count; index++) {
+            points.add(randomLatitude(random), randomLongitude(random));
+        }
+        return points;
+    }
+
+    private static double randomLatitude(Random random) {
+        return SOUTH + random.nextDouble() * SPAN_DEGREES;
+    }
+
+    private static double randomLongitude(Random random) {
+        return WEST + random.nextDouble() * SPAN_DEGREES;
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.rokwire.navigation;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Path searches of {@link NavGraphRouter} and {@link NavHierarchyRouter} over the walking fixture of {@link NavTestGraphs},
+ * checked against a plain Dijkstra search.
+ */
+public class NavGraphRouterTest {
+
+    private static NavGraph graph;
+    private static NavGraph hierarchyGraph;
+
+    @BeforeClass
+    public static void openGraphs() throws IOException {
+        graph = NavTestGraphs.open(NavTestGraphs.WALKING_GRAPH, false);
+        hierarchyGraph = NavTestGraphs.open(NavTestGraphs.WALKING_GRAPH, true);
+    }
+
+    @Test
+    public void findsShortestPath() {
+        NavGraphRouter router = new NavGraphRouter(graph);
+        // Along Café Walk to Mathews Avenue; the unnamed paths around the east end are longer
+        assertArrayEquals(new int[]{0, 4, 5, 6, 10}, router.findPath(0, 10));
+        assertEquals(getPathLength(graph, new int[]{0, 4, 5, 6, 10}), router.getPathLength(10), 0.01d);
+        assertArrayEquals(new int[]{10, 6, 5, 4, 0}, router.findPath(10, 0));
+        assertArrayEquals(new int[]{3, 7, 11}, router.findPath(3, 11));
+    }
+
+    @Test
+    public void findsPathToSource() {
+        NavGraphRouter router = new NavGraphRouter(graph);
+        assertArrayEquals(new int[]{5}, router.findPath(5, 5));
+        assertEquals(0.0d, router.getPathLength(5), 0.0d);
+    }
+
+    @Test
+    public void findsNoPathToUnreachableTarget() {
+        NavGraphRouter router = new NavGraphRouter(graph);
+        assertNull(router.findPath(0, 13));
+        assertNull(router.findPath(12, 3));
+        assertEquals(Double.POSITIVE_INFINITY, router.getPathLength(3), 0.0d);
+        // The router state is reused by the following searches
+        assertNotNull(router.findPath(12, 13));
+    }
+
+    @Test
+    public void pathLengthsMatchDijkstra() {
+        NavGraphRouter router = new NavGraphRouter(graph);
+        int nodesCount = graph.getNodesCount();
+        for (int source = 0; source < nodesCount; source++) {
+            double[] distances = findDistances(graph, source);
+            for (int target = 0; target < nodesCount; target++) {
+                int[] path = router.findPath(source, target);
+                if (Double.isInfinite(distances[target])) {
+                    assertNull(path);
+                } else {
+                    assertNotNull(path);
+                    assertEquals(source, path[0]);
+                    assertEquals(target, path[path.length - 1]);
+                    assertEquals(distances[target], getPathLength(graph, path), 0.01d);
+                    assertEquals(distances[target], router.getPathLength(target), 0.01d);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void hierarchyFindsPathsOfTheSameLength() {
+        assertFalse(graph.hasHierarchy());
+        assertTrue(hierarchyGraph.hasHierarchy());
+        NavGraphRouter router = new NavGraphRouter(graph);
+        NavHierarchyRouter hierarchyRouter = new NavHierarchyRouter(hierarchyGraph);
+        int nodesCount = graph.getNodesCount();
+        for (int source = 0; source < nodesCount; source++) {
+            for (int target = 0; target < nodesCount; target++) {
+                int[] path = router.findPath(source, target);
+                int[] hierarchyPath = hierarchyRouter.findPath(source, target);
+                if (path == null) {
+                    assertNull(hierarchyPath);
+                } else {
+                    // Either shortest path of equal length, unpacked to the original edges
+                    assertNotNull(hierarchyPath);
+                    assertEquals(source, hierarchyPath[0]);
+                    assertEquals(target, hierarchyPath[hierarchyPath.length - 1]);
+                    assertEquals(router.getPathLength(target), getPathLength(graph, hierarchyPath), 0.01d);
+                    assertEquals(router.getPathLength(target), hierarchyRouter.getPathLength(), 0.01d);
+                }
+            }
+        }
+    }
+
+    private static double[] findDistances(NavGraph graph, int source) {
+        int nodesCount = graph.getNodesCount();
+        double[] distances = new double[nodesCount];
+        boolean[] settled = new boolean[nodesCount];
+        Arrays.fill(distances, Double.POSITIVE_INFINITY);
+        distances[source] = 0.0d;
+        while (true) {
+            int node = -1;
+            for (int candidate = 0; candidate < nodesCount; candidate++) {
+                if (!settled[candidate] && !Double.isInfinite(distances[candidate]) && ((node == -1) || (distances[candidate] < distances[node]))) {
+                    node = candidate;
+                }
+            }
+            if (node == -1) {
+                return distances;
+            }
+            settled[node] = true;
+            for (int edge = graph.getEdgesFrom(node); edge < graph.getEdgesTo(node); edge++) {
+                int target = graph.getEdgeTarget(edge);
+                distances[target] = Math.min(distances[target], distances[node] + graph.getEdgeLength(edge));
+            }
+        }
+    }
+
+    private static double getPathLength(NavGraph graph, int[] path) {
+        double length = 0.0d;
+        for (int index = 1; index < path.length; index++) {
+            double edgeLength = Double.POSITIVE_INFINITY;
+            for (int edge = graph.getEdgesFrom(path[index - 1]); edge < graph.getEdgesTo(path[index - 1]); edge++) {
+                if (graph.getEdgeTarget(edge) == path[index]) {
+                    edgeLength = Math.min(edgeLength, graph.getEdgeLength(edge));
+                }
+            }
+            length += edgeLength;
+        }
+        return length;
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.rokwire.navigation;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import edu.illinois.rokwire.Utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Round trip of a graph through scripts/navigation/NavGraphCompiler.java and {@link NavGraph#open}: a jittered campus grid
+ * with some paths left out, written as the compiler's JSON input, compiled with and without the hierarchy and read back.
+ * Corrupted copies of the compiled graph must be rejected when opened.
+ */
+public class NavGraphTest {
+
+    private static final int GRID_SIZE = 12;
+    private static final String[] NAMES = {"Green Street", "Café Walk", "北 Quad", "Quad \"South\" Walk", "Bike Path 🚲"};
+
+    private static double[] latitudes;
+    private static double[] longitudes;
+    private static List<int[]> paths;
+    private static byte[] graphBytes;
+    private static NavGraph graph;
+    private static NavGraph plainGraph;
+
+    @BeforeClass
+    public static void compileGraph() throws IOException {
+        Random random = new Random(7);
+        int nodesCount = GRID_SIZE * GRID_SIZE;
+        latitudes = new double[nodesCount];
+        longitudes = new double[nodesCount];
+        for (int node = 0; node < nodesCount; node++) {
+            // Written to the JSON with 7 decimals
+            latitudes[node] = Math.round((40.1000d + (node / GRID_SIZE) * 0.0008d + random.nextDouble() * 0.0002d) * 1E7) / 1E7;
+            longitudes[node] = Math.round((-88.2400d + (node % GRID_SIZE) * 0.0010d + random.nextDouble() * 0.0002d) * 1E7) / 1E7;
+        }
+        paths = new ArrayList<>();
+        for (int node = 0; node < nodesCount; node++) {
+            int row = node / GRID_SIZE;
+            int column = node % GRID_SIZE;
+            if ((column + 1 < GRID_SIZE) && (random.nextInt(10) > 0)) {
+                paths.add(new int[]{node, node + 1, (random.nextInt(3) > 0) ? row % NAMES.length : -1});
+            }
+            if ((row + 1 < GRID_SIZE) && (random.nextInt(10) > 0)) {
+                paths.add(new int[]{node, node + GRID_SIZE, (random.nextInt(3) > 0) ? column % NAMES.length : -1});
+            }
+        }
+        File jsonFile = File.createTempFile("nav_graph", ".json");
+        jsonFile.deleteOnExit();
+        try (Writer writer = new OutputStreamWriter(Files.newOutputStream(jsonFile.toPath()), Charset.forName("UTF-8"))) {
+            writer.write(buildJson());
+        }
+        File graphFile = NavTestGraphs.compile(jsonFile, true);
+        graphBytes = Files.readAllBytes(graphFile.toPath());
+        graph = NavGraph.open(NavTestGraphs.map(graphFile));
+        plainGraph = NavGraph.open(NavTestGraphs.map(NavTestGraphs.compile(jsonFile, false)));
+    }
+
+    @Test
+    public void readsNodes() {
+        for (NavGraph openGraph : new NavGraph[]{graph, plainGraph}) {
+            assertEquals(latitudes.length, openGraph.getNodesCount());
+            for (int node = 0; node < latitudes.length; node++) {
+                assertEquals(latitudes[node], openGraph.getLatitude(node), 1E-9);
+                assertEquals(longitudes[node], openGraph.getLongitude(node), 1E-9);
+            }
+        }
+    }
+
+    @Test
+    public void readsEdgesOfEveryPathFromBothEnds() {
+        for (NavGraph openGraph : new NavGraph[]{graph, plainGraph}) {
+            // Edges of a node are stored in the order of the paths
+            int[] nextEdges = new int[latitudes.length];
+            for (int node = 0; node < latitudes.length; node++) {
+                nextEdges[node] = openGraph.getEdgesFrom(node);
+            }
+            for (int[] path : paths) {
+                double length = Utils.Location.getHaversineDistance(latitudes[path[0]], longitudes[path[0]], latitudes[path[1]], longitudes[path[1]]);
+                for (int end = 0; end < 2; end++) {
+                    int edge = nextEdges[path[end]]++;
+                    assertEquals(path[1 - end], openGraph.getEdgeTarget(edge));
+                    // Lengths are stored in cm
+                    assertEquals(length, openGraph.getEdgeLength(edge), 0.0051d);
+                    assertEquals(path[2], openGraph.getEdgeNameIndex(edge));
+                    assertEquals((path[2] >= 0) ? NAMES[path[2]] : null, openGraph.getEdgeName(edge));
+                }
+            }
+            for (int node = 0; node < latitudes.length; node++) {
+                assertEquals(openGraph.getEdgesTo(node), nextEdges[node]);
+            }
+        }
+    }
+
+    @Test
+    public void readsUpEdgesOfTheHierarchy() {
+        assertTrue(graph.hasHierarchy());
+        assertFalse(plainGraph.hasHierarchy());
+        int upEdgesCount = 0;
+        int shortcutsCount = 0;
+        for (int node = 0; node < graph.getNodesCount(); node++) {
+            assertEquals(0, plainGraph.getUpEdgesTo(node) - plainGraph.getUpEdgesFrom(node));
+            for (int upEdge = graph.getUpEdgesFrom(node); upEdge < graph.getUpEdgesTo(node); upEdge++) {
+                upEdgesCount++;
+                int target = graph.getUpEdgeTarget(upEdge);
+                int middle = graph.getUpEdgeMiddle(upEdge);
+                if (middle == -1) {
+                    // An original edge, as long as the path
+                    assertEquals(findEdgeLengthCentimeters(node, target), graph.getUpEdgeLength(upEdge));
+                } else {
+                    // A shortcut over a lower ranked node: both halves are up edges of the middle node
+                    shortcutsCount++;
+                    assertEquals(graph.getUpEdgeLength(upEdge), findUpEdgeLength(middle, node) + findUpEdgeLength(middle, target));
+                }
+            }
+        }
+        // Every path is an up edge of one of its ends
+        assertTrue(upEdgesCount >= paths.size());
+        assertTrue(shortcutsCount > 0);
+    }
+
+    @Test
+    public void opensWithoutModifyingTheBuffer() throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(graphBytes);
+        buffer.position(16);
+        NavGraph openGraph = NavGraph.open(buffer);
+        assertEquals(16, buffer.position());
+        assertEquals(graph.getNodesCount(), openGraph.getNodesCount());
+    }
+
+    @Test
+    public void rejectsBadMagic() {
+        byte[] bytes = graphBytes.clone();
+        bytes[0] = 'X';
+        assertRejected(bytes);
+        assertRejected(new byte[0]);
+        assertRejected("{\"nodes\": []}".getBytes(Charset.forName("UTF-8")));
+    }
+
+    @Test
+    public void rejectsOtherVersions() {
+        assertRejected(withInt(graphBytes, 4, 2));
+        assertRejected(withInt(graphBytes, 4, 0));
+    }
+
+    @Test
+    public void rejectsTruncatedGraph() throws IOException {
+        assertRejected(Arrays.copyOf(graphBytes, 16));
+        assertRejected(Arrays.copyOf(graphBytes, 32));
+        assertRejected(Arrays.copyOf(graphBytes, graphBytes.length / 2));
+        // Padding after the string data is optional, the last byte of the string data is not
+        ByteBuffer header = ByteBuffer.wrap(graphBytes);
+        int dataLength = 32 + (header.getInt(8) + 1) * 16 + header.getInt(12) * 12 + header.getInt(16) * 12 +
+                (header.getInt(20) + 1) * 4 + header.getInt(24);
+        assertEquals(graphBytes.length, (dataLength + 3) / 4 * 4);
+        NavGraph.open(ByteBuffer.wrap(Arrays.copyOf(graphBytes, dataLength)));
+        assertRejected(Arrays.copyOf(graphBytes, dataLength - 1));
+    }
+
+    @Test
+    public void rejectsInvalidCounts() {
+        assertRejected(withInt(graphBytes, 8, -1));
+        // More nodes than the data holds
+        assertRejected(withInt(graphBytes, 8, graph.getNodesCount() * 100));
+    }
+
+    @Test
+    public void rejectsBrokenEdgeRangeSentinels() {
+        int nodesCount = graph.getNodesCount();
+        int edgesCount = ByteBuffer.wrap(graphBytes).getInt(12);
+        int upEdgesCount = ByteBuffer.wrap(graphBytes).getInt(16);
+        int firstRecordOffset = 32;
+        int lastRecordOffset = 32 + 16 * nodesCount;
+        assertRejected(withInt(graphBytes, firstRecordOffset + 8, 1));
+        assertRejected(withInt(graphBytes, firstRecordOffset + 12, 1));
+        assertRejected(withInt(graphBytes, lastRecordOffset + 8, edgesCount - 1));
+        assertRejected(withInt(graphBytes, lastRecordOffset + 12, upEdgesCount + 1));
+    }
+
+    private static void assertRejected(byte[] bytes) {
+        assertThrows(IOException.class, () -> NavGraph.open(ByteBuffer.wrap(bytes)));
+    }
+
+    private static byte[] withInt(byte[] bytes, int offset, int value) {
+        byte[] changedBytes = bytes.clone();
+        ByteBuffer.wrap(changedBytes).putInt(offset, value);
+        return changedBytes;
+    }
+
+    private static int findEdgeLengthCentimeters(int node, int target) {
+        for (int edge = graph.getEdgesFrom(node); edge < graph.getEdgesTo(node); edge++) {
+            if (graph.getEdgeTarget(edge) == target) {
+                return (int) Math.round(graph.getEdgeLength(edge) * 100.0d);
+            }
+        }
+        throw new AssertionError("Missing edge " + node + " - " + target);
+    }
+
+    private static int findUpEdgeLength(int node, int target) {
+        for (int upEdge = graph.getUpEdgesFrom(node); upEdge < graph.getUpEdgesTo(node); upEdge++) {
+            if (graph.getUpEdgeTarget(upEdge) == target) {
+                return graph.getUpEdgeLength(upEdge);
+            }
+        }
+        throw new AssertionError("Missing up edge " + node + " - " + target);
+    }
+
+    private static String buildJson() {
+        StringBuilder json = new StringBuilder("{\"names\": [");
+        for (int index = 0; index < NAMES.length; index++) {
+            json.append((index > 0) ? ", " : "").append('"').append(NAMES[index].replace("\"", "\\\"")).append('"');
+        }
+        json.append("],\n\"nodes\": [");
+        for (int node = 0; node < latitudes.length; node++) {
+            json.append((node > 0) ? ", " : "").append(String.format(Locale.US, "[%.7f, %.7f]", latitudes[node], longitudes[node]));
+        }
+        json.append("],\n\"edges\": [");
+        for (int index = 0; index < paths.size(); index++) {
+            int[] path = paths.get(index);
+            json.append((index > 0) ? ", " : "").append('[').append(path[0]).append(", ").append(path[1]);
+            if (path[2] >= 0) {
+                json.append(", ").append(path[2]);
+            }
+            json.append(']');
+        }
+        return json.append("]}\n").toString();
+    }
+}
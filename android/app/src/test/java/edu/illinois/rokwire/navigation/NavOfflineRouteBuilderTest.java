@@ -0,0 +1,203 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.rokwire.navigation;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import edu.illinois.rokwire.navigation.model.NavCoord;
+import edu.illinois.rokwire.navigation.model.NavRoute;
+import edu.illinois.rokwire.navigation.model.NavRouteLeg;
+import edu.illinois.rokwire.navigation.model.NavRouteStep;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Routes of {@link NavOfflineRouteBuilder} over the walking fixture of {@link NavTestGraphs}, with and without its hierarchy.
+ * Instructions are "maneuver|name" here, the app takes them from its strings.
+ */
+public class NavOfflineRouteBuilderTest {
+
+    // Meters per degree of latitude at the fixture
+    private static final double METERS_PER_DEGREE_LATITUDE = 111030.0d;
+
+    private static NavGraph graph;
+    private static NavGraph hierarchyGraph;
+
+    @BeforeClass
+    public static void openGraphs() throws IOException {
+        graph = NavTestGraphs.open(NavTestGraphs.WALKING_GRAPH, false);
+        hierarchyGraph = NavTestGraphs.open(NavTestGraphs.WALKING_GRAPH, true);
+    }
+
+    @Test
+    public void splitsStepsAtTurnsAndNameChanges() {
+        for (NavGraph routeGraph : new NavGraph[]{graph, hierarchyGraph}) {
+            NavRoute route = new NavOfflineRouteBuilder(routeGraph, new TestTexts()).findRoute(getNodeCoord(0), getNodeCoord(10));
+            assertNotNull(route);
+            List<NavRouteStep> steps = getSteps(route);
+            assertEquals(3, steps.size());
+            // North along Wright Street, right onto Café Walk on past node 5, left onto Mathews Avenue
+            assertStep(steps.get(0), null, "Wright Street", 0, 4);
+            assertStep(steps.get(1), "turn-right", "Café Walk", 4, 6);
+            assertStep(steps.get(2), "turn-left", "Mathews Avenue", 6, 10);
+            assertEquals("WALKING", steps.get(0).getTravelMode());
+            assertEquals("Café Walk", route.getSummary());
+        }
+    }
+
+    @Test
+    public void continuesStraightThroughIntersections() {
+        // Node 6 is an intersection, the path goes straight through it on the same name
+        NavRoute route = new NavOfflineRouteBuilder(graph, new TestTexts()).findRoute(getNodeCoord(4), getNodeCoord(7));
+        assertNotNull(route);
+        List<NavRouteStep> steps = getSteps(route);
+        assertEquals(1, steps.size());
+        assertStep(steps.get(0), null, "Café Walk", 4, 7);
+    }
+
+    @Test
+    public void splitsStepsAtTurnsOnUnnamedPaths() {
+        // From Green Street left onto the unnamed path at node 3, straight past node 7 where Café Walk ends
+        NavRoute route = new NavOfflineRouteBuilder(graph, new TestTexts()).findRoute(getNodeCoord(2), getNodeCoord(11));
+        assertNotNull(route);
+        List<NavRouteStep> steps = getSteps(route);
+        assertEquals(2, steps.size());
+        assertStep(steps.get(0), null, "Green Street", 2, 3);
+        assertStep(steps.get(1), "turn-left", null, 3, 11);
+    }
+
+    @Test
+    public void measuresDistanceAndDuration() {
+        NavRoute route = new NavOfflineRouteBuilder(graph, new TestTexts()).findRoute(getNodeCoord(0), getNodeCoord(10));
+        assertNotNull(route);
+        NavRouteLeg leg = route.getLegs().get(0);
+        NavGraphRouter router = new NavGraphRouter(graph);
+        router.findPath(0, 10);
+        double length = router.getPathLength(10);
+        // Polyline points are rounded to 1E-5 degrees, about a meter
+        assertEquals(length, leg.getDistance().getValue(), 3.0d);
+        assertEquals(length / NavOfflineRouteBuilder.WALKING_SPEED_METERS_PER_SECOND, leg.getDuration().getValue(), 3.0d);
+        assertEquals(leg.getDistance().getValue() + " m", leg.getDistance().getText());
+        int stepsDistance = 0;
+        for (NavRouteStep step : leg.getSteps()) {
+            stepsDistance += step.getDistance().getValue();
+        }
+        assertEquals(leg.getDistance().getValue(), stepsDistance);
+        assertEquals(5, route.getPolyline().getPointsCount());
+    }
+
+    @Test
+    public void routesFromOffGraphLocationsWithinSnapDistance() {
+        NavOfflineRouteBuilder builder = new NavOfflineRouteBuilder(graph, new TestTexts());
+        // 100 m south of node 0 and 100 m north of node 10
+        NavCoord origin = offsetNorth(getNodeCoord(0), -100.0d);
+        NavCoord destination = offsetNorth(getNodeCoord(10), 100.0d);
+        NavRoute route = builder.findRoute(origin, destination);
+        assertNotNull(route);
+        NavRouteLeg leg = route.getLegs().get(0);
+        assertEquals(origin.getLat(), leg.getStartLocation().getLat(), 0.0d);
+        assertEquals(destination.getLat(), leg.getEndLocation().getLat(), 0.0d);
+        List<NavRouteStep> steps = leg.getSteps();
+        assertEquals(origin.getLat(), steps.get(0).getStartLocation().getLat(), 0.0d);
+        assertEquals(destination.getLat(), steps.get(steps.size() - 1).getEndLocation().getLat(), 0.0d);
+        // The walks to and from the graph are part of the first and the last step
+        assertTrue(leg.getDistance().getValue() > 600);
+    }
+
+    @Test
+    public void leavesLocationsBeyondSnapDistanceToOnlineRouting() {
+        NavOfflineRouteBuilder builder = new NavOfflineRouteBuilder(graph, new TestTexts());
+        double snapDistance = NavOfflineRouteBuilder.MAX_SNAP_DISTANCE_METERS;
+        NavCoord nearOrigin = offsetNorth(getNodeCoord(0), -(snapDistance - 5.0d));
+        NavCoord farOrigin = offsetNorth(getNodeCoord(0), -(snapDistance + 5.0d));
+        assertNotNull(builder.findRoute(nearOrigin, getNodeCoord(3)));
+        assertNull(builder.findRoute(farOrigin, getNodeCoord(3)));
+        assertEquals(0, builder.getSettledCount());
+        assertNull(builder.findRoute(getNodeCoord(3), farOrigin));
+    }
+
+    @Test
+    public void findsNoRouteToUnreachableDestination() {
+        for (NavGraph routeGraph : new NavGraph[]{graph, hierarchyGraph}) {
+            NavOfflineRouteBuilder builder = new NavOfflineRouteBuilder(routeGraph, new TestTexts());
+            assertNull(builder.findRoute(getNodeCoord(0), getNodeCoord(13)));
+            assertTrue(builder.getSettledCount() > 0);
+            assertNotNull(builder.findRoute(getNodeCoord(12), getNodeCoord(13)));
+        }
+    }
+
+    @Test
+    public void routesBetweenLocationsSnappedToTheSameNode() {
+        NavCoord origin = offsetNorth(getNodeCoord(5), 10.0d);
+        NavCoord destination = offsetNorth(getNodeCoord(5), -10.0d);
+        NavRoute route = new NavOfflineRouteBuilder(graph, new TestTexts()).findRoute(origin, destination);
+        assertNotNull(route);
+        List<NavRouteStep> steps = getSteps(route);
+        assertEquals(1, steps.size());
+        assertEquals(20.0d, steps.get(0).getDistance().getValue(), 1.5d);
+    }
+
+    private static void assertStep(NavRouteStep step, String maneuver, String name, int startNode, int endNode) {
+        assertEquals(maneuver, step.getManeuver());
+        assertEquals(maneuver + "|" + name, step.getHtmlInstructions());
+        assertCoord(getNodeCoord(startNode), step.getStartLocation());
+        assertCoord(getNodeCoord(endNode), step.getEndLocation());
+    }
+
+    private static void assertCoord(NavCoord expected, NavCoord actual) {
+        assertEquals(expected.getLat(), actual.getLat(), 1E-7);
+        assertEquals(expected.getLng(), actual.getLng(), 1E-7);
+    }
+
+    private static List<NavRouteStep> getSteps(NavRoute route) {
+        assertEquals(1, route.getLegs().size());
+        return route.getLegs().get(0).getSteps();
+    }
+
+    private static NavCoord getNodeCoord(int node) {
+        return new NavCoord(graph.getLatitude(node), graph.getLongitude(node));
+    }
+
+    private static NavCoord offsetNorth(NavCoord coord, double meters) {
+        return new NavCoord(coord.getLat() + meters / METERS_PER_DEGREE_LATITUDE, coord.getLng());
+    }
+
+    private static class TestTexts implements NavOfflineRouteBuilder.Texts {
+
+        @Override
+        public String getInstructions(String maneuver, String name) {
+            return maneuver + "|" + name;
+        }
+
+        @Override
+        public String formatDistance(int meters) {
+            return meters + " m";
+        }
+
+        @Override
+        public String formatDuration(int seconds) {
+            return seconds + " s";
+        }
+    }
+}
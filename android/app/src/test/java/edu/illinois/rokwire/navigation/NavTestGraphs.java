@@ -0,0 +1,145 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.rokwire.navigation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fixture graphs of the navigation tests, compiled from the JSON test resources by scripts/navigation/NavGraphCompiler.java
+ * as the app asset is. The compiler runs from the source in a separate JVM, which needs Java 11 or newer.
+ * <p>
+ * The walking fixture is a campus block: rows of nodes about 100 m apart along Green Street, Café Walk and 北 Quad,
+ * joined by Wright Street, Mathews Avenue and two unnamed paths, and a separate Island Walk some 900 m north.
+ * Island Walk passes four coincident nodes 14 to 17, joined by paths of 0 cm, and has a longer unnamed detour over node 19.
+ * <pre>
+ *                                        19
+ *                                      /    \
+ *  8     9 -- 10 -- 11        12 -- 13 - 14..17 - 18
+ *  |           |     |
+ *  4 --- 5 --- 6 --- 7
+ *  |                 |
+ *  0 --- 1 --- 2 --- 3
+ * </pre>
+ */
+final class NavTestGraphs {
+
+    static final String WALKING_GRAPH = "navigation/test_walking_graph.json";
+
+    private static final String COMPILER_PATH = "scripts/navigation/NavGraphCompiler.java";
+
+    // Compiled resources by name and hierarchy, the compiler takes a few seconds to start from the source
+    private static final Map<String, File> compiledResources = new HashMap<>();
+
+    private NavTestGraphs() {
+    }
+
+    /**
+     * @return the graph compiled from the JSON resource, with or without its contraction hierarchy
+     */
+    static synchronized NavGraph open(String resourceName, boolean hierarchy) throws IOException {
+        String key = resourceName + (hierarchy ? "" : " --no-hierarchy");
+        File graphFile = compiledResources.get(key);
+        if (graphFile == null) {
+            graphFile = compile(getResourceFile(resourceName), hierarchy);
+            compiledResources.put(key, graphFile);
+        }
+        return NavGraph.open(map(graphFile));
+    }
+
+    /**
+     * @return temporary file with the binary graph compiled from the JSON file, deleted on exit
+     */
+    static File compile(File jsonFile, boolean hierarchy) throws IOException {
+        File graphFile = File.createTempFile("nav_graph", ".bin");
+        graphFile.deleteOnExit();
+        String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+        List<String> command = new ArrayList<>();
+        command.add(java);
+        command.add(findCompiler().getPath());
+        if (!hierarchy) {
+            command.add("--no-hierarchy");
+        }
+        command.add(jsonFile.getPath());
+        command.add(graphFile.getPath());
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        String output = readAll(process.getInputStream());
+        int exitCode;
+        try {
+            exitCode = process.waitFor();
+        } catch (InterruptedException e) {
+            throw new IOException("Graph compiler interrupted", e);
+        }
+        if (exitCode != 0) {
+            throw new IOException("Graph compiler failed with " + exitCode + ": " + output);
+        }
+        return graphFile;
+    }
+
+    static ByteBuffer map(File file) throws IOException {
+        try (RandomAccessFile graphFile = new RandomAccessFile(file, "r")) {
+            return graphFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, graphFile.length());
+        }
+    }
+
+    private static File getResourceFile(String resourceName) throws IOException {
+        URL resource = NavTestGraphs.class.getClassLoader().getResource(resourceName);
+        if (resource == null) {
+            throw new IOException("Missing test resource " + resourceName);
+        }
+        try {
+            return new File(resource.toURI());
+        } catch (URISyntaxException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Unit tests run in the module directory, the compiler is looked up from there towards the repository root.
+     */
+    private static File findCompiler() throws IOException {
+        for (File directory = new File(System.getProperty("user.dir")).getAbsoluteFile(); directory != null; directory = directory.getParentFile()) {
+            File compiler = new File(directory, COMPILER_PATH);
+            if (compiler.isFile()) {
+                return compiler;
+            }
+        }
+        throw new IOException("Missing " + COMPILER_PATH);
+    }
+
+    private static String readAll(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int length;
+        while ((length = inputStream.read(buffer)) != -1) {
+            output.write(buffer, 0, length);
+        }
+        return new String(output.toByteArray(), Charset.defaultCharset());
+    }
+}
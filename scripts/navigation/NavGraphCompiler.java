@@ -0,0 +1,537 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Build-time compiler of the campus walking graph: reads the graph in JSON and writes the binary asset with the graph and
+ * its contraction hierarchy, which the app maps into memory (NavGraph) and searches (NavHierarchyRouter).
+ * <pre>
+ * java scripts/navigation/NavGraphCompiler.java [--no-hierarchy] campus_walking_graph.json android/app/src/main/assets/navigation/campus_walking_graph.bin
+ * </pre>
+ * The JSON lists path names, node coordinates and the paths between the nodes by their indexes, a path's third value is the index of its name:
+ * <pre>
+ * {"names": ["Green St"], "nodes": [[40.1101, -88.2272], [40.1102, -88.2260], [40.1110, -88.2260]], "edges": [[0, 1, 0], [1, 2]]}
+ * </pre>
+ * Without the hierarchy, which takes a while for large graphs, the app searches the graph with A*.
+ * Requires Java 11 or newer to run from the source. Nodes are contracted in the order of their priority: twice the shortcuts
+ * a contraction adds less the edges it removes, plus the count of already contracted neighbours and twice the depth of the hierarchy below the node.
+ * Witness searches are limited, so the hierarchy may hold a few unneeded shortcuts, never a missing one.
+ *
+ * Binary format, big-endian, every section a multiple of 4 bytes:
+ * <pre>
+ * header      magic "RNAV", version, nodes count, edges count, up edges count, names count, string data length, 0 (reserved)
+ * nodes       (nodes count + 1) x {latitude E7, longitude E7, first edge, first up edge}, the last record ends the edge ranges
+ * edges       edges count x {target node, length in cm, name index or -1}, every path is stored once from each end
+ * up edges    up edges count x {target node, length in cm, middle node or -1}, edges to higher ranked nodes, shortcuts have a middle node
+ * names       (names count + 1) x {offset of the name in the string data}
+ * string data UTF-8 names, padded with zeros
+ * </pre>
+ */
+public class NavGraphCompiler {
+
+    static final int MAGIC = 0x524E4156; // "RNAV"
+    static final int VERSION = 1;
+
+    private static final double EARTH_MEAN_RADIUS_METERS = 6371008.8d;
+    private static final int WITNESS_SETTLED_LIMIT = 500;
+
+    // Input graph
+    private final List<String> names = new ArrayList<>();
+    private double[] latitudes;
+    private double[] longitudes;
+    private int[] pathFrom;
+    private int[] pathTo;
+    private int[] pathNames;
+    private int[] pathLengths;
+
+    // Contraction state: the remaining graph as neighbour -> {length, middle node}
+    private List<Map<Integer, int[]>> adjacency;
+    private int[] contractedNeighbours;
+    // Depth of the hierarchy below every node, keeps contractions spread over the graph
+    private int[] levels;
+    // Up edges of every node, recorded when the node is contracted
+    private int[][] upEdges;
+    private int shortcutsCount;
+
+    // Witness search state
+    private int[] witnessDistances;
+    private int[] witnessStamps;
+    private int witnessStamp;
+
+    public static void main(String[] args) throws IOException {
+        boolean hierarchy = (args.length == 2);
+        if (!hierarchy && ((args.length != 3) || !"--no-hierarchy".equals(args[0]))) {
+            System.err.println("Usage: java NavGraphCompiler.java [--no-hierarchy] <graph.json> <graph.bin>");
+            System.exit(1);
+        }
+        NavGraphCompiler compiler = new NavGraphCompiler();
+        long startTime = System.currentTimeMillis();
+        compiler.readJson(new String(Files.readAllBytes(Paths.get(args[args.length - 2])), StandardCharsets.UTF_8));
+        if (hierarchy) {
+            compiler.contract();
+        } else {
+            compiler.upEdges = new int[compiler.latitudes.length][0];
+        }
+        compiler.write(args[args.length - 1]);
+        System.out.printf("%d nodes, %d paths, %d shortcuts in %d ms%n", compiler.latitudes.length, compiler.pathFrom.length,
+                compiler.shortcutsCount, System.currentTimeMillis() - startTime);
+    }
+
+    // JSON
+
+    private void readJson(String json) throws IOException {
+        Object root = new JsonParser(json).parse();
+        if (!(root instanceof Map)) {
+            throw new IOException("Graph is not a JSON object");
+        }
+        Map<?, ?> graph = (Map<?, ?>) root;
+        for (Object name : asList(graph.get("names"))) {
+            names.add((String) name);
+        }
+        List<Object> nodes = asList(graph.get("nodes"));
+        latitudes = new double[nodes.size()];
+        longitudes = new double[nodes.size()];
+        for (int node = 0; node < nodes.size(); node++) {
+            List<Object> coordinates = asList(nodes.get(node));
+            latitudes[node] = (Double) coordinates.get(0);
+            longitudes[node] = (Double) coordinates.get(1);
+        }
+        List<Object> edges = asList(graph.get("edges"));
+        pathFrom = new int[edges.size()];
+        pathTo = new int[edges.size()];
+        pathNames = new int[edges.size()];
+        pathLengths = new int[edges.size()];
+        for (int path = 0; path < edges.size(); path++) {
+            List<Object> edge = asList(edges.get(path));
+            pathFrom[path] = ((Double) edge.get(0)).intValue();
+            pathTo[path] = ((Double) edge.get(1)).intValue();
+            pathNames[path] = (edge.size() > 2) ? ((Double) edge.get(2)).intValue() : -1;
+            if ((pathFrom[path] < 0) || (pathFrom[path] >= nodes.size()) || (pathTo[path] < 0) || (pathTo[path] >= nodes.size()) ||
+                    (pathNames[path] < -1) || (pathNames[path] >= names.size())) {
+                throw new IOException("Invalid graph edge " + pathFrom[path] + " - " + pathTo[path] + " (" + pathNames[path] + ")");
+            }
+            pathLengths[path] = toCentimeters(getHaversineDistance(latitudes[pathFrom[path]], longitudes[pathFrom[path]],
+                    latitudes[pathTo[path]], longitudes[pathTo[path]]));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> asList(Object value) throws IOException {
+        if (value == null) {
+            return new ArrayList<>();
+        } else if (!(value instanceof List)) {
+            throw new IOException("Expected a JSON array: " + value);
+        }
+        return (List<Object>) value;
+    }
+
+    // Contraction
+
+    private void contract() {
+        int nodesCount = latitudes.length;
+        adjacency = new ArrayList<>(nodesCount);
+        for (int node = 0; node < nodesCount; node++) {
+            adjacency.add(new HashMap<>());
+        }
+        for (int path = 0; path < pathFrom.length; path++) {
+            if (pathFrom[path] != pathTo[path]) {
+                addEdge(pathFrom[path], pathTo[path], pathLengths[path], -1);
+            }
+        }
+        contractedNeighbours = new int[nodesCount];
+        levels = new int[nodesCount];
+        upEdges = new int[nodesCount][];
+        witnessDistances = new int[nodesCount];
+        witnessStamps = new int[nodesCount];
+
+        // Lazy updates: a node's priority is recomputed when it comes to the top and it is put back if it is no longer the least
+        PriorityQueue<long[]> queue = new PriorityQueue<>((first, second) -> Long.compare(first[0], second[0]));
+        for (int node = 0; node < nodesCount; node++) {
+            queue.add(new long[]{getPriority(node), node});
+        }
+        while (!queue.isEmpty()) {
+            int node = (int) queue.poll()[1];
+            long priority = getPriority(node);
+            if (!queue.isEmpty() && (priority > queue.peek()[0])) {
+                queue.add(new long[]{priority, node});
+                continue;
+            }
+            contractNode(node);
+        }
+    }
+
+    private long getPriority(int node) {
+        return 2L * contractNode(node, false) - adjacency.get(node).size() + contractedNeighbours[node] + 2L * levels[node];
+    }
+
+    private void contractNode(int node) {
+        contractNode(node, true);
+        Map<Integer, int[]> neighbours = adjacency.get(node);
+        int[] nodeUpEdges = new int[3 * neighbours.size()];
+        int index = 0;
+        for (Map.Entry<Integer, int[]> neighbour : neighbours.entrySet()) {
+            nodeUpEdges[index++] = neighbour.getKey();
+            nodeUpEdges[index++] = neighbour.getValue()[0];
+            nodeUpEdges[index++] = neighbour.getValue()[1];
+            adjacency.get(neighbour.getKey()).remove(node);
+            contractedNeighbours[neighbour.getKey()]++;
+            levels[neighbour.getKey()] = Math.max(levels[neighbour.getKey()], levels[node] + 1);
+        }
+        upEdges[node] = nodeUpEdges;
+        adjacency.set(node, new HashMap<>());
+    }
+
+    /**
+     * @return count of the shortcuts the contraction of the node needs, added when apply is set
+     */
+    private int contractNode(int node, boolean apply) {
+        Map<Integer, int[]> neighbours = adjacency.get(node);
+        int[] neighbourNodes = new int[neighbours.size()];
+        int[] neighbourLengths = new int[neighbours.size()];
+        int neighboursCount = 0;
+        for (Map.Entry<Integer, int[]> neighbour : neighbours.entrySet()) {
+            neighbourNodes[neighboursCount] = neighbour.getKey();
+            neighbourLengths[neighboursCount++] = neighbour.getValue()[0];
+        }
+        int shortcuts = 0;
+        for (int first = 0; first < neighboursCount; first++) {
+            // -1 when there is no later neighbour, shortcuts between coincident nodes are 0 cm long
+            int maxLength = -1;
+            for (int second = first + 1; second < neighboursCount; second++) {
+                maxLength = Math.max(maxLength, neighbourLengths[first] + neighbourLengths[second]);
+            }
+            if (maxLength < 0) {
+                continue;
+            }
+            findWitnesses(neighbourNodes[first], node, maxLength);
+            for (int second = first + 1; second < neighboursCount; second++) {
+                int length = neighbourLengths[first] + neighbourLengths[second];
+                int target = neighbourNodes[second];
+                if ((witnessStamps[target] == witnessStamp) && (witnessDistances[target] <= length)) {
+                    continue;
+                }
+                shortcuts++;
+                if (apply) {
+                    addEdge(neighbourNodes[first], target, length, node);
+                    shortcutsCount++;
+                }
+            }
+        }
+        return shortcuts;
+    }
+
+    /**
+     * Dijkstra search from the source over the remaining graph without the node being contracted, up to the length.
+     */
+    private void findWitnesses(int source, int excludedNode, int maxLength) {
+        witnessStamp++;
+        PriorityQueue<long[]> queue = new PriorityQueue<>((first, second) -> Long.compare(first[0], second[0]));
+        witnessStamps[source] = witnessStamp;
+        witnessDistances[source] = 0;
+        queue.add(new long[]{0, source});
+        int settledCount = 0;
+        while (!queue.isEmpty() && (settledCount < WITNESS_SETTLED_LIMIT)) {
+            long[] top = queue.poll();
+            int node = (int) top[1];
+            if (top[0] > witnessDistances[node]) {
+                continue;
+            }
+            if (top[0] > maxLength) {
+                break;
+            }
+            settledCount++;
+            for (Map.Entry<Integer, int[]> neighbour : adjacency.get(node).entrySet()) {
+                int nextNode = neighbour.getKey();
+                if (nextNode == excludedNode) {
+                    continue;
+                }
+                int distance = (int) top[0] + neighbour.getValue()[0];
+                if ((witnessStamps[nextNode] != witnessStamp) || (distance < witnessDistances[nextNode])) {
+                    witnessStamps[nextNode] = witnessStamp;
+                    witnessDistances[nextNode] = distance;
+                    queue.add(new long[]{distance, nextNode});
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the edge both ways, or shortens an existing one.
+     */
+    private void addEdge(int from, int to, int length, int middle) {
+        int[] existing = adjacency.get(from).get(to);
+        if ((existing == null) || (length < existing[0])) {
+            adjacency.get(from).put(to, new int[]{length, middle});
+            adjacency.get(to).put(from, new int[]{length, middle});
+        }
+    }
+
+    // Binary
+
+    private void write(String fileName) throws IOException {
+        int nodesCount = latitudes.length;
+        int[] degrees = new int[nodesCount];
+        for (int path = 0; path < pathFrom.length; path++) {
+            degrees[pathFrom[path]]++;
+            degrees[pathTo[path]]++;
+        }
+        int[] firstEdges = new int[nodesCount + 1];
+        int[] firstUpEdges = new int[nodesCount + 1];
+        for (int node = 0; node < nodesCount; node++) {
+            firstEdges[node + 1] = firstEdges[node] + degrees[node];
+            firstUpEdges[node + 1] = firstUpEdges[node] + upEdges[node].length / 3;
+        }
+        int edgesCount = firstEdges[nodesCount];
+        int[] edges = new int[3 * edgesCount];
+        int[] nextEdges = Arrays.copyOf(firstEdges, nodesCount);
+        for (int path = 0; path < pathFrom.length; path++) {
+            putEdge(edges, nextEdges[pathFrom[path]]++, pathTo[path], pathLengths[path], pathNames[path]);
+            putEdge(edges, nextEdges[pathTo[path]]++, pathFrom[path], pathLengths[path], pathNames[path]);
+        }
+
+        List<byte[]> nameBytes = new ArrayList<>();
+        int stringDataLength = 0;
+        for (String name : names) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            nameBytes.add(bytes);
+            stringDataLength += bytes.length;
+        }
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(nodesCount);
+            output.writeInt(edgesCount);
+            output.writeInt(firstUpEdges[nodesCount]);
+            output.writeInt(names.size());
+            output.writeInt(stringDataLength);
+            output.writeInt(0);
+            for (int node = 0; node <= nodesCount; node++) {
+                output.writeInt((node < nodesCount) ? (int) Math.round(latitudes[node] * 1E7) : 0);
+                output.writeInt((node < nodesCount) ? (int) Math.round(longitudes[node] * 1E7) : 0);
+                output.writeInt(firstEdges[node]);
+                output.writeInt(firstUpEdges[node]);
+            }
+            for (int value : edges) {
+                output.writeInt(value);
+            }
+            for (int node = 0; node < nodesCount; node++) {
+                for (int value : upEdges[node]) {
+                    output.writeInt(value);
+                }
+            }
+            int offset = 0;
+            for (byte[] bytes : nameBytes) {
+                output.writeInt(offset);
+                offset += bytes.length;
+            }
+            output.writeInt(offset);
+            for (byte[] bytes : nameBytes) {
+                output.write(bytes);
+            }
+            for (int padding = stringDataLength; (padding % 4) != 0; padding++) {
+                output.writeByte(0);
+            }
+        }
+    }
+
+    private static void putEdge(int[] edges, int edge, int target, int length, int nameIndex) {
+        edges[3 * edge] = target;
+        edges[3 * edge + 1] = length;
+        edges[3 * edge + 2] = nameIndex;
+    }
+
+    private static int toCentimeters(double meters) {
+        return (int) Math.round(meters * 100.0d);
+    }
+
+    // Same as Utils.Location.getHaversineDistance in the app
+    private static double getHaversineDistance(double lat1, double lng1, double lat2, double lng2) {
+        double phi1 = Math.toRadians(lat1);
+        double phi2 = Math.toRadians(lat2);
+        double sinHalfDeltaPhi = Math.sin((phi2 - phi1) / 2.0d);
+        double sinHalfDeltaLambda = Math.sin(Math.toRadians(lng2 - lng1) / 2.0d);
+        double h = sinHalfDeltaPhi * sinHalfDeltaPhi + Math.cos(phi1) * Math.cos(phi2) * sinHalfDeltaLambda * sinHalfDeltaLambda;
+        return 2.0d * EARTH_MEAN_RADIUS_METERS * Math.asin(Math.min(1.0d, Math.sqrt(h)));
+    }
+
+    /**
+     * Minimal JSON parser for the graph: objects become maps, arrays lists and numbers doubles.
+     */
+    private static class JsonParser {
+        private final String json;
+        private int index;
+
+        JsonParser(String json) {
+            this.json = json;
+        }
+
+        Object parse() throws IOException {
+            Object value = parseValue();
+            skipWhitespace();
+            if (index < json.length()) {
+                throw error("Unexpected content");
+            }
+            return value;
+        }
+
+        private Object parseValue() throws IOException {
+            skipWhitespace();
+            if (index >= json.length()) {
+                throw error("Unexpected end");
+            }
+            char character = json.charAt(index);
+            if (character == '{') {
+                Map<String, Object> object = new LinkedHashMap<>();
+                index++;
+                skipWhitespace();
+                if (peek() == '}') {
+                    index++;
+                    return object;
+                }
+                do {
+                    skipWhitespace();
+                    String key = parseString();
+                    skipWhitespace();
+                    expect(':');
+                    object.put(key, parseValue());
+                    skipWhitespace();
+                } while (consume(','));
+                expect('}');
+                return object;
+            } else if (character == '[') {
+                List<Object> array = new ArrayList<>();
+                index++;
+                skipWhitespace();
+                if (peek() == ']') {
+                    index++;
+                    return array;
+                }
+                do {
+                    array.add(parseValue());
+                    skipWhitespace();
+                } while (consume(','));
+                expect(']');
+                return array;
+            } else if (character == '"') {
+                return parseString();
+            } else if (json.startsWith("true", index)) {
+                index += 4;
+                return Boolean.TRUE;
+            } else if (json.startsWith("false", index)) {
+                index += 5;
+                return Boolean.FALSE;
+            } else if (json.startsWith("null", index)) {
+                index += 4;
+                return null;
+            }
+            int start = index;
+            while ((index < json.length()) && ("+-.eE0123456789".indexOf(json.charAt(index)) >= 0)) {
+                index++;
+            }
+            try {
+                return Double.parseDouble(json.substring(start, index));
+            } catch (NumberFormatException e) {
+                throw error("Invalid number");
+            }
+        }
+
+        private String parseString() throws IOException {
+            expect('"');
+            StringBuilder builder = new StringBuilder();
+            while (index < json.length()) {
+                char character = json.charAt(index++);
+                if (character == '"') {
+                    return builder.toString();
+                } else if (character != '\\') {
+                    builder.append(character);
+                } else if (index < json.length()) {
+                    char escaped = json.charAt(index++);
+                    switch (escaped) {
+                        case 'b':
+                            builder.append('\b');
+                            break;
+                        case 'f':
+                            builder.append('\f');
+                            break;
+                        case 'n':
+                            builder.append('\n');
+                            break;
+                        case 'r':
+                            builder.append('\r');
+                            break;
+                        case 't':
+                            builder.append('\t');
+                            break;
+                        case 'u':
+                            if ((index + 4) > json.length()) {
+                                throw error("Invalid escape");
+                            }
+                            builder.append((char) Integer.parseInt(json.substring(index, index + 4), 16));
+                            index += 4;
+                            break;
+                        default:
+                            builder.append(escaped);
+                            break;
+                    }
+                }
+            }
+            throw error("Unterminated string");
+        }
+
+        private void skipWhitespace() {
+            while ((index < json.length()) && Character.isWhitespace(json.charAt(index))) {
+                index++;
+            }
+        }
+
+        private char peek() {
+            return (index < json.length()) ? json.charAt(index) : 0;
+        }
+
+        private boolean consume(char character) {
+            if (peek() == character) {
+                index++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char character) throws IOException {
+            if (!consume(character)) {
+                throw error("Expected '" + character + "'");
+            }
+        }
+
+        private IOException error(String message) {
+            return new IOException(message + " at " + index);
+        }
+    }
+}